@@ -39,6 +39,7 @@ import org.bukkit.scoreboard.Team;
 import org.bukkit.util.Consumer;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -385,4 +386,9 @@ public class PaperAPIToolsImpl extends PaperAPITools {
     public boolean canUseEquipmentSlot(LivingEntity entity, EquipmentSlot slot) {
         return NMSHandler.getVersion().isAtLeast(NMSVersion.v1_20) ? entity.canUseEquipmentSlot(slot) : super.canUseEquipmentSlot(entity, slot);
     }
+
+    @Override
+    public CompletableFuture<Chunk> getChunkAtAsync(World world, int x, int z) {
+        return world.getChunkAtAsync(x, z);
+    }
 }
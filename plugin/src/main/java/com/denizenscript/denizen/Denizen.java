@@ -33,6 +33,8 @@ import com.denizenscript.denizen.utilities.debugging.DebugSubmit;
 import com.denizenscript.denizen.utilities.debugging.StatsRecord;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
+import com.denizenscript.denizen.utilities.entity.EntitySpatialIndex;
+import com.denizenscript.denizen.utilities.flags.LocationFlagIndex;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizen.utilities.flags.WorldFlagHandler;
 import com.denizenscript.denizen.utilities.implementation.DenizenCoreImplementation;
@@ -423,6 +425,7 @@ public class Denizen extends JavaPlugin {
                     BukkitWorldScriptHelper.cleanAllWorldChunkFlags();
                 }
                 Bukkit.getPluginManager().registerEvents(new PlayerFlagHandler(), this);
+                Bukkit.getPluginManager().registerEvents(new EntitySpatialIndex.Listeners(), this);
                 Debug.log("Denizen fully loaded at: " + TimeTag.now().format());
             }
             catch (Throwable ex) {
@@ -463,6 +466,7 @@ public class Denizen extends JavaPlugin {
             }
         }.runTaskTimer(this, 100, 20 * 60 * 5);
         Bukkit.getPluginManager().registerEvents(new WorldListChangeTracker(), this);
+        Bukkit.getPluginManager().registerEvents(new LocationFlagIndex(), this);
     }
 
     public boolean hasDisabled = false;
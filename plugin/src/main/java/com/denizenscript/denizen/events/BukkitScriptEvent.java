@@ -7,6 +7,7 @@ import com.denizenscript.denizen.scripts.containers.core.EntityScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.InventoryScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.tags.BukkitTagContext;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
 import com.denizenscript.denizen.utilities.NotedAreaTracker;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
@@ -505,6 +506,186 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
 
     public List<Map.Entry<RegisteredListener, HandlerList>> registeredHandlers;
 
+    /**
+     * Gets the path index key for a material-matching event argument, if the argument is an exact material name.
+     */
+    public static final Function<String, String> MATERIAL_PATH_INDEX = (arg) -> {
+        Material material = CompiledMatcher.get(arg).exactMaterial;
+        return material == null ? null : material.name();
+    };
+
+    /**
+     * Gets the path index key for an item-matching event argument, if the argument is an exact material name or item script name.
+     * Uses the same keys as {@link #MATERIAL_PATH_INDEX} for materials, so events can index paths that match either an item or a block.
+     */
+    public static final Function<String, String> ITEM_PATH_INDEX = (arg) -> {
+        if (arg.equals("potion")) { // Special case: matches every potion type
+            return null;
+        }
+        Material material = CompiledMatcher.get(arg).exactMaterial;
+        boolean isScript = ItemScriptHelper.item_scripts.containsKey(arg);
+        if (material != null) {
+            return isScript ? null : material.name();
+        }
+        return isScript ? "script:" + arg : null;
+    };
+
+    /**
+     * Gets the path index key for an entity-matching event argument, if the argument is an exact entity type name.
+     */
+    public static final Function<String, String> ENTITY_PATH_INDEX = (arg) -> {
+        if (EntityTag.specialEntityMatchables.contains(arg) || EntityScriptHelper.scripts.containsKey(arg) || !getEntityTypeNames().contains(arg)) {
+            return null;
+        }
+        return arg;
+    };
+
+    private static HashSet<String> entityTypeNames;
+
+    private static HashSet<String> getEntityTypeNames() {
+        if (entityTypeNames == null) {
+            HashSet<String> names = new HashSet<>();
+            for (EntityType type : EntityType.values()) {
+                names.add(CoreUtilities.toLowerCase(type.name()));
+            }
+            entityTypeNames = names;
+        }
+        return entityTypeNames;
+    }
+
+    /**
+     * Gets the event-side key matching {@link #ITEM_PATH_INDEX}.
+     */
+    public static String getItemPathIndexKey(ItemTag item) {
+        return item.isItemscript() ? "script:" + CoreUtilities.toLowerCase(item.getScriptName()) : item.getBukkitMaterial().name();
+    }
+
+    /**
+     * Gets the event-side key matching {@link #ENTITY_PATH_INDEX}. NPCs only ever match special matchers, so they get a key no path can have.
+     */
+    public static String getEntityPathIndexKey(EntityTag entity) {
+        return entity.isCitizensNPC() ? "npc" : entity.getEntityType().getLowercaseName();
+    }
+
+    /**
+     * The event argument index used to index paths, or -1 if this event doesn't index its paths.
+     */
+    public int pathIndexArg = -1;
+
+    /**
+     * Gets the index key for a path's argument, or null if that argument isn't a plain exact value (meaning the path must always be evaluated).
+     */
+    public Function<String, String> pathIndexKeyGetter;
+
+    public List<ScriptPath> pathIndexBuiltFor;
+    public int pathIndexBuiltSize;
+    public HashMap<String, ArrayList<ScriptPath>> pathIndexByKey;
+    public ArrayList<ScriptPath> pathIndexUnkeyed;
+    public String[] pathIndexKeys;
+    public HashMap<String, ArrayList<ScriptPath>> pathIndexCombined;
+    public List<ScriptPath> allPathsDuringFire;
+
+    public long statsFires, statsPathsEvaluated, statsPathsSkipped, statsPathsMatched;
+
+    /**
+     * Registers that this event's paths can be indexed by the exact value of one event argument (such as the material in 'player breaks stone').
+     * A fire will then only evaluate the paths whose argument equals the key for the current event (from {@link #getPathIndexKey()}), plus the paths that use any other kind of matcher.
+     * Only use this when a path whose indexed argument is an exact value (per the key getter) could never match an event with a different key.
+     */
+    public void registerPathIndex(int argIndex, Function<String, String> keyGetter) {
+        pathIndexArg = argIndex;
+        pathIndexKeyGetter = keyGetter;
+    }
+
+    /**
+     * Gets the path index key of the event currently being fired, or null to evaluate all paths. Must be overridden by events that use {@link #registerPathIndex}.
+     */
+    public String getPathIndexKey() {
+        return null;
+    }
+
+    /**
+     * Gets a second key for events where the indexed argument can match either of two objects (such as the item in hand or the placed block), or null if there isn't one.
+     */
+    public String getSecondaryPathIndexKey() {
+        return null;
+    }
+
+    /**
+     * Gets the indexed argument of a path. Can be overridden for events where the argument's position depends on the path's format.
+     */
+    public String getPathIndexArg(ScriptPath path) {
+        return path.eventArgLowerAt(pathIndexArg);
+    }
+
+    public void buildPathIndex(List<ScriptPath> paths) {
+        pathIndexBuiltFor = paths;
+        pathIndexBuiltSize = paths.size();
+        pathIndexByKey = null;
+        pathIndexUnkeyed = null;
+        pathIndexKeys = null;
+        pathIndexCombined = null;
+        String[] keys = new String[paths.size()];
+        boolean anyKeyed = false;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = pathIndexKeyGetter.apply(getPathIndexArg(paths.get(i)));
+            anyKeyed |= keys[i] != null;
+        }
+        if (!anyKeyed) {
+            return;
+        }
+        // Each key gets the full ordered list of paths it could run, so that path priority order is kept
+        HashMap<String, ArrayList<ScriptPath>> byKey = new HashMap<>();
+        ArrayList<ScriptPath> unkeyed = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                byKey.putIfAbsent(keys[i], new ArrayList<>());
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            ScriptPath path = paths.get(i);
+            if (keys[i] == null) {
+                unkeyed.add(path);
+                for (ArrayList<ScriptPath> list : byKey.values()) {
+                    list.add(path);
+                }
+            }
+            else {
+                byKey.get(keys[i]).add(path);
+            }
+        }
+        pathIndexByKey = byKey;
+        pathIndexUnkeyed = unkeyed;
+        pathIndexKeys = keys;
+        pathIndexCombined = new HashMap<>();
+    }
+
+    /**
+     * Gets the ordered list of paths that could match an event with two different keys.
+     */
+    public List<ScriptPath> getCombinedPathCandidates(String key, String secondKey) {
+        ArrayList<ScriptPath> first = pathIndexByKey.get(key), second = pathIndexByKey.get(secondKey);
+        if (first == null || second == null) {
+            return first != null ? first : second != null ? second : pathIndexUnkeyed;
+        }
+        String combinedKey = key + '\n' + secondKey;
+        ArrayList<ScriptPath> result = pathIndexCombined.get(combinedKey);
+        if (result == null) {
+            if (pathIndexCombined.size() >= 256) {
+                pathIndexCombined.clear();
+            }
+            result = new ArrayList<>(first.size() + second.size());
+            for (int i = 0; i < pathIndexKeys.length; i++) {
+                String pathKey = pathIndexKeys[i];
+                if (pathKey == null || pathKey.equals(key) || pathKey.equals(secondKey)) {
+                    result.add(pathIndexBuiltFor.get(i));
+                }
+            }
+            pathIndexCombined.put(combinedKey, result);
+        }
+        return result;
+    }
+
     // <--[language]
     // @name Bukkit Event Priority
     // @group Script Events
@@ -534,7 +715,52 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
             }.runTask(Denizen.getInstance());
             return altEvent;
         }
-        return super.fire();
+        statsFires++;
+        if (pathIndexArg == -1) {
+            statsPathsEvaluated += eventPaths.size();
+            return super.fire();
+        }
+        // If this is a nested fire of the same event, index from the full path list rather than the outer fire's candidates
+        List<ScriptPath> previousAllPaths = allPathsDuringFire;
+        List<ScriptPath> allPaths = previousAllPaths != null ? previousAllPaths : eventPaths;
+        if (pathIndexBuiltFor != allPaths || pathIndexBuiltSize != allPaths.size()) {
+            buildPathIndex(allPaths);
+        }
+        String key = pathIndexByKey == null ? null : getPathIndexKey();
+        String secondKey = key == null ? null : getSecondaryPathIndexKey();
+        List<ScriptPath> candidates;
+        if (key == null) {
+            candidates = allPaths;
+        }
+        else if (secondKey == null || secondKey.equals(key)) {
+            candidates = pathIndexByKey.getOrDefault(key, pathIndexUnkeyed);
+        }
+        else {
+            candidates = getCombinedPathCandidates(key, secondKey);
+        }
+        statsPathsEvaluated += candidates.size();
+        statsPathsSkipped += allPaths.size() - candidates.size();
+        var originalPaths = eventPaths;
+        allPathsDuringFire = allPaths;
+        eventPaths = candidates;
+        try {
+            return super.fire();
+        }
+        finally {
+            if (eventPaths == candidates) {
+                eventPaths = originalPaths;
+            }
+            allPathsDuringFire = previousAllPaths;
+        }
+    }
+
+    @Override
+    public boolean matches(ScriptPath path) {
+        if (!super.matches(path)) {
+            return false;
+        }
+        statsPathsMatched++;
+        return true;
     }
 
     @Override
@@ -568,6 +794,9 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
 
     @Override
     public void destroy() {
+        pathIndexBuiltFor = null;
+        pathIndexByKey = null;
+        pathIndexUnkeyed = null;
         if (priorityHandlers != null) {
             for (BukkitScriptEvent event : priorityHandlers.values()) {
                 event.destroy();
@@ -626,6 +855,16 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
             registeredHandlers = new ArrayList<>();
         }
         Plugin plugin = Denizen.getInstance();
+        List<EventExecutorCodeGen.GeneratedHandler> generatedHandlers = EventExecutorCodeGen.getHandlers(listener);
+        if (generatedHandlers != null) {
+            for (EventExecutorCodeGen.GeneratedHandler generated : generatedHandlers) {
+                RegisteredListener newListener = new RegisteredListener(listener, generated.executor, priority, plugin, false);
+                HandlerList handlers = getEventListeners(getRegistrationClass(generated.eventClass));
+                handlers.register(newListener);
+                registeredHandlers.add(new HashMap.SimpleEntry<>(newListener, handlers));
+            }
+            return;
+        }
         for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry :
                 plugin.getPluginLoader().createRegisteredListeners(listener, plugin).entrySet()) {
             for (RegisteredListener registeredListener : entry.getValue()) {
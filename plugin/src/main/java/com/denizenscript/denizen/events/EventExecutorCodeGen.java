@@ -0,0 +1,183 @@
+package com.denizenscript.denizen.events;
+
+import com.denizenscript.denizencore.utilities.codegen.CodeGenUtil;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.objectweb.asm.*;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Generates an {@link EventExecutor} class for each '@EventHandler' method of script event listeners, which calls the handler method directly.
+ * Bukkit's default executors call the handler method through reflection on every dispatch, which is significant for events fired very often (such as player move).
+ * Generated executors are cached per listener class, so 'bukkit_priority' handler clones and script reloads reuse them.
+ */
+public class EventExecutorCodeGen {
+
+    public static final class GeneratedHandler {
+
+        public final Class<? extends Event> eventClass;
+
+        public final EventExecutor executor;
+
+        public GeneratedHandler(Class<? extends Event> eventClass, EventExecutor executor) {
+            this.eventClass = eventClass;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Set from the Denizen config 'Scripts.Generated event executors'. When false, Bukkit's own executors are used.
+     */
+    public static boolean enabled = true;
+
+    private static final List<GeneratedHandler> UNSUPPORTED = Collections.emptyList();
+
+    private static final HashMap<Class<?>, List<GeneratedHandler>> handlersByListenerClass = new HashMap<>();
+
+    private static long classCount = 0;
+
+    /**
+     * Gets generated executors for every event handler method of the listener's class, or null if Bukkit's own executors should be used instead.
+     */
+    public static List<GeneratedHandler> getHandlers(Listener listener) {
+        if (!enabled) {
+            return null;
+        }
+        Class<?> listenerClass = listener.getClass();
+        List<GeneratedHandler> result = handlersByListenerClass.get(listenerClass);
+        if (result == null) {
+            result = generateHandlers(listenerClass);
+            handlersByListenerClass.put(listenerClass, result == null ? UNSUPPORTED : result);
+        }
+        return result == UNSUPPORTED ? null : result;
+    }
+
+    private static boolean isAccessible(Class<?> type) {
+        while (type != null) {
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+            type = type.getEnclosingClass();
+        }
+        return true;
+    }
+
+    /**
+     * Finds handler methods the same way Bukkit's plugin loader does, and returns null if any of them can't be called directly from a generated class.
+     */
+    private static List<GeneratedHandler> generateHandlers(Class<?> listenerClass) {
+        HashSet<Method> methods = new HashSet<>();
+        methods.addAll(Arrays.asList(listenerClass.getMethods()));
+        methods.addAll(Arrays.asList(listenerClass.getDeclaredMethods()));
+        List<GeneratedHandler> result = new ArrayList<>();
+        for (Method method : methods) {
+            if (method.getAnnotation(EventHandler.class) == null || method.isBridge() || method.isSynthetic()) {
+                continue;
+            }
+            if (method.getParameterCount() != 1 || !Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                return null;
+            }
+            if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())
+                    || !isAccessible(method.getDeclaringClass()) || !isAccessible(method.getParameterTypes()[0])) {
+                return null;
+            }
+            EventExecutor executor = generateExecutor(method);
+            if (executor == null) {
+                return null;
+            }
+            result.add(new GeneratedHandler(method.getParameterTypes()[0].asSubclass(Event.class), executor));
+        }
+        return result;
+    }
+
+    /**
+     * Generates the equivalent of:
+     * <pre>
+     * public void execute(Listener listener, Event event) throws EventException {
+     *     if (!(event instanceof EventType)) {
+     *         return;
+     *     }
+     *     try {
+     *         ((ListenerType) listener).method((EventType) event);
+     *     }
+     *     catch (Throwable ex) {
+     *         throw new EventException(ex);
+     *     }
+     * }
+     * </pre>
+     */
+    private static EventExecutor generateExecutor(Method method) {
+        try {
+            String listenerType = Type.getInternalName(method.getDeclaringClass());
+            String eventType = Type.getInternalName(method.getParameterTypes()[0]);
+            String className = "com/denizenscript/denizen/event_executor_codegen/GeneratedExecutor" + (classCount++) + "_" + method.getDeclaringClass().getSimpleName() + "_" + method.getName();
+            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+            cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, className, null, "java/lang/Object", new String[] { Type.getInternalName(EventExecutor.class) });
+            cw.visitSource("GENERATED_EVENT_EXECUTOR", null);
+            // ====== Build constructor ======
+            {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+                mv.visitCode();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+                mv.visitInsn(Opcodes.RETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+            // ====== Build execute method ======
+            {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "execute", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Listener.class), Type.getType(Event.class)),
+                        null, new String[] { Type.getInternalName(EventException.class) });
+                mv.visitCode();
+                Label tryStart = new Label(), tryEnd = new Label(), catchStart = new Label(), isInstance = new Label();
+                mv.visitTryCatchBlock(tryStart, tryEnd, catchStart, "java/lang/Throwable");
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.INSTANCEOF, eventType);
+                mv.visitJumpInsn(Opcodes.IFNE, isInstance);
+                mv.visitInsn(Opcodes.RETURN);
+                mv.visitLabel(isInstance);
+                mv.visitLabel(tryStart);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, listenerType);
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, eventType);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, listenerType, method.getName(), Type.getMethodDescriptor(method), false);
+                Class<?> returnType = method.getReturnType();
+                if (returnType == long.class || returnType == double.class) {
+                    mv.visitInsn(Opcodes.POP2);
+                }
+                else if (returnType != void.class) {
+                    mv.visitInsn(Opcodes.POP);
+                }
+                mv.visitLabel(tryEnd);
+                mv.visitInsn(Opcodes.RETURN);
+                mv.visitLabel(catchStart);
+                mv.visitVarInsn(Opcodes.ASTORE, 3);
+                mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(EventException.class));
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitVarInsn(Opcodes.ALOAD, 3);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(EventException.class), "<init>", "(Ljava/lang/Throwable;)V", false);
+                mv.visitInsn(Opcodes.ATHROW);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+            // ====== Compile and return ======
+            cw.visitEnd();
+            byte[] compiled = cw.toByteArray();
+            Class<?> generatedClass = CodeGenUtil.loader.define(className.replace('/', '.'), compiled);
+            return (EventExecutor) generatedClass.getConstructor().newInstance();
+        }
+        catch (Throwable ex) {
+            Debug.echoError("Failed to generate event executor for " + method + ", will use the default executor.");
+            Debug.echoError(ex);
+            return null;
+        }
+    }
+}
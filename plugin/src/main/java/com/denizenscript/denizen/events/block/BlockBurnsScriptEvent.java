@@ -30,6 +30,7 @@ public class BlockBurnsScriptEvent extends BukkitScriptEvent implements Listener
 
     public BlockBurnsScriptEvent() {
         registerCouldMatcher("<block> burns");
+        registerPathIndex(0, MATERIAL_PATH_INDEX);
     }
 
     public LocationTag location;
@@ -47,6 +48,11 @@ public class BlockBurnsScriptEvent extends BukkitScriptEvent implements Listener
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ObjectTag getContext(String name) {
         switch (name) {
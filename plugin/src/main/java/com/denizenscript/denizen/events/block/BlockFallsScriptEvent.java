@@ -34,6 +34,7 @@ public class BlockFallsScriptEvent extends BukkitScriptEvent implements Listener
 
     public BlockFallsScriptEvent() {
         registerCouldMatcher("<block> falls");
+        registerPathIndex(0, MATERIAL_PATH_INDEX);
     }
 
 
@@ -52,6 +53,11 @@ public class BlockFallsScriptEvent extends BukkitScriptEvent implements Listener
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ObjectTag getContext(String name) {
         switch (name) {
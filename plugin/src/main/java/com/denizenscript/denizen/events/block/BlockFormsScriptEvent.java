@@ -30,6 +30,7 @@ public class BlockFormsScriptEvent extends BukkitScriptEvent implements Listener
 
     public BlockFormsScriptEvent() {
         registerCouldMatcher("<block> forms");
+        registerPathIndex(0, MATERIAL_PATH_INDEX);
     }
 
     public LocationTag location;
@@ -48,6 +49,11 @@ public class BlockFormsScriptEvent extends BukkitScriptEvent implements Listener
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ObjectTag getContext(String name) {
         switch (name) {
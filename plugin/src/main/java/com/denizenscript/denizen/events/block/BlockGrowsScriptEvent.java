@@ -34,6 +34,7 @@ public class BlockGrowsScriptEvent extends BukkitScriptEvent implements Listener
     public BlockGrowsScriptEvent() {
         registerCouldMatcher("<block> grows");
         registerSwitches("from", "to");
+        registerPathIndex(0, MATERIAL_PATH_INDEX);
     }
 
     public LocationTag location;
@@ -78,6 +79,11 @@ public class BlockGrowsScriptEvent extends BukkitScriptEvent implements Listener
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ObjectTag getContext(String name) {
         switch (name) {
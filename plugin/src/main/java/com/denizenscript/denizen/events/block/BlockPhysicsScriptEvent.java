@@ -42,6 +42,7 @@ public class BlockPhysicsScriptEvent extends BukkitScriptEvent implements Listen
     public BlockPhysicsScriptEvent() {
         registerCouldMatcher("<block> physics");
         registerSwitches("adjacent");
+        registerPathIndex(0, MATERIAL_PATH_INDEX);
     }
 
 
@@ -74,6 +75,11 @@ public class BlockPhysicsScriptEvent extends BukkitScriptEvent implements Listen
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     public static Field PHYSICS_EVENT_DATA = ReflectionHelper.getFields(BlockPhysicsEvent.class).getFirstOfType(BlockData.class);
 
     @Override
@@ -23,6 +23,7 @@ import org.bukkit.event.player.*;
 import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Listener {
 
@@ -187,22 +188,64 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
     public String[] flagTracked = null;
     public MatchHelper[] matchers = null;
     public boolean onlyTrackPlayers = true;
-    public static HashMap<UUID, HashSet<AreaContainmentObject>> entitiesInArea = new HashMap<>();
+
+    /**
+     * Maps entity UUIDs to the sorted IDs (from {@link NotedAreaTracker#getAreaId}) of the tracked areas they're currently in.
+     */
+    public static HashMap<UUID, int[]> entitiesInArea = new HashMap<>();
+
+    private static final int[] NO_AREAS = new int[0];
 
     @Override
     public void cancellationChanged() {
         if (cancelled) {
-            HashSet<AreaContainmentObject> inAreas = entitiesInArea.get(currentEntity.getUUID());
-            if (isEntering) {
-                inAreas.remove(area);
-            }
-            else {
-                inAreas.add(area);
-            }
+            UUID id = currentEntity.getUUID();
+            int areaId = NotedAreaTracker.getAreaId(area);
+            setAreas(id, isEntering ? withoutArea(entitiesInArea.get(id), areaId) : withArea(entitiesInArea.get(id), areaId));
         }
         super.cancellationChanged();
     }
 
+    public static void setAreas(UUID id, int[] areas) {
+        if (areas == null || areas.length == 0) {
+            entitiesInArea.remove(id);
+        }
+        else {
+            entitiesInArea.put(id, areas);
+        }
+    }
+
+    public static boolean hasArea(int[] areas, int areaId) {
+        return areas != null && Arrays.binarySearch(areas, areaId) >= 0;
+    }
+
+    public static int[] withArea(int[] areas, int areaId) {
+        if (areas == null) {
+            return new int[] { areaId };
+        }
+        int index = Arrays.binarySearch(areas, areaId);
+        if (index >= 0) {
+            return areas;
+        }
+        index = -index - 1;
+        int[] result = new int[areas.length + 1];
+        System.arraycopy(areas, 0, result, 0, index);
+        result[index] = areaId;
+        System.arraycopy(areas, index, result, index + 1, areas.length - index);
+        return result;
+    }
+
+    public static int[] withoutArea(int[] areas, int areaId) {
+        int index = areas == null ? -1 : Arrays.binarySearch(areas, areaId);
+        if (index < 0) {
+            return areas;
+        }
+        int[] result = new int[areas.length - 1];
+        System.arraycopy(areas, 0, result, 0, index);
+        System.arraycopy(areas, index + 1, result, index, areas.length - index - 1);
+        return result;
+    }
+
     public boolean anyMatch(String name, FlaggableObject flaggable) {
         if (doTrackAll) {
             return true;
@@ -225,69 +268,150 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
         return false;
     }
 
-    public void processSingle(AreaContainmentObject obj, EntityTag entity, HashSet<AreaContainmentObject> inAreas, Location pos, Event eventCause) {
-        boolean containedNow = pos != null && obj.doesContainLocation(pos);
-        boolean wasContained = inAreas != null && inAreas.contains(obj);
-        if (containedNow == wasContained) {
-            return;
-        }
-        if (inAreas == null) {
-            inAreas = new HashSet<>();
-            entitiesInArea.put(entity.getUUID(), inAreas);
-        }
-        if (containedNow) {
-            inAreas.add(obj);
+    /**
+     * Sorted, de-duplicated IDs of the matching areas containing the position currently being processed.
+     * Reused between calls, and copied out before any events fire (as event handlers may move entities and re-enter processing).
+     */
+    private int[] containingAreas = new int[16];
+
+    private int containingCount = 0;
+
+    private final Consumer<AreaContainmentObject> collectArea = this::collectArea;
+
+    private void collectArea(AreaContainmentObject area) {
+        if (area instanceof FlaggableObject flaggable && anyMatch(area.getNoteName(), flaggable)) {
+            addContainingArea(area);
         }
-        else {
-            inAreas.remove(obj);
+    }
+
+    private void addContainingArea(AreaContainmentObject area) {
+        if (containingCount == containingAreas.length) {
+            containingAreas = Arrays.copyOf(containingAreas, containingCount * 2);
         }
+        containingAreas[containingCount++] = NotedAreaTracker.getAreaId(area);
+    }
+
+    /**
+     * Returns whether the entity should stay in an area it was in, that no longer showed up as a matching containing area.
+     * Areas that were forgotten are dropped silently, areas that stopped matching (eg a flag was removed) are kept until the entity actually leaves.
+     */
+    private static boolean isStillIn(AreaContainmentObject area, Location pos) {
+        return area != null && area.getNoteName() != null && pos != null && area.doesContainLocation(pos);
+    }
+
+    public void fireChange(AreaContainmentObject obj, EntityTag entity, boolean entering, Location pos, Event eventCause) {
         currentEntity = entity;
-        isEntering = containedNow;
+        isEntering = entering;
         area = obj;
         to = pos;
         fire(eventCause);
     }
 
-    private final static List<AreaContainmentObject> reusableClearList = new ArrayList<>();
-
-    public void processNewPosition(EntityTag entity, Location pos, Event eventCause) {
-        if (onlyTrackPlayers && !entity.isPlayer()) {
+    public void processNewPosition(Entity entity, Location pos, Event eventCause) {
+        if (onlyTrackPlayers && !EntityTag.isPlayer(entity)) {
             return;
         }
-        HashSet<AreaContainmentObject> inAreas = entitiesInArea.get(entity.getUUID());
+        UUID id = entity.getUniqueId();
+        int[] inAreas = entitiesInArea.get(id);
+        if (inAreas == null) {
+            inAreas = NO_AREAS;
+        }
+        containingCount = 0;
         if (doTrackAll || matchers != null || flagTracked != null) {
             if (pos != null) {
-                NotedAreaTracker.forEachAreaThatContains(new LocationTag(pos), (a) -> {
-                    if (a instanceof FlaggableObject && anyMatch(a.getNoteName(), (FlaggableObject) a)) {
-                        processSingle(a, entity, inAreas, pos, eventCause);
-                    }
-                });
-            }
-            if (inAreas != null) {
-                reusableClearList.addAll(inAreas);
-                for (AreaContainmentObject area : reusableClearList) {
-                    if (area.getNoteName() == null) {
-                        inAreas.remove(area);
-                    }
-                    else {
-                        processSingle(area, entity, inAreas, pos, eventCause);
-                    }
-                }
-                reusableClearList.clear();
+                NotedAreaTracker.forEachAreaThatContains(pos, collectArea);
             }
         }
         else {
             for (String name : exactTracked) {
                 Notable obj = NoteManager.getSavedObject(name);
-                if (!(obj instanceof AreaContainmentObject)) {
+                if (!(obj instanceof AreaContainmentObject areaObj)) {
                     Debug.echoError("Invalid area enter/exit event area '" + name + "'");
                     continue;
                 }
-                processSingle((AreaContainmentObject) obj, entity, inAreas, pos, eventCause);
+                if (pos != null && areaObj.doesContainLocation(pos)) {
+                    addContainingArea(areaObj);
+                }
             }
         }
-        if (inAreas != null && inAreas.isEmpty()) {
-            entitiesInArea.remove(entity.getUUID());
+        int count = containingCount;
+        int[] containing = containingAreas;
+        Arrays.sort(containing, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || containing[unique - 1] != containing[i]) {
+                containing[unique++] = containing[i];
+            }
+        }
+        count = unique;
+        // First pass: count the differences between the old and new area sets, without allocating anything
+        int enterCount = 0, exitCount = 0, keptCount = 0;
+        int oldIndex = 0, newIndex = 0;
+        while (oldIndex < inAreas.length || newIndex < count) {
+            if (newIndex == count || (oldIndex < inAreas.length && inAreas[oldIndex] < containing[newIndex])) {
+                if (isStillIn(NotedAreaTracker.getAreaById(inAreas[oldIndex]), pos)) {
+                    keptCount++;
+                }
+                else {
+                    exitCount++;
+                }
+                oldIndex++;
+            }
+            else if (oldIndex == inAreas.length || containing[newIndex] < inAreas[oldIndex]) {
+                enterCount++;
+                newIndex++;
+            }
+            else {
+                keptCount++;
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        if (enterCount == 0 && exitCount == 0) {
+            return;
+        }
+        // Second pass: build the new membership and the lists of changes
+        int[] updated = new int[keptCount + enterCount];
+        int[] entered = new int[enterCount];
+        AreaContainmentObject[] exited = new AreaContainmentObject[exitCount];
+        int updatedIndex = 0, enteredIndex = 0, exitedIndex = 0;
+        oldIndex = 0;
+        newIndex = 0;
+        while (oldIndex < inAreas.length || newIndex < count) {
+            if (newIndex == count || (oldIndex < inAreas.length && inAreas[oldIndex] < containing[newIndex])) {
+                AreaContainmentObject oldArea = NotedAreaTracker.getAreaById(inAreas[oldIndex]);
+                if (isStillIn(oldArea, pos)) {
+                    updated[updatedIndex++] = inAreas[oldIndex];
+                }
+                else {
+                    exited[exitedIndex++] = oldArea;
+                }
+                oldIndex++;
+            }
+            else if (oldIndex == inAreas.length || containing[newIndex] < inAreas[oldIndex]) {
+                entered[enteredIndex++] = containing[newIndex];
+                updated[updatedIndex++] = containing[newIndex];
+                newIndex++;
+            }
+            else {
+                updated[updatedIndex++] = inAreas[oldIndex];
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        setAreas(id, updated);
+        EntityTag entityTag = new EntityTag(entity);
+        for (int areaId : entered) {
+            // Event handlers can move the entity and cause nested processing, so only fire for changes that still apply
+            if (hasArea(entitiesInArea.get(id), areaId)) {
+                fireChange(NotedAreaTracker.getAreaById(areaId), entityTag, true, pos, eventCause);
+            }
+        }
+        for (AreaContainmentObject oldArea : exited) {
+            // Forgotten areas are dropped without an exit event
+            if (oldArea != null && oldArea.getNoteName() != null && !hasArea(entitiesInArea.get(id), NotedAreaTracker.getAreaId(oldArea))) {
+                fireChange(oldArea, entityTag, false, pos, eventCause);
+            }
         }
     }
 
@@ -295,13 +419,13 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
 
         @EventHandler
         public void onQuit(PlayerQuitEvent event) {
-            processNewPosition(new EntityTag(event.getPlayer()), null, event);
+            processNewPosition(event.getPlayer(), null, event);
             entitiesInArea.remove(event.getPlayer().getUniqueId());
         }
 
         @EventHandler
         public void onJoin(PlayerJoinEvent event) {
-            processNewPosition(new EntityTag(event.getPlayer()), event.getPlayer().getLocation(), event);
+            processNewPosition(event.getPlayer(), event.getPlayer().getLocation(), event);
         }
 
         @EventHandler
@@ -309,24 +433,24 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
             if (LocationTag.isSameBlock(event.getFrom(), event.getTo())) {
                 return;
             }
-            processNewPosition(new EntityTag(event.getPlayer()), event.getTo(), event);
+            processNewPosition(event.getPlayer(), event.getTo(), event);
         }
 
         @EventHandler
         public void onTeleport(PlayerTeleportEvent event) {
-            processNewPosition(new EntityTag(event.getPlayer()), event.getTo(), event);
+            processNewPosition(event.getPlayer(), event.getTo(), event);
         }
 
         @EventHandler
         public void onTeleport(EntityTeleportEvent event) {
             if (!onlyTrackPlayers) {
-                processNewPosition(new EntityTag(event.getEntity()), event.getTo(), event);
+                processNewPosition(event.getEntity(), event.getTo(), event);
             }
         }
 
         @EventHandler
         public void onWorldChange(PlayerChangedWorldEvent event) {
-            processNewPosition(new EntityTag(event.getPlayer()), event.getPlayer().getLocation(), event);
+            processNewPosition(event.getPlayer(), event.getPlayer().getLocation(), event);
         }
 
         @EventHandler
@@ -335,11 +459,11 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
                 return;
             }
             if (!onlyTrackPlayers) {
-                processNewPosition(new EntityTag(event.getVehicle()), event.getTo(), event);
+                processNewPosition(event.getVehicle(), event.getTo(), event);
             }
             for (Entity entity : event.getVehicle().getPassengers()) {
                 if (!onlyTrackPlayers || EntityTag.isPlayer(entity)) {
-                    processNewPosition(new EntityTag(entity), event.getTo(), event);
+                    processNewPosition(entity, event.getTo(), event);
                 }
             }
         }
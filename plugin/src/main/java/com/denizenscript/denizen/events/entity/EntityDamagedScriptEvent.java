@@ -94,6 +94,7 @@ public class EntityDamagedScriptEvent extends BukkitScriptEvent implements Liste
         registerCouldMatcher("<entity> damaged by <entity>");
         registerCouldMatcher("<entity> damages <entity>");
         registerSwitches("with", "type", "blocker");
+        registerPathIndex(0, ENTITY_PATH_INDEX);
     }
 
 
@@ -168,6 +169,16 @@ public class EntityDamagedScriptEvent extends BukkitScriptEvent implements Liste
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexArg(ScriptPath path) {
+        return path.eventArgLowerAt(path.eventArgLowerAt(1).equals("damages") ? 2 : 0);
+    }
+
+    @Override
+    public String getPathIndexKey() {
+        return getEntityPathIndexKey(entity);
+    }
+
     @Override
     public boolean applyDetermination(ScriptPath path, ObjectTag determinationObj) {
         if (determinationObj instanceof ElementTag) {
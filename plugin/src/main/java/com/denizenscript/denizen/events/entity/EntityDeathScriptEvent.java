@@ -68,6 +68,7 @@ public class EntityDeathScriptEvent extends BukkitScriptEvent implements Listene
     public EntityDeathScriptEvent() {
         registerCouldMatcher("<entity> dies|death");
         registerSwitches("by", "cause");
+        registerPathIndex(0, ENTITY_PATH_INDEX);
     }
 
     public EntityTag entity;
@@ -94,6 +95,11 @@ public class EntityDeathScriptEvent extends BukkitScriptEvent implements Listene
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return getEntityPathIndexKey(entity);
+    }
+
     @Override
     public boolean applyDetermination(ScriptPath path, ObjectTag determinationObj) {
         String determination = determinationObj.toString();
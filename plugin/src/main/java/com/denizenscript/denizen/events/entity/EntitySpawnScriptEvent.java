@@ -40,6 +40,7 @@ public class EntitySpawnScriptEvent extends BukkitScriptEvent implements Listene
 
     public EntitySpawnScriptEvent() {
         registerCouldMatcher("<entity> spawns (because <'cause'>)");
+        registerPathIndex(0, ENTITY_PATH_INDEX);
     }
 
     public EntityTag entity;
@@ -72,6 +73,11 @@ public class EntitySpawnScriptEvent extends BukkitScriptEvent implements Listene
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return getEntityPathIndexKey(entity);
+    }
+
     @Override
     public ScriptEntryData getScriptEntryData() {
         return new BukkitScriptEntryData(entity);
@@ -39,6 +39,7 @@ public class EntityTargetsScriptEvent extends BukkitScriptEvent implements Liste
 
     public EntityTargetsScriptEvent() {
         registerCouldMatcher("<entity> targets (<entity>) (because <'cause'>)");
+        registerPathIndex(0, ENTITY_PATH_INDEX);
     }
 
     public EntityTag entity;
@@ -66,6 +67,11 @@ public class EntityTargetsScriptEvent extends BukkitScriptEvent implements Liste
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return getEntityPathIndexKey(entity);
+    }
+
     @Override
     public boolean applyDetermination(ScriptPath path, ObjectTag determinationObj) {
         String determination = determinationObj.toString();
@@ -52,6 +52,7 @@ public class PlayerBreaksBlockScriptEvent extends BukkitScriptEvent implements L
     // -->
 
     public PlayerBreaksBlockScriptEvent() {
+        registerPathIndex(2, MATERIAL_PATH_INDEX);
     }
 
     public LocationTag location;
@@ -94,6 +95,11 @@ public class PlayerBreaksBlockScriptEvent extends BukkitScriptEvent implements L
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public boolean applyDetermination(ScriptPath path, ObjectTag determinationObj) {
         String determination = determinationObj.toString();
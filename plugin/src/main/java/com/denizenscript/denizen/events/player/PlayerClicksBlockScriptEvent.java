@@ -52,6 +52,7 @@ public class PlayerClicksBlockScriptEvent extends BukkitScriptEvent implements L
     public PlayerClicksBlockScriptEvent() {
         registerCouldMatcher("player (right|left) clicks <block>");
         registerSwitches("with", "using", "type");
+        registerPathIndex(3, MATERIAL_PATH_INDEX);
     }
 
     public PlayerInteractEvent event;
@@ -148,6 +149,16 @@ public class PlayerClicksBlockScriptEvent extends BukkitScriptEvent implements L
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexArg(ScriptPath path) {
+        return path.eventArgLowerAt(path.eventArgLowerAt(1).equals("clicks") ? 2 : 3);
+    }
+
+    @Override
+    public String getPathIndexKey() {
+        return blockMaterial.getMaterial().name();
+    }
+
     public boolean wasCancellationAltered;
 
     @Override
@@ -61,6 +61,7 @@ public class PlayerPlacesBlockScriptEvent extends BukkitScriptEvent implements L
     public PlayerPlacesBlockScriptEvent() {
         registerCouldMatcher("player places <material>");
         registerSwitches("using", "against", "type");
+        registerPathIndex(2, ITEM_PATH_INDEX);
     }
 
     public BlockPlaceEvent event;
@@ -90,6 +91,16 @@ public class PlayerPlacesBlockScriptEvent extends BukkitScriptEvent implements L
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return getItemPathIndexKey(item_in_hand);
+    }
+
+    @Override
+    public String getSecondaryPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ScriptEntryData getScriptEntryData() {
         return new BukkitScriptEntryData(event.getPlayer());
@@ -4,11 +4,11 @@ import com.denizenscript.denizen.events.BukkitScriptEvent;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
+import com.denizenscript.denizen.utilities.packets.PacketClassFilter;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.JavaReflectedObjectTag;
 import com.denizenscript.denizencore.scripts.ScriptEntryData;
-import com.denizenscript.denizencore.utilities.debugging.DebugInternals;
 import org.bukkit.entity.Player;
 
 public class PlayerReceivesPacketScriptEvent extends BukkitScriptEvent {
@@ -47,6 +47,8 @@ public class PlayerReceivesPacketScriptEvent extends BukkitScriptEvent {
     public PlayerTag player;
     public Object packet;
 
+    public final PacketClassFilter classFilter = new PacketClassFilter();
+
     @Override
     public boolean matches(ScriptPath path) {
         if (!runGenericSwitchCheck(path, "class", className.asString())) {
@@ -58,6 +60,7 @@ public class PlayerReceivesPacketScriptEvent extends BukkitScriptEvent {
     @Override
     public void init() {
         NetworkInterceptHelper.enable();
+        classFilter.update(eventPaths);
         super.init();
     }
 
@@ -75,9 +78,20 @@ public class PlayerReceivesPacketScriptEvent extends BukkitScriptEvent {
         return new BukkitScriptEntryData(player, null);
     }
 
+    /**
+     * Returns true if the event is enabled and any script path could match the packet's class, meaning fireFor should be called.
+     */
+    public static boolean shouldFireFor(Object packet) {
+        return instance.eventData.isEnabled && instance.classFilter.getInfo(packet.getClass()).canMatch;
+    }
+
     public static boolean fireFor(Player player, Object packet) {
+        PacketClassFilter.ClassInfo info = instance.classFilter.getInfo(packet.getClass());
+        if (!info.canMatch) {
+            return false;
+        }
         instance.player = new PlayerTag(player);
-        instance.className = new ElementTag(DebugInternals.getClassNameOpti(packet.getClass()));
+        instance.className = info.className;
         instance.packet = packet;
         return instance.fire().cancelled;
     }
@@ -40,6 +40,7 @@ public class PlayerStepsOnScriptEvent extends BukkitScriptEvent implements Liste
 
     public PlayerStepsOnScriptEvent() {
         registerCouldMatcher("player steps on <block>");
+        registerPathIndex(3, MATERIAL_PATH_INDEX);
     }
 
     public LocationTag location;
@@ -57,6 +58,11 @@ public class PlayerStepsOnScriptEvent extends BukkitScriptEvent implements Liste
         return super.matches(path);
     }
 
+    @Override
+    public String getPathIndexKey() {
+        return material.getMaterial().name();
+    }
+
     @Override
     public ScriptEntryData getScriptEntryData() {
         return new BukkitScriptEntryData(event.getPlayer());
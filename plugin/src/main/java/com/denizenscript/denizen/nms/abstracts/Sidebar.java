@@ -6,7 +6,10 @@ import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public abstract class Sidebar {
 
@@ -40,6 +43,24 @@ public abstract class Sidebar {
     protected String[] currentIds = null;
     public int setCount = 0;
 
+    /**
+     * What the client currently displays, so updates can send only what changed. A sentCount of -1 means nothing is displayed.
+     */
+    protected String[] sentLines = new String[MAX_LENGTH];
+    protected int[] sentScores = new int[MAX_LENGTH];
+    protected int sentCount = -1;
+    protected boolean titleChanged = true;
+
+    /**
+     * Parsed line components (of the version-specific type), shared by all sidebars since many players usually see the same lines.
+     */
+    private static final LinkedHashMap<String, Object> componentCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > 1024;
+        }
+    };
+
     public Sidebar(Player player) {
         this.player = player;
         setTitle("");
@@ -73,6 +94,7 @@ public abstract class Sidebar {
     public final void setTitle(String title) {
         if (this.title == null || !this.title.equals(title)) {
             this.title = title;
+            titleChanged = true;
             setDisplayName(title);
         }
     }
@@ -92,6 +114,42 @@ public abstract class Sidebar {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    public static <T> T getCachedComponent(String text, Function<String, T> parser) {
+        Object result = componentCache.get(text);
+        if (result == null) {
+            result = parser.apply(text);
+            componentCache.put(text, result);
+        }
+        return (T) result;
+    }
+
+    /**
+     * Returns true if the next update has to rebuild the whole sidebar, rather than only changing lines in place.
+     */
+    protected boolean needsFullUpdate() {
+        return titleChanged || sentCount != setCount;
+    }
+
+    protected boolean lineChanged(int index) {
+        return !lines[index].equals(sentLines[index]);
+    }
+
+    protected boolean scoreChanged(int index) {
+        return scores[index] != sentScores[index];
+    }
+
+    protected void markSent() {
+        System.arraycopy(lines, 0, sentLines, 0, MAX_LENGTH);
+        System.arraycopy(scores, 0, sentScores, 0, MAX_LENGTH);
+        sentCount = setCount;
+        titleChanged = false;
+    }
+
+    protected void markRemoved() {
+        sentCount = -1;
+    }
+
     public abstract void sendUpdate();
 
     public abstract void remove();
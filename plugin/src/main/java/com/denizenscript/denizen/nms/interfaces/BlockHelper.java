@@ -3,6 +3,7 @@ package com.denizenscript.denizen.nms.interfaces;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.EntityTag;
+import org.bukkit.Chunk;
 import org.bukkit.Color;
 import org.bukkit.Instrument;
 import org.bukkit.Location;
@@ -95,4 +96,33 @@ public interface BlockHelper {
     default void setVanillaTags(Material material, Set<String> tags) {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Sets many blocks within one chunk section, without physics.
+     * Positions are relative to the section, packed as (x << 8) | (z << 4) | y, and only the first 'count' entries of the arrays are used.
+     * Implementations may write straight into the section, skipping unchanged blocks, and queue a single relight and section update.
+     */
+    default void setSectionBlocks(Chunk chunk, int sectionY, short[] positions, BlockData[] data, int count) {
+        int baseY = sectionY << 4;
+        for (int i = 0; i < count; i++) {
+            short position = positions[i];
+            chunk.getBlock((position >> 8) & 15, baseY + (position & 15), (position >> 4) & 15).setBlockData(data[i], false);
+        }
+    }
+
+    /**
+     * Sets many blocks within one chunk section, in the same format as {@link #setSectionBlocks(Chunk, int, short[], BlockData[], int)}.
+     * If 'physics' is true, each block must be set with full placement, removal and neighbour update logic, exactly as 'setBlockData(data, true)' would, so only the no-physics case may write straight into the section.
+     */
+    default void setSectionBlocks(Chunk chunk, int sectionY, short[] positions, BlockData[] data, int count, boolean physics) {
+        if (!physics) {
+            setSectionBlocks(chunk, sectionY, positions, data, count);
+            return;
+        }
+        int baseY = sectionY << 4;
+        for (int i = 0; i < count; i++) {
+            short position = positions[i];
+            chunk.getBlock((position >> 8) & 15, baseY + (position & 15), (position >> 4) & 15).setBlockData(data[i], true);
+        }
+    }
 }
@@ -175,6 +175,87 @@ public final class NBTInputStream implements Closeable {
         }
     }
 
+    /**
+     * Reads the type of the next named tag, for reading a stream piece by piece without building the whole tree.
+     * Unless the type is TAG_End, follow up with {@link #readTagName()} and then either {@link #readTagPayload(int)}, {@link #skipTagPayload(int)} or a direct read from {@link #getDataInput()}.
+     */
+    public int readTagType() throws IOException {
+        return is.readByte() & 0xFF;
+    }
+
+    public String readTagName() throws IOException {
+        int nameLength = is.readShort() & 0xFFFF;
+        byte[] nameBytes = new byte[nameLength];
+        is.readFully(nameBytes);
+        return new String(nameBytes, NBTConstants.CHARSET);
+    }
+
+    /**
+     * Reads the payload of a tag nested within the current compound.
+     */
+    public Tag readTagPayload(int type) throws IOException {
+        return readTagPayload(type, 1);
+    }
+
+    /**
+     * Skips over the payload of a tag without building any tag objects.
+     */
+    public void skipTagPayload(int type) throws IOException {
+        switch (type) {
+            case NBTConstants.TYPE_END:
+                break;
+            case NBTConstants.TYPE_BYTE:
+                is.skipNBytes(1);
+                break;
+            case NBTConstants.TYPE_SHORT:
+                is.skipNBytes(2);
+                break;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                is.skipNBytes(4);
+                break;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                is.skipNBytes(8);
+                break;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                is.skipNBytes(is.readInt());
+                break;
+            case NBTConstants.TYPE_STRING:
+                is.skipNBytes(is.readShort() & 0xFFFF);
+                break;
+            case NBTConstants.TYPE_LIST:
+                int childType = is.readByte();
+                int length = is.readInt();
+                for (int i = 0; i < length; i++) {
+                    skipTagPayload(childType);
+                }
+                break;
+            case NBTConstants.TYPE_COMPOUND:
+                while (true) {
+                    int childTagType = readTagType();
+                    if (childTagType == NBTConstants.TYPE_END) {
+                        break;
+                    }
+                    is.skipNBytes(is.readShort() & 0xFFFF);
+                    skipTagPayload(childTagType);
+                }
+                break;
+            case NBTConstants.TYPE_INT_ARRAY:
+                is.skipNBytes(is.readInt() * 4L);
+                break;
+            case NBTConstants.TYPE_LONG_ARRAY:
+                is.skipNBytes(is.readInt() * 8L);
+                break;
+            default:
+                throw new IOException("Invalid tag type: " + type + ".");
+        }
+    }
+
+    public DataInputStream getDataInput() {
+        return is;
+    }
+
     @Override
     public void close() throws IOException {
         is.close();
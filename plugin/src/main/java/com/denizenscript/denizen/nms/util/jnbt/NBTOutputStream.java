@@ -76,6 +76,29 @@ public final class NBTOutputStream implements Closeable {
         writeTagPayload(tag);
     }
 
+    /**
+     * Writes just the type and name of a tag, for writing a stream piece by piece.
+     * The payload must then be written directly to {@link #getDataOutput()}, and any compound opened this way closed with {@link #writeEndTag()}.
+     *
+     * @param type The tag type.
+     * @param name The tag name.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeTagHeader(int type, String name) throws IOException {
+        byte[] nameBytes = name.getBytes(NBTConstants.CHARSET);
+        os.writeByte(type);
+        os.writeShort(nameBytes.length);
+        os.write(nameBytes);
+    }
+
+    public void writeEndTag() throws IOException {
+        os.writeByte(NBTConstants.TYPE_END);
+    }
+
+    public DataOutputStream getDataOutput() {
+        return os;
+    }
+
     /**
      * Writes tag payload.
      *
@@ -2,6 +2,7 @@ package com.denizenscript.denizen.npc.traits;
 
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.NPCTag;
+import com.denizenscript.denizen.utilities.entity.EntitySpatialIndex;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import net.citizensnpcs.api.event.NPCTraitCommandAttachEvent;
 import net.citizensnpcs.api.trait.Trait;
@@ -10,6 +11,7 @@ import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.util.BoundingBox;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -41,9 +43,14 @@ public class MobproxTrait extends Trait {
                 if (getNPC().isSpawned()) {
                     int range = getRange();
                     boolean acceptnpc = acceptNpcs();
-                    List<Entity> nearby = liveEnt.getNearbyEntities(range, range, range);
+                    BoundingBox box = liveEnt.getBoundingBox().expand(range);
+                    // Only use the spatial index if something else already brought it up to date this tick, as refreshing it touches every entity in the world
+                    List<Entity> nearby = EntitySpatialIndex.isFresh(liveEnt.getWorld()) ? EntitySpatialIndex.getFor(liveEnt.getWorld()).getPossibleEntities(box) : liveEnt.getNearbyEntities(range, range, range);
                     List<Entity> removeme = new ArrayList<>(inrange);
                     for (Entity ent : nearby) {
+                        if (ent == liveEnt || !ent.isValid() || !box.overlaps(ent.getBoundingBox())) {
+                            continue;
+                        }
                         if (ent instanceof LivingEntity && (!(ent instanceof Player) || EntityTag.isCitizensNPC(ent))
                                 && (acceptnpc || (!EntityTag.isCitizensNPC(ent)))) {
                             removeme.remove(ent);
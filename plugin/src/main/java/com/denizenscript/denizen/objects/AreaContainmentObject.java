@@ -3,6 +3,7 @@ package com.denizenscript.denizen.objects;
 import com.denizenscript.denizen.events.BukkitScriptEvent;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.utilities.NotedAreaTracker;
+import com.denizenscript.denizen.utilities.blocks.BlockScanner;
 import com.denizenscript.denizen.utilities.blocks.SpawnableHelper;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
@@ -21,6 +22,7 @@ import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 
+import java.util.List;
 import java.util.function.Predicate;
 
 public interface AreaContainmentObject extends ObjectTag {
@@ -226,6 +228,13 @@ public interface AreaContainmentObject extends ObjectTag {
                 NMSHandler.chunkHelper.changeChunkServerThread(area.getWorld().getWorld());
                 try {
                     String matcher = attribute.getParam();
+                    if (area instanceof CuboidTag cuboid) {
+                        boolean[] materials = BlockScanner.compileMaterialMatcher(matcher, attribute.context);
+                        List<LocationTag> found = materials == null ? null : cuboid.scanBlocks(BlockScanner.materialTest(materials));
+                        if (found != null) {
+                            return new ListTag(found);
+                        }
+                    }
                     Predicate<Location> predicate = (l) -> new LocationTag(l).tryAdvancedMatcher(matcher, attribute.context);
                     return area.getBlocks(predicate);
                 }
@@ -250,8 +259,19 @@ public interface AreaContainmentObject extends ObjectTag {
         processor.registerTag(ListTag.class, "spawnable_blocks", (attribute, area) -> {
             NMSHandler.chunkHelper.changeChunkServerThread(area.getWorld().getWorld());
             try {
-                if (attribute.hasParam()) {
-                    String matcher = attribute.getParam();
+                String matcher = attribute.hasParam() ? attribute.getParam() : null;
+                if (area instanceof CuboidTag cuboid) {
+                    boolean[] materials = matcher == null ? null : BlockScanner.compileMaterialMatcher(matcher, attribute.context);
+                    if (matcher == null || materials != null) {
+                        int minHeight = area.getWorld().getWorld().getMinHeight(), maxHeight = area.getWorld().getWorld().getMaxHeight();
+                        List<LocationTag> found = cuboid.scanBlocks((snapshot, x, y, z) -> SpawnableHelper.isSpawnable(snapshot, x, y, z, minHeight, maxHeight)
+                                && (materials == null || materials[snapshot.getBlockType(x, y - 1, z).ordinal()]));
+                        if (found != null) {
+                            return new ListTag(found);
+                        }
+                    }
+                }
+                if (matcher != null) {
                     Predicate<Location> predicate = (l) -> SpawnableHelper.isSpawnable(l) && new LocationTag(l.getBlock().getRelative(0, -1, 0).getLocation()).tryAdvancedMatcher(matcher, attribute.context);
                     return area.getBlocks(predicate);
                 }
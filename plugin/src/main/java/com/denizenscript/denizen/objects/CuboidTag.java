@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.objects;
 
 import com.denizenscript.denizen.utilities.NotedAreaTracker;
+import com.denizenscript.denizen.utilities.blocks.BlockScanner;
 import com.denizenscript.denizencore.tags.TagManager;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
@@ -520,6 +521,30 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         return list;
     }
 
+    /**
+     * Scans the cuboid's blocks using chunk snapshots, returning the same list (in the same order) that {@link #getBlocks_internal(Predicate)} would for an equivalent test.
+     * Returns null if the cuboid is too small for snapshots to be worth it, or too large to snapshot, in which case the caller should fall back to the normal scan.
+     */
+    public List<LocationTag> scanBlocks(BlockScanner.BlockTest test) {
+        List<BlockScanner> scanners = new ArrayList<>(pairs.size());
+        long volume = 0;
+        for (LocationPair pair : pairs) {
+            BlockScanner scanner = new BlockScanner(pair.low.getWorld(), pair.low.getBlockX(), pair.low.getBlockY(), pair.low.getBlockZ(), pair.high.getBlockX(), pair.high.getBlockY(), pair.high.getBlockZ());
+            volume += scanner.getVolume();
+            scanners.add(scanner);
+        }
+        if (volume < BlockScanner.MIN_SNAPSHOT_VOLUME || volume > Settings.blockTagsMaxSnapshotBlocks()) {
+            return null;
+        }
+        List<LocationTag> list = new ArrayList<>();
+        for (BlockScanner scanner : scanners) {
+            for (long index : scanner.scan(null, test)) {
+                list.add(scanner.getLocation(index));
+            }
+        }
+        return list;
+    }
+
     public List<LocationTag> getBlockLocationsUnfiltered(boolean doMax) {
         int max = doMax ? Settings.blockTagsMaxBlocks() : Integer.MAX_VALUE;
         List<LocationTag> list = new ArrayList<>();
@@ -16,6 +16,7 @@ import com.denizenscript.denizen.scripts.commands.player.DisguiseCommand;
 import com.denizenscript.denizen.scripts.containers.core.EntityScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.EntityScriptHelper;
 import com.denizenscript.denizen.utilities.BukkitImplDeprecations;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
 import com.denizenscript.denizen.utilities.MultiVersionHelper1_19;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.VanillaTagHelper;
@@ -4583,7 +4584,7 @@ public class EntityTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
 
     @Override
     public boolean advancedMatches(String text, TagContext context) {
-        ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(text);
+        ScriptEvent.MatchHelper matcher = CompiledMatcher.get(text).getMatchHelper();
         if (isCitizensNPC()) {
             return matcher.doesMatch("npc", this::tryExactMatcher);
         }
@@ -4,6 +4,7 @@ import com.denizenscript.denizen.events.BukkitScriptEvent;
 import com.denizenscript.denizen.scripts.containers.core.InventoryScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.InventoryScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
 import com.denizenscript.denizen.utilities.PaperAPITools;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
@@ -2584,20 +2585,20 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
 
     @Override
     public boolean advancedMatches(String comparedto, TagContext context) {
-        String matcherLow = CoreUtilities.toLowerCase(comparedto);
+        CompiledMatcher compiled = CompiledMatcher.get(comparedto);
+        String matcherLow = compiled.lowText;
         if (matcherLow.equals("inventory")) {
             return true;
         }
         if (matcherLow.equals("notable") || matcherLow.equals("note")) {
             return NoteManager.isSaved(this);
         }
-        if (matcherLow.startsWith("inventory_flagged:")) {
-            return flagTracker != null && BukkitScriptEvent.coreFlaggedCheck(comparedto.substring("inventory_flagged:".length()), flagTracker);
+        if (compiled.hasPrefix("inventory_flagged")) {
+            return flagTracker != null && BukkitScriptEvent.coreFlaggedCheck(compiled.prefixValue, flagTracker);
         }
         if (matcherLow.equals("gui")) {
             return InventoryScriptHelper.isGUI(getInventory());
         }
-        ScriptEvent.MatchHelper matcher = BukkitScriptEvent.createMatcher(comparedto);
-        return compareInventoryToMatch(matcher);
+        return compareInventoryToMatch(compiled.getMatchHelper());
     }
 }
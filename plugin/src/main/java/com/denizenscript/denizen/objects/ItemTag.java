@@ -11,6 +11,7 @@ import com.denizenscript.denizen.scripts.containers.core.BookScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.tags.BukkitTagContext;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
 import com.denizenscript.denizencore.events.ScriptEvent;
@@ -847,53 +848,50 @@ public class ItemTag implements ObjectTag, Adjustable, FlaggableObject {
 
     @Override
     public boolean advancedMatches(String matcher, TagContext context) {
-        String matcherLow = CoreUtilities.toLowerCase(matcher);
-        if (matcherLow.contains(":")) {
-            if (matcherLow.startsWith("item_flagged:")) {
-                if (getBukkitMaterial().isAir()) {
-                    return false;
-                }
-                return BukkitScriptEvent.coreFlaggedCheck(matcher.substring("item_flagged:".length()), getFlagTracker());
-            }
-            else if (matcherLow.startsWith("item_enchanted:")) {
-                String enchMatcher = matcher.substring("item_enchanted:".length());
-                if (getBukkitMaterial().isAir() || !getItemMeta().hasEnchants()) {
-                    return false;
-                }
-                for (Enchantment enchant : getItemMeta().getEnchants().keySet()) {
-                    if (BukkitScriptEvent.runGenericCheck(enchMatcher, enchant.getKey().getKey())) {
-                        return true;
+        CompiledMatcher compiled = CompiledMatcher.get(matcher);
+        if (compiled.prefix != null) {
+            switch (compiled.prefix) {
+                case "item_flagged":
+                    if (getBukkitMaterial().isAir()) {
+                        return false;
                     }
-                }
-                return false;
-            }
-            else if (matcherLow.startsWith("raw_exact:")) {
-                ItemTag compareItem = ItemTag.valueOf(matcher.substring("raw_exact:".length()), CoreUtilities.errorButNoDebugContext);
-                return compareItem != null && compareItem.matchesRawExact(this);
+                    return BukkitScriptEvent.coreFlaggedCheck(compiled.prefixValue, getFlagTracker());
+                case "item_enchanted":
+                    if (getBukkitMaterial().isAir() || !getItemMeta().hasEnchants()) {
+                        return false;
+                    }
+                    ScriptEvent.MatchHelper enchantMatcher = compiled.getPrefixValueMatchHelper();
+                    for (Enchantment enchant : getItemMeta().getEnchants().keySet()) {
+                        if (enchantMatcher.doesMatch(enchant.getKey().getKey())) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case "raw_exact":
+                    ItemTag compareItem = ItemTag.valueOf(compiled.prefixValue, CoreUtilities.errorButNoDebugContext);
+                    return compareItem != null && compareItem.matchesRawExact(this);
             }
         }
-        if (matcherLow.equals("potion") && CoreUtilities.toLowerCase(getBukkitMaterial().name()).contains("potion")) {
+        if (compiled.lowText.equals("potion") && CoreUtilities.toLowerCase(getBukkitMaterial().name()).contains("potion")) {
             return true;
         }
-        boolean isItemScript = isItemscript();
-        if (matcherLow.equals("script") && isItemScript) {
-            return true;
-        }
-        if (matcher.contains("[") && matcher.endsWith("]")) {
-            PropertyMatchHelper<ItemTag> helper = PropertyMatchHelper.getPropertyMatchHelper(ItemTag.class, matcher, (actual, compare) -> {
+        // Property matchers don't need the (relatively slow) item script check
+        if (compiled.hasProperties) {
+            PropertyMatchHelper<ItemTag> helper = compiled.getForType(ItemTag.class, () -> PropertyMatchHelper.getPropertyMatchHelper(ItemTag.class, matcher, (actual, compare) -> {
                 return actual.getBukkitMaterial() == compare.getBukkitMaterial();
-            });
+            }));
             if (helper == null) {
                 return false;
             }
             return helper.doesMatch(this);
         }
-        if (isItemScript) {
-            ScriptEvent.MatchHelper matchHelper = BukkitScriptEvent.createMatcher(matcher);
-            if (matchHelper.doesMatch(getScriptName())) {
-                return true;
-            }
+        boolean isItemScript = isItemscript();
+        if (compiled.lowText.equals("script") && isItemScript) {
+            return true;
+        }
+        if (isItemScript && compiled.getMatchHelper().doesMatch(getScriptName())) {
+            return true;
         }
-        return MaterialTag.advancedMatchesInternal(getBukkitMaterial(), matcher, !isItemScript);
+        return compiled.matchesMaterial(getBukkitMaterial(), !isItemScript);
     }
 }
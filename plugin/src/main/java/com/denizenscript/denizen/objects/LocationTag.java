@@ -13,9 +13,11 @@ import com.denizenscript.denizen.objects.properties.material.MaterialDistance;
 import com.denizenscript.denizen.objects.properties.material.MaterialHalf;
 import com.denizenscript.denizen.scripts.commands.world.SwitchCommand;
 import com.denizenscript.denizen.utilities.*;
+import com.denizenscript.denizen.utilities.blocks.BlockScanner;
 import com.denizenscript.denizen.utilities.blocks.SpawnableHelper;
-import com.denizenscript.denizen.utilities.flags.DataPersistenceFlagTracker;
+import com.denizenscript.denizen.utilities.entity.NearbyResults;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
+import com.denizenscript.denizen.utilities.flags.LocationFlagTracker;
 import com.denizenscript.denizen.utilities.world.PathFinder;
 import com.denizenscript.denizen.utilities.world.WorldListChangeTracker;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
@@ -473,7 +475,7 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
         if (getWorld() == null) {
             return null;
         }
-        return new DataPersistenceFlagTracker(getChunk(), "flag_tracker_" + getBlockX() + "_" + getBlockY() + "_" + getBlockZ() + "_");
+        return new LocationFlagTracker(getChunk(), getBlockX(), getBlockY(), getBlockZ());
     }
 
     @Override
@@ -725,6 +727,32 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
         }
     }
 
+    /**
+     * Gets a block scanner for the cube of blocks within the given distance of this location's block.
+     */
+    public BlockScanner getScannerWithin(int radius) {
+        int x = getBlockX(), y = getBlockY(), z = getBlockZ();
+        return new BlockScanner(getWorld(), x - radius, y - radius, z - radius, x + radius, y + radius, z + radius);
+    }
+
+    /**
+     * Scans for blocks whose centers are within the radius of this location, returning the matches offset by the given X/Z and Y amounts, sorted by closeness.
+     */
+    public ListTag scanBlocksWithin(BlockScanner scanner, double radius, BlockScanner.BlockTest test, double horizontalOffset, double yOffset) {
+        double radiusSquared = radius * radius;
+        double centerX = getX() - 0.5, centerY = getY() - 0.5, centerZ = getZ() - 0.5;
+        long[] indices = scanner.scan((x, y, z) -> {
+            double xOff = x - centerX, yOff = y - centerY, zOff = z - centerZ;
+            return xOff * xOff + yOff * yOff + zOff * zOff < radiusSquared;
+        }, test);
+        List<LocationTag> found = new ArrayList<>(indices.length);
+        for (long index : indices) {
+            found.add(new LocationTag(scanner.world, scanner.getX(index) + horizontalOffset, scanner.getY(index) + yOffset, scanner.getZ(index) + horizontalOffset));
+        }
+        found.sort(this::compare);
+        return new ListTag(found);
+    }
+
     public int compare(Location loc1, Location loc2) {
         if (loc1 == null || loc2 == null || loc1.equals(loc2)) {
             return 0;
@@ -2673,18 +2701,19 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
             }
             double radius = attribute.getDoubleContext(2);
             attribute.fulfill(1);
-            ListTag found = new ListTag();
+            NearbyResults found = new NearbyResults();
             BoundingBox box = BoundingBox.of(object, radius, radius, radius);
+            Location entityLocation = new Location(null, 0, 0, 0);
             for (Entity entity : new WorldTag(object.getWorld()).getPossibleEntitiesForBoundaryForTag(box)) {
                 if (Utilities.checkLocationWithBoundingBox(object, entity, radius)) {
                     EntityTag current = new EntityTag(entity);
                     if (matcher == null || current.tryAdvancedMatcher(matcher, attribute.context)) {
-                        found.addObject(current.getDenizenObject());
+                        found.add(current.getDenizenObject(), object.distanceSquared(entity.getLocation(entityLocation)));
                     }
                 }
             }
-            found.objectForms.sort((ent1, ent2) -> object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation()));
-            return found;
+            found.sortNearest(NearbyResults.getSortLimit(attribute, 2));
+            return found.toListTag();
         });
 
         // <--[tag]
@@ -2703,12 +2732,19 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
             }
             double radius = attribute.getDoubleContext(2);
             attribute.fulfill(1);
+            Location tstart = object.getBlockLocation();
+            int radiusInt = (int) Math.ceil(radius);
+            if (matcher != null && object.getWorld() != null) {
+                BlockScanner scanner = object.getScannerWithin(radiusInt);
+                boolean[] materials = scanner.shouldUseSnapshots() ? BlockScanner.compileMaterialMatcher(matcher, attribute.context) : null;
+                if (materials != null) {
+                    return object.scanBlocksWithin(scanner, radius, BlockScanner.materialTest(materials), 0, 0);
+                }
+            }
             ListTag found = new ListTag();
             int max = Settings.blockTagsMaxBlocks();
             int index = 0;
-            Location tstart = object.getBlockLocation();
             double tstartY = tstart.getY();
-            int radiusInt = (int) Math.ceil(radius);
             fullloop:
             for (int y = -radiusInt; y <= radiusInt; y++) {
                 double newY = y + tstartY;
@@ -2767,6 +2803,7 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
             int maxChunkZ = (int) Math.ceil(maxPossibleZ / 16);
             ChunkTag testChunk = new ChunkTag(object);
             Location refLoc = object.clone();
+            boolean[] materials = matcher == null ? null : BlockScanner.compileMaterialMatcher(matcher, attribute.context);
             fullLoop:
             for (int x = minChunkX; x <= maxChunkX; x++) {
                 testChunk.chunkX = x;
@@ -2778,10 +2815,13 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
                             if (index++ > max) {
                                 break fullLoop;
                             }
+                            if (materials != null && !materials[block.getType().ordinal()]) {
+                                continue;
+                            }
                             Location current = block.getLocation(refLoc).add(0.5, 0.5, 0.5);
                             if (Utilities.checkLocation(object, current, radius)) {
                                 LocationTag actualLoc = new LocationTag(current);
-                                if (matcher == null || actualLoc.tryAdvancedMatcher(matcher, attribute.context)) {
+                                if (materials != null || matcher == null || actualLoc.tryAdvancedMatcher(matcher, attribute.context)) {
                                     found.addObject(actualLoc);
                                 }
                             }
@@ -2807,12 +2847,19 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
                 return null;
             }
             double radius = attribute.getDoubleParam();
+            Location tstart = object.getBlockLocation();
+            int radiusInt = (int) Math.ceil(radius);
+            if (object.getWorld() != null) {
+                BlockScanner scanner = object.getScannerWithin(radiusInt);
+                if (scanner.shouldUseSnapshots()) {
+                    int minHeight = scanner.world.getMinHeight(), maxHeight = scanner.world.getMaxHeight();
+                    return object.scanBlocksWithin(scanner, radius, (snapshot, x, y, z) -> SpawnableHelper.isSpawnable(snapshot, x, y, z, minHeight, maxHeight), 0.5, 0);
+                }
+            }
             ListTag found = new ListTag();
             int max = Settings.blockTagsMaxBlocks();
             int index = 0;
-            Location tstart = object.getBlockLocation();
             double tstartY = tstart.getY();
-            int radiusInt = (int) Math.ceil(radius);
             fullloop:
             for (int y = -radiusInt; y <= radiusInt; y++) {
                 double newY = y + tstartY;
@@ -2849,14 +2896,15 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
                 return null;
             }
             double radius = attribute.getDoubleParam();
-            ArrayList<PlayerTag> found = new ArrayList<>();
+            NearbyResults found = new NearbyResults();
+            Location playerLocation = new Location(null, 0, 0, 0);
             for (Player player : Bukkit.getOnlinePlayers()) {
                 if (!player.isDead() && Utilities.checkLocationWithBoundingBox(object, player, radius)) {
-                    found.add(new PlayerTag(player));
+                    found.add(new PlayerTag(player), object.distanceSquared(player.getLocation(playerLocation)));
                 }
             }
-            found.sort((pl1, pl2) -> object.compare(pl1.getLocation(), pl2.getLocation()));
-            return new ListTag(found);
+            found.sortNearest(NearbyResults.getSortLimit(attribute, 2));
+            return found.toListTag();
         });
 
         // <--[tag]
@@ -2872,14 +2920,15 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
                 return null;
             }
             double radius = attribute.getDoubleParam();
-            ArrayList<NPCTag> found = new ArrayList<>();
+            NearbyResults found = new NearbyResults();
+            Location npcLocation = new Location(null, 0, 0, 0);
             for (NPC npc : CitizensAPI.getNPCRegistry()) {
                 if (npc.isSpawned() && Utilities.checkLocationWithBoundingBox(object, npc.getEntity(), radius)) {
-                    found.add(new NPCTag(npc));
+                    found.add(new NPCTag(npc), object.distanceSquared(npc.getEntity().getLocation(npcLocation)));
                 }
             }
-            found.sort((npc1, npc2) -> object.compare(npc1.getLocation(), npc2.getLocation()));
-            return new ListTag(found);
+            found.sortNearest(NearbyResults.getSortLimit(attribute, 2));
+            return found.toListTag();
         });
 
         tagProcessor.registerTag(ObjectTag.class, "find", (attribute, object) -> {
@@ -3130,7 +3179,9 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
         // @group finding
         // @description
         // Returns a full list of points along the path from this location to the given location.
-        // Uses a max range of 100 blocks from the start.
+        // Uses a max range of 100 blocks from the start, and only searches through loaded chunks.
+        // Returns an empty list if no path was found.
+        // This runs on the main thread and gives up after checking 50,000 positions, for longer searches or custom movement rules use <@link command findpath>.
         // -->
         tagProcessor.registerTag(ListTag.class, "find_path", (attribute, object) -> {
             if (!attribute.hasParam()) {
@@ -5655,16 +5706,16 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
 
     @Override
     public boolean advancedMatches(String matcher, TagContext context) {
-        String matcherLow = CoreUtilities.toLowerCase(matcher);
-        if (matcherLow.equals("location")) {
+        CompiledMatcher compiled = CompiledMatcher.get(matcher);
+        if (compiled.lowText.equals("location")) {
             return true;
         }
-        if (matcherLow.contains(":")) {
-            if (matcherLow.startsWith("block_flagged:")) {
-                return BukkitScriptEvent.coreFlaggedCheck(matcher.substring("block_flagged:".length()), getFlagTracker());
+        if (compiled.prefix != null) {
+            if (compiled.prefix.equals("block_flagged")) {
+                return BukkitScriptEvent.coreFlaggedCheck(compiled.prefixValue, getFlagTracker());
             }
-            if (matcherLow.startsWith("location_in:")) {
-                return BukkitScriptEvent.inCheckInternal(CoreUtilities.noDebugContext, "tryLocation", this, matcher.substring("location_in:".length()), "tryLocation", "tryLocation");
+            if (compiled.prefix.equals("location_in")) {
+                return BukkitScriptEvent.inCheckInternal(CoreUtilities.noDebugContext, "tryLocation", this, compiled.prefixValue, "tryLocation", "tryLocation");
             }
         }
         if (getWorld() == null) {
@@ -5,9 +5,9 @@ import com.denizenscript.denizen.nms.NMSVersion;
 import com.denizenscript.denizen.nms.interfaces.BlockHelper;
 import com.denizenscript.denizen.objects.properties.material.*;
 import com.denizenscript.denizen.utilities.BukkitImplDeprecations;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
 import com.denizenscript.denizen.utilities.VanillaTagHelper;
 import com.denizenscript.denizencore.DenizenCore;
-import com.denizenscript.denizencore.events.ScriptEvent;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
@@ -791,46 +791,7 @@ public class MaterialTag implements ObjectTag, Adjustable, FlaggableObject {
         if (comparedto == null || comparedto.isEmpty() || mat == null) {
             return false;
         }
-        String matcherLow = CoreUtilities.toLowerCase(comparedto);
-        if (matcherLow.equals("material")) {
-            return true;
-        }
-        if (matcherLow.equals("block")) {
-            return mat.isBlock();
-        }
-        if (matcherLow.equals("item")) {
-            return mat.isItem();
-        }
-        if (matcherLow.contains(":")) {
-            if (matcherLow.startsWith("vanilla_tagged:")) {
-                String tagCheck = comparedto.substring("vanilla_tagged:".length());
-                HashSet<String> tags = VanillaTagHelper.tagsByMaterial.get(mat);
-                if (tags == null) {
-                    return false;
-                }
-                ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(tagCheck);
-                for (String tag : tags) {
-                    if (matcher.doesMatch(tag)) {
-                        return true;
-                    }
-                }
-                return false;
-            }
-            else if (matcherLow.startsWith("material_flagged:")) {
-                return ScriptEvent.coreFlaggedCheck(comparedto.substring("material_flagged:".length()), new MaterialTag(mat).getFlagTracker());
-            }
-        }
-        if (allowByMaterialName) {
-            Material quickOf = Material.getMaterial(CoreUtilities.toUpperCase(comparedto));
-            if (quickOf != null) {
-                return quickOf == mat;
-            }
-            ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(comparedto);
-            if (matcher.doesMatch(mat.name())) {
-                return true;
-            }
-        }
-        return false;
+        return CompiledMatcher.get(comparedto).matchesMaterial(mat, allowByMaterialName);
     }
 
     @Override
@@ -838,10 +799,11 @@ public class MaterialTag implements ObjectTag, Adjustable, FlaggableObject {
         if (advancedMatchesInternal(getMaterial(), matcher, true)) {
             return true;
         }
-        if (matcher.contains("[") && matcher.endsWith("]")) {
-            PropertyMatchHelper<MaterialTag> helper = PropertyMatchHelper.getPropertyMatchHelper(MaterialTag.class, matcher, (actual, compare) -> {
+        CompiledMatcher compiled = CompiledMatcher.get(matcher);
+        if (compiled.hasProperties) {
+            PropertyMatchHelper<MaterialTag> helper = compiled.getForType(MaterialTag.class, () -> PropertyMatchHelper.getPropertyMatchHelper(MaterialTag.class, matcher, (actual, compare) -> {
                 return actual.getMaterial() == compare.getMaterial();
-            });
+            }));
             if (helper == null) {
                 return false;
             }
@@ -79,7 +79,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
     // A PlayerTag represents a player in the game.
     //
     // This object type is flaggable.
-    // Flags on this object type will be stored in the file "plugins/Denizen/player_flags/(UUID).dat",
+    // Flags on this object type will be stored in the file "plugins/Denizen/player_flags/(UUID).dzf" (or "(UUID).dat" if the binary format is disabled in config),
     // with automatic loading only when the player is online and caching for interacting with offline player flags.
     //
     // -->
@@ -2309,9 +2309,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
             ListTag list = new ListTag();
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
             if (map != null) {
-                for (LocationTag loc : map.byLocation.keySet()) {
-                    list.addObject(loc.clone());
-                }
+                map.forEach(block -> list.addObject(block.location.clone()));
             }
             return list;
         });
@@ -2331,7 +2329,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
             LocationTag input = attribute.paramAsType(LocationTag.class);
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
             if (map != null) {
-                FakeBlock block = map.byLocation.get(input);
+                FakeBlock block = map.get(input);
                 if (block != null) {
                     return block.material;
                 }
@@ -3,6 +3,8 @@ package com.denizenscript.denizen.objects;
 import com.denizenscript.denizen.events.BukkitScriptEvent;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.abstracts.BiomeNMS;
+import com.denizenscript.denizen.utilities.CompiledMatcher;
+import com.denizenscript.denizen.utilities.entity.EntitySpatialIndex;
 import com.denizenscript.denizen.utilities.flags.WorldFlagHandler;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
@@ -142,11 +144,16 @@ public class WorldTag implements ObjectTag, Adjustable, FlaggableObject {
     }
 
     public final Collection<Entity> getPossibleEntitiesForBoundary(BoundingBox box) {
-        // Bork-prevention: getNearbyEntities loops over chunks, so for large boxes just get the direct entity list, as that's probably better than a loop over unloaded chunks
+        World world = getWorld();
+        // Bork-prevention: getNearbyEntities loops over chunks, so for large boxes use the spatial index instead, as that's much better than a loop over unloaded chunks
+        // Small boxes always use getNearbyEntities, as the index is only re-bucketed once per tick and so can miss entities that spawned or moved since
         if (box.getWidthX() > 512 || box.getWidthZ() > 512) {
-            return getWorld().getEntities();
+            if (Bukkit.isPrimaryThread()) {
+                return EntitySpatialIndex.getFor(world).getPossibleEntities(box);
+            }
+            return world.getEntities();
         }
-        return getWorld().getNearbyEntities(box);
+        return world.getNearbyEntities(box);
     }
 
     public Collection<Entity> getPossibleEntitiesForBoundaryForTag(BoundingBox box) {
@@ -1406,13 +1413,13 @@ public class WorldTag implements ObjectTag, Adjustable, FlaggableObject {
 
     @Override
     public boolean advancedMatches(String matcher, TagContext context) {
-        String matcherLow = CoreUtilities.toLowerCase(matcher);
-        if (matcherLow.equals("world")) {
+        CompiledMatcher compiled = CompiledMatcher.get(matcher);
+        if (compiled.lowText.equals("world")) {
             return true;
         }
-        if (matcherLow.startsWith("world_flagged:")) {
-            return BukkitScriptEvent.coreFlaggedCheck(matcher.substring("world_flagged:".length()), getFlagTracker());
+        if (compiled.hasPrefix("world_flagged")) {
+            return BukkitScriptEvent.coreFlaggedCheck(compiled.prefixValue, getFlagTracker());
         }
-        return BukkitScriptEvent.runGenericCheck(matcher, getName());
+        return compiled.getMatchHelper().doesMatch(getName());
     }
 }
@@ -10,9 +10,11 @@ import com.denizenscript.denizen.utilities.PaperAPITools;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
+import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
 import com.denizenscript.denizencore.objects.Argument;
 import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.DurationTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
@@ -26,23 +28,24 @@ import org.bukkit.entity.Player;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 public class RenameCommand extends AbstractCommand {
 
     public RenameCommand() {
         setName("rename");
-        setSyntax("rename [<name>/cancel] (t:<entity>|...) (per_player) (for:<player>|...) (list_name_only)");
-        setRequiredArguments(1, 5);
+        setSyntax("rename [<name>/cancel/refresh] (t:<entity>|...) (per_player) (for:<player>|...) (list_name_only) (refresh:<duration>)");
+        setRequiredArguments(1, 6);
         setParseArgs(false);
         isProcedural = false;
     }
 
     // <--[command]
     // @Name Rename
-    // @Syntax rename [<name>/cancel] (t:<entity>|...) (per_player) (for:<player>|...) (list_name_only)
+    // @Syntax rename [<name>/cancel/refresh] (t:<entity>|...) (per_player) (for:<player>|...) (list_name_only) (refresh:<duration>)
     // @Required 1
-    // @Maximum 5
+    // @Maximum 6
     // @Short Renames the linked NPC or list of entities.
     // @Group entity
     //
@@ -62,6 +65,12 @@ public class RenameCommand extends AbstractCommand {
     // Rename to "cancel" per_player to intentionally end a per_player rename.
     // Optionally specify "for:" a list of players when using per_player.
     //
+    // By default, a per_player name is reprocessed every time the entity's data is sent to a player.
+    // Optionally specify a 'refresh:' duration to instead cache the name for each player that sees it, and only reprocess it once that duration has passed since it was last processed for that player.
+    // Note that a cached name is only updated when the entity's data is next sent after the duration passes, so prefer short durations for names that change often (like health bars).
+    // The default refresh duration (0s) can be changed in the Denizen config (under 'Commands.Rename.Per player refresh').
+    // Rename to "refresh" per_player to immediately reprocess and resend the current per_player name of the entities (optionally only for the "for:" players).
+    //
     // Optionally specify 'list_name_only' to only change the tab list name for a player. Works with 'per_player'.
     //
     // @Tags
@@ -81,6 +90,10 @@ public class RenameCommand extends AbstractCommand {
     // - rename <green><player.name> t:<[some_entity]> per_player
     // - wait 10s
     // - rename cancel t:<[some_entity]> per_player
+    //
+    // @Usage
+    // Use to show each player a health bar above an entity, rechecked at most once a second.
+    // - rename "<red><[some_entity].health.round> HP (you have <player.health.round>)" t:<[some_entity]> per_player refresh:1s
     // -->
 
     @Override
@@ -102,6 +115,14 @@ public class RenameCommand extends AbstractCommand {
                     && arg.matches("list_name_only")) {
                 scriptEntry.addObject("list_name_only", new ElementTag(true));
             }
+            else if (!scriptEntry.hasObject("refresh")
+                    && arg.matchesPrefix("refresh")) {
+                DurationTag refresh = DurationTag.valueOf(TagManager.tag(arg.getValue(), scriptEntry.getContext()), scriptEntry.getContext());
+                if (refresh == null) {
+                    throw new InvalidArgumentsException("Invalid refresh duration specified.");
+                }
+                scriptEntry.addObject("refresh", refresh);
+            }
             else if (!scriptEntry.hasObject("name")) {
                 scriptEntry.addObject("name", arg.getRawElement());
             }
@@ -125,12 +146,13 @@ public class RenameCommand extends AbstractCommand {
         final ElementTag name = scriptEntry.getElement("name");
         ElementTag perPlayer = scriptEntry.getElement("per_player");
         ElementTag listNameOnly = scriptEntry.getElement("list_name_only");
+        DurationTag refresh = scriptEntry.getObjectTag("refresh");
         ListTag targets = scriptEntry.getObjectTag("targets");
         List<PlayerTag> players = (List<PlayerTag>) scriptEntry.getObject("players");
         if (perPlayer != null && perPlayer.asBoolean()) {
             NetworkInterceptHelper.enable();
             if (scriptEntry.dbCallShouldDebug()) {
-                Debug.report(scriptEntry, getName(), name, targets, perPlayer, listNameOnly, db("for", players));
+                Debug.report(scriptEntry, getName(), name, targets, perPlayer, listNameOnly, refresh, db("for", players));
             }
             for (ObjectTag target : targets.objectForms) {
                 EntityTag entity = target.asType(EntityTag.class, CoreUtilities.noDebugContext);
@@ -140,7 +162,35 @@ public class RenameCommand extends AbstractCommand {
                         Debug.echoError("Invalid entity in rename command.");
                         continue;
                     }
-                    if (name.asString().equals("cancel")) {
+                    if (name.asString().equals("refresh")) {
+                        HashMap<UUID, RenameData> renames = customNames.get(bukkitEntity.getUniqueId());
+                        if (renames == null) {
+                            continue;
+                        }
+                        for (RenameData rename : renames.values()) {
+                            if (players == null) {
+                                rename.cache.clear();
+                            }
+                            else {
+                                for (PlayerTag player : players) {
+                                    rename.cache.remove(player.getUUID());
+                                }
+                            }
+                        }
+                        if (players == null) {
+                            for (Player player : NMSHandler.entityHelper.getPlayersThatSee(bukkitEntity)) {
+                                resendRename(player, bukkitEntity);
+                            }
+                        }
+                        else {
+                            for (PlayerTag player : players) {
+                                if (player.isOnline()) {
+                                    resendRename(player.getPlayerEntity(), bukkitEntity);
+                                }
+                            }
+                        }
+                    }
+                    else if (name.asString().equals("cancel")) {
                         customNames.remove(bukkitEntity.getUniqueId());
                         if (bukkitEntity.isCustomNameVisible()) {
                             if (players == null) {
@@ -169,6 +219,9 @@ public class RenameCommand extends AbstractCommand {
                         RenameData renamer = new RenameData();
                         renamer.nameFunction = nameGetter;
                         renamer.listOnly = listNameOnly != null && listNameOnly.asBoolean();
+                        if (refresh != null) {
+                            renamer.refreshMillis = refresh.getMillis();
+                        }
                         if (players == null) {
                             playerToFuncMap.put(null, renamer);
                         }
@@ -233,13 +286,62 @@ public class RenameCommand extends AbstractCommand {
         }
     }
 
+    /**
+     * The default time (in milliseconds) a per-player name is reused for a player before it's reprocessed, set by the config.
+     */
+    public static long defaultRefreshMillis = 0;
+
     public static HashMap<UUID, HashMap<UUID, RenameData>> customNames = new HashMap<>();
 
+    public static class CachedName {
+
+        public final String name;
+
+        public final long processedAt;
+
+        /**
+         * The name converted to a version-specific form (like an NMS text component), or null if not yet converted.
+         */
+        public volatile Object converted;
+
+        public CachedName(String name, long processedAt) {
+            this.name = name;
+            this.processedAt = processedAt;
+        }
+    }
+
     public static class RenameData {
 
         public Function<Player, String> nameFunction;
 
         public boolean listOnly;
+
+        public long refreshMillis = defaultRefreshMillis;
+
+        /**
+         * The most recent processed name for each player that has seen it.
+         */
+        public final ConcurrentHashMap<UUID, CachedName> cache = new ConcurrentHashMap<>();
+
+        public CachedName getNameFor(Player player) {
+            long now = DenizenCore.serverTimeMillis;
+            CachedName cached = cache.get(player.getUniqueId());
+            if (cached != null && now - cached.processedAt < refreshMillis) {
+                return cached;
+            }
+            String name = nameFunction.apply(player);
+            if (name == null) {
+                cache.remove(player.getUniqueId());
+                return null;
+            }
+            CachedName result = new CachedName(name, now);
+            if (cached != null && cached.name.equals(name)) {
+                // Unchanged name, so the previous conversion is still valid
+                result.converted = cached.converted;
+            }
+            cache.put(player.getUniqueId(), result);
+            return result;
+        }
     }
 
     public static boolean hasAnyDynamicRenames() {
@@ -260,7 +362,26 @@ public class RenameCommand extends AbstractCommand {
         }
     }
 
-    public static String getCustomNameFor(UUID entityId, Player player, boolean isForList) {
+    /**
+     * Drops all cached per-player names for an entity, so they are reprocessed the next time they're sent.
+     */
+    public static void invalidateCustomNames(UUID entityId) {
+        HashMap<UUID, RenameData> map = customNames.get(entityId);
+        if (map != null) {
+            for (RenameData rename : map.values()) {
+                rename.cache.clear();
+            }
+        }
+    }
+
+    public static void resendRename(Player player, Entity bukkitEntity) {
+        RenameData rename = getRenameFor(bukkitEntity.getUniqueId(), player, true);
+        if (rename != null) {
+            NMSHandler.packetHelper.sendRename(player, bukkitEntity, "", rename.listOnly);
+        }
+    }
+
+    public static RenameData getRenameFor(UUID entityId, Player player, boolean isForList) {
         HashMap<UUID, RenameData> map = customNames.get(entityId);
         if (map == null) {
             return null;
@@ -272,6 +393,36 @@ public class RenameCommand extends AbstractCommand {
                 return null;
             }
         }
-        return rename.nameFunction.apply(player);
+        return rename;
+    }
+
+    public static String getCustomNameFor(UUID entityId, Player player, boolean isForList) {
+        RenameData rename = getRenameFor(entityId, player, isForList);
+        if (rename == null) {
+            return null;
+        }
+        CachedName name = rename.getNameFor(player);
+        return name == null ? null : name.name;
+    }
+
+    /**
+     * Gets the custom (non-list) name for an entity as seen by a player, converted by the given function, reusing the previous conversion if the name hasn't changed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getCustomNameComponentFor(UUID entityId, Player player, Function<String, T> converter) {
+        RenameData rename = getRenameFor(entityId, player, false);
+        if (rename == null) {
+            return null;
+        }
+        CachedName name = rename.getNameFor(player);
+        if (name == null) {
+            return null;
+        }
+        Object converted = name.converted;
+        if (converted == null) {
+            converted = converter.apply(name.name);
+            name.converted = converted;
+        }
+        return (T) converted;
     }
 }
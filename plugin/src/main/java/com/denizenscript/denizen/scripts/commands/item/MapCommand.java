@@ -23,18 +23,18 @@ public class MapCommand extends AbstractCommand {
 
     public MapCommand() {
         setName("map");
-        setSyntax("map [<#>/new:<world>] (reset:<location>) (scale:<value>) (tracking) (image:<file>) (resize) (script:<script>) (dot:<color>) (radius:<#>) (x:<#>) (y:<#>) (text:<text>)");
-        setRequiredArguments(2, 10);
+        setSyntax("map [<#>/new:<world>] (reset:<location>) (scale:<value>) (tracking) (image:<file>) (resize) (dither) (script:<script>) (dot:<color>) (radius:<#>) (x:<#>) (y:<#>) (text:<text>)");
+        setRequiredArguments(2, 11);
         isProcedural = false;
         setPrefixesHandled("dot", "radius", "image", "script", "x", "y", "reset", "new", "text", "scale");
-        setBooleansHandled("resize", "tracking");
+        setBooleansHandled("resize", "tracking", "dither");
     }
 
     // <--[command]
     // @Name Map
-    // @Syntax map [<#>/new:<world>] (reset:<location>) (scale:<value>) (tracking) (image:<file>) (resize) (script:<script>) (dot:<color>) (radius:<#>) (x:<#>) (y:<#>) (text:<text>)
+    // @Syntax map [<#>/new:<world>] (reset:<location>) (scale:<value>) (tracking) (image:<file>) (resize) (dither) (script:<script>) (dot:<color>) (radius:<#>) (x:<#>) (y:<#>) (text:<text>)
     // @Required 2
-    // @Maximum 10
+    // @Maximum 11
     // @Short Modifies a new or existing map by adding images or text.
     // @Group item
     //
@@ -45,6 +45,7 @@ public class MapCommand extends AbstractCommand {
     //
     // When using 'reset', you can specify optionally 'scale' and/or 'tracking'.
     // When using 'image' you can optionally specify 'resize'.
+    // When using 'image' you can also optionally specify 'dither', to blend the image's colors into the map's limited palette using error diffusion (looks better for photos and gradients, worse for pixel art).
     // When using 'dot', you can specify any valid ColorTag (it will be compressed to map's color space), and you can optionally also specify 'radius' as a number.
     //    Use "radius:0" with dot to set on a single pixel. 1 or higher will make a circle centered on the x/y given.
     //
@@ -110,6 +111,7 @@ public class MapCommand extends AbstractCommand {
         LocationTag resetLoc = scriptEntry.argForPrefix("reset", LocationTag.class, true);
         ElementTag image = scriptEntry.argForPrefixAsElement("image", null);
         boolean resize = scriptEntry.argAsBoolean("resize");
+        boolean dither = scriptEntry.argAsBoolean("dither");
         ScriptTag script = scriptEntry.argForPrefix("script", ScriptTag.class, true);
         ElementTag width = scriptEntry.argForPrefixAsElement("width", null);
         ElementTag height = scriptEntry.argForPrefixAsElement("height", null);
@@ -133,7 +135,7 @@ public class MapCommand extends AbstractCommand {
             throw new InvalidArgumentsRuntimeException("Must specify a valid action to perform!");
         }
         if (scriptEntry.dbCallShouldDebug()) {
-            Debug.report(scriptEntry, getName(), id, create, resetLoc, image, script, dot, radius, scale, db("resize", resize), db("tracking", tracking), width, height, x, y, text);
+            Debug.report(scriptEntry, getName(), id, create, resetLoc, image, script, dot, radius, scale, db("resize", resize), db("dither", dither), db("tracking", tracking), width, height, x, y, text);
         }
         MapView map;
         if (create != null) {
@@ -172,7 +174,7 @@ public class MapCommand extends AbstractCommand {
             if (image.asLowerString().endsWith(".gif")) {
                 dmr.autoUpdate = true;
             }
-            dmr.addObject(new MapImage(dmr, x.asString(), y.asString(), "true", false, image.asString(), wide, high));
+            dmr.addObject(new MapImage(dmr, x.asString(), y.asString(), "true", false, image.asString(), wide, high, dither));
             dmr.hasChanged = true;
         }
         if (dot != null) {
@@ -16,6 +16,7 @@ import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -136,16 +137,15 @@ public class ShowFakeCommand extends AbstractCommand {
         if (scriptEntry.dbCallShouldDebug()) {
             Debug.report(scriptEntry, getName(), duration, cancel, db("materials", materials), db("locations", locations), db("players", players));
         }
-        boolean shouldCancel = cancel.asBoolean();
-        int i = 0;
+        List<LocationTag> blockLocations = new ArrayList<>(locations.size());
         for (LocationTag loc : locations) {
-            if (!shouldCancel) {
-                FakeBlock.showFakeBlockTo(players, loc.getBlockLocation(), materials.get(i % materials.size()), duration, locations.size() < 5);
-            }
-            else {
-                FakeBlock.stopShowingTo(players, loc.getBlockLocation());
-            }
-            i++;
+            blockLocations.add(loc.getBlockLocation());
+        }
+        if (!cancel.asBoolean()) {
+            FakeBlock.showFakeBlocksTo(players, blockLocations, materials, duration, locations.size() < 5);
+        }
+        else {
+            FakeBlock.stopShowingTo(players, blockLocations);
         }
     }
 }
@@ -0,0 +1,125 @@
+package com.denizenscript.denizen.scripts.commands.world;
+
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.world.PathFinder;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+
+public class FindPathCommand extends AbstractCommand implements Holdable {
+
+    public FindPathCommand() {
+        setName("findpath");
+        setSyntax("findpath [<location>] [to:<location>] (range:<#>) (jump:<#>) (fall:<#>) (swim:{true}/false) (doors:{true}/false) (max_nodes:<#>)");
+        setRequiredArguments(2, 8);
+        setPrefixesHandled("range", "jump", "fall", "swim", "doors", "max_nodes");
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name FindPath
+    // @Syntax findpath [<location>] [to:<location>] (range:<#>) (jump:<#>) (fall:<#>) (swim:{true}/false) (doors:{true}/false) (max_nodes:<#>)
+    // @Required 2
+    // @Maximum 8
+    // @Short Finds a walkable path between two locations, without holding up the server.
+    // @Group world
+    //
+    // @Description
+    // Finds a walkable path from the first location to the 'to' location.
+    // The search runs in the background, so this command is ~waitable. Refer to <@link language ~waitable>.
+    // Without the '~', the path will not yet be available on the next line of the script.
+    //
+    // The search only goes through loaded chunks, and treats unloaded chunks as solid.
+    // Blocks are read as the search reaches them, in batches of chunks each tick, so changes to the world after a chunk was read are not seen by the search.
+    // Recently found paths are reused for up to 10 seconds, for searches towards the same destination with the same settings that start anywhere along a previous path.
+    //
+    // Optionally specify a maximum horizontal range from the start (default 100, at most 256).
+    // Optionally specify how many blocks a single step can climb up (default 1), or drop down (default 3).
+    // Optionally specify whether the path may go through water (default true).
+    // Optionally specify whether the path may go through wooden doors and fence gates, as if they were open (default true).
+    // Optionally specify how many positions the search may check before giving up (default 200000).
+    //
+    // For a quick search that doesn't need to wait, you can instead use <@link tag LocationTag.find_path>.
+    //
+    // @Tags
+    // <entry[saveName].path> returns the list of block locations along the path, from the start to the destination (empty if no path was found).
+    // <entry[saveName].found> returns whether a path was found.
+    //
+    // @Usage
+    // Use to find a path from the player to a spawn point, then show it with particles.
+    // - ~findpath <player.location> to:<[spawn]> save:path
+    // - if <entry[path].found>:
+    //     - playeffect effect:happy_villager at:<entry[path].path.parse[center]> offset:0
+    //
+    // @Usage
+    // Use to find a path that doesn't go through water or doors, and allows higher jumps.
+    // - ~findpath <npc.location> to:<player.location> swim:false doors:false jump:2 save:path
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("destination")
+                    && arg.matchesPrefix("to")
+                    && arg.matchesArgumentType(LocationTag.class)) {
+                scriptEntry.addObject("destination", arg.asType(LocationTag.class));
+            }
+            else if (!scriptEntry.hasObject("start")
+                    && !arg.hasPrefix()
+                    && arg.matchesArgumentType(LocationTag.class)) {
+                scriptEntry.addObject("start", arg.asType(LocationTag.class));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("start")) {
+            throw new InvalidArgumentsException("Must specify a start location.");
+        }
+        if (!scriptEntry.hasObject("destination")) {
+            throw new InvalidArgumentsException("Must specify a destination location.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        LocationTag start = scriptEntry.getObjectTag("start");
+        LocationTag destination = scriptEntry.getObjectTag("destination");
+        ElementTag range = scriptEntry.argForPrefixAsElement("range", "100");
+        ElementTag jump = scriptEntry.argForPrefixAsElement("jump", "1");
+        ElementTag fall = scriptEntry.argForPrefixAsElement("fall", "3");
+        ElementTag swim = scriptEntry.argForPrefixAsElement("swim", "true");
+        ElementTag doors = scriptEntry.argForPrefixAsElement("doors", "true");
+        ElementTag maxNodes = scriptEntry.argForPrefixAsElement("max_nodes", "200000");
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), start, destination, range, jump, fall, swim, doors, maxNodes);
+        }
+        if (!range.isInt() || !jump.isInt() || !fall.isInt() || !maxNodes.isInt() || !swim.isBoolean() || !doors.isBoolean()) {
+            Debug.echoError(scriptEntry, "Invalid path finding settings. Range, jump, fall and max_nodes must be numbers, swim and doors must be true or false.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (start.getWorld() == null || start.getWorld() != destination.getWorld()) {
+            Debug.echoError(scriptEntry, "Cannot find a path between locations in different worlds.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        PathFinder.Rules rules = new PathFinder.Rules();
+        rules.range = Math.max(1, Math.min(PathFinder.MAX_RANGE, range.asInt()));
+        rules.jumpHeight = Math.max(0, jump.asInt());
+        rules.maxFall = Math.max(0, fall.asInt());
+        rules.swim = swim.asBoolean();
+        rules.doors = doors.asBoolean();
+        rules.maxNodes = Math.max(1, maxNodes.asInt());
+        PathFinder.getPathAsync(start, destination, rules, (path) -> {
+            scriptEntry.saveObject("found", new ElementTag(path != null));
+            scriptEntry.saveObject("path", path == null ? new ListTag() : new ListTag(path));
+            scriptEntry.setFinished(true);
+        });
+    }
+}
@@ -17,12 +17,14 @@ import com.denizenscript.denizencore.scripts.commands.Holdable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.ScriptUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.ExperienceOrb;
 import org.bukkit.entity.Player;
@@ -38,9 +40,8 @@ import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
+import java.util.function.BooleanSupplier;
 
 public class ModifyBlockCommand extends AbstractCommand implements Listener, Holdable {
 
@@ -54,6 +55,7 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             tick++;
             if (physitick < tick - 1) {
                 block_physics.clear();
+                suppressedSections.clear();
             }
         }, 2, 2);
         isProcedural = false;
@@ -82,6 +84,9 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     // Optionally, specify 'max_delay_ms' to control how many milliseconds the 'delayed' set can run for in any given tick (defaults to 50).
     //
     // Note that specifying a list of locations will take more time in parsing than in the actual block modification.
+    // Cuboid and ellipsoid inputs are read block by block as they're modified, rather than being expanded into a list first.
+    // When such an area is set to a single material (or to materials with percent chances), without 'naturally' or 'source',
+    // blocks are written a chunk section at a time, and 'no_physics' only holds physics back within the chunk sections being edited.
     //
     // Optionally, specify a script to be ran after the delayed edits finish. (Doesn't fire if delayed is not set.)
     //
@@ -119,19 +124,19 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
         for (Argument arg : scriptEntry) {
             if (arg.matchesArgumentType(CuboidTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")
                     && (arg.startsWith("cu@") || !arg.getRawValue().contains("|"))) {
-                scriptEntry.addObject("locations", arg.asType(CuboidTag.class).getBlockLocationsUnfiltered(false));
+                scriptEntry.addObject("area", arg.asType(CuboidTag.class));
             }
             else if (arg.matchesArgumentType(EllipsoidTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")
                     && (arg.startsWith("ellipsoid@") || !arg.getRawValue().contains("|"))) {
-                scriptEntry.addObject("locations", arg.asType(EllipsoidTag.class).getBlockLocationsUnfiltered(false));
+                scriptEntry.addObject("area", arg.asType(EllipsoidTag.class));
             }
             else if (arg.matchesArgumentList(LocationTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")) {
                 scriptEntry.addObject("location_list", arg.asType(ListTag.class));
             }
@@ -197,7 +202,7 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         if (!scriptEntry.hasObject("materials")) {
             throw new InvalidArgumentsException("Missing material argument!");
         }
-        if (!scriptEntry.hasObject("locations") && !scriptEntry.hasObject("location_list")) {
+        if (!scriptEntry.hasObject("area") && !scriptEntry.hasObject("location_list")) {
             throw new InvalidArgumentsException("Missing location argument!");
         }
         scriptEntry.defaultObject("radius", new ElementTag(0))
@@ -230,10 +235,251 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         return false;
     }
 
+    /**
+     * A cuboid or ellipsoid input, read block by block as needed rather than expanded into a list of locations.
+     */
+    public static class AreaInput {
+
+        public final World world;
+
+        /**
+         * Inclusive block boxes, as {minX, minY, minZ, maxX, maxY, maxZ}. Cuboids have one per pair, ellipsoids have their bounding box.
+         */
+        public final List<int[]> boxes = new ArrayList<>();
+
+        /**
+         * The ellipsoid's center and size, or null for cuboids.
+         */
+        public final LocationTag center, size;
+
+        public AreaInput(CuboidTag cuboid) {
+            world = cuboid.pairs.get(0).low.getWorld();
+            for (CuboidTag.LocationPair pair : cuboid.pairs) {
+                boxes.add(toBox(pair));
+            }
+            center = null;
+            size = null;
+        }
+
+        public AreaInput(EllipsoidTag ellipsoid) {
+            world = ellipsoid.center.getWorld();
+            boxes.add(toBox(ellipsoid.getCuboidBoundary().pairs.get(0)));
+            center = ellipsoid.center;
+            size = ellipsoid.size;
+        }
+
+        public static int[] toBox(CuboidTag.LocationPair pair) {
+            return new int[] {pair.low.getBlockX(), pair.low.getBlockY(), pair.low.getBlockZ(), pair.high.getBlockX(), pair.high.getBlockY(), pair.high.getBlockZ()};
+        }
+
+        /**
+         * Returns whether the block at the given position is part of the area. Matches {@link EllipsoidTag#contains} for ellipsoids.
+         */
+        public boolean contains(int x, int y, int z) {
+            if (center == null) {
+                return true;
+            }
+            double xbase = x - center.getX();
+            double ybase = y - center.getY();
+            double zbase = z - center.getZ();
+            return ((xbase * xbase) / (size.getX() * size.getX())
+                    + (ybase * ybase) / (size.getY() * size.getY())
+                    + (zbase * zbase) / (size.getZ() * size.getZ()) <= 1);
+        }
+
+        /**
+         * Iterates the area's block locations in the same order as 'getBlockLocationsUnfiltered', only creating each location as it's reached.
+         */
+        public Iterator<LocationTag> iterator() {
+            return new Iterator<>() {
+
+                int boxIndex = 0, x = 0, y = 0, z = -1;
+
+                LocationTag next = findNext();
+
+                LocationTag findNext() {
+                    while (boxIndex < boxes.size()) {
+                        int[] box = boxes.get(boxIndex);
+                        if (++z > box[5] - box[2]) {
+                            z = 0;
+                            if (++y > box[4] - box[1]) {
+                                y = 0;
+                                if (++x > box[3] - box[0]) {
+                                    x = 0;
+                                    z = -1;
+                                    boxIndex++;
+                                    continue;
+                                }
+                            }
+                        }
+                        int blockX = box[0] + x, blockY = box[1] + y, blockZ = box[2] + z;
+                        if (contains(blockX, blockY, blockZ)) {
+                            return new LocationTag(world, blockX, blockY, blockZ);
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public LocationTag next() {
+                    LocationTag result = next;
+                    next = findNext();
+                    return result;
+                }
+            };
+        }
+    }
+
+    /**
+     * Writes an area one chunk section at a time, through {@link com.denizenscript.denizen.nms.interfaces.BlockHelper#setSectionBlocks}.
+     * Only usable when every block is handled the same way (no source events, no natural breaking, no radius/height/depth spread).
+     */
+    public static class SectionWriter {
+
+        public final AreaInput area;
+
+        public final BlockData[] materials;
+
+        /**
+         * Chance (0 to 1) of each material being placed, or null to always place the first material.
+         */
+        public final float[] chances;
+
+        public final boolean physics;
+
+        /**
+         * Whether part of the area was outside the world's height limits, and so will be skipped.
+         */
+        public boolean clipped = false;
+
+        public short[] positions = new short[4096];
+
+        public BlockData[] data = new BlockData[4096];
+
+        public int boxIndex = -1;
+
+        public int[] box;
+
+        public int minChunkX, maxChunkX, minChunkZ, maxChunkZ, minSectionY, maxSectionY;
+
+        public int chunkX, chunkZ, sectionY;
+
+        public SectionWriter(AreaInput area, List<MaterialTag> materialList, List<Float> percents, boolean physics) {
+            this.area = area;
+            this.physics = physics;
+            materials = new BlockData[materialList.size()];
+            for (int i = 0; i < materials.length; i++) {
+                materials[i] = materialList.get(i).getModernData();
+            }
+            if (percents == null) {
+                chances = null;
+            }
+            else {
+                chances = new float[percents.size()];
+                for (int i = 0; i < chances.length; i++) {
+                    chances[i] = percents.get(i) / 100f;
+                }
+            }
+            nextBox();
+        }
+
+        public void nextBox() {
+            while (++boxIndex < area.boxes.size()) {
+                int[] input = area.boxes.get(boxIndex);
+                int minY = Math.max(input[1], area.world.getMinHeight());
+                int maxY = Math.min(input[4], area.world.getMaxHeight() - 1);
+                if (minY != input[1] || maxY != input[4]) {
+                    clipped = true;
+                }
+                if (minY > maxY) {
+                    continue;
+                }
+                box = new int[] {input[0], minY, input[2], input[3], maxY, input[5]};
+                minChunkX = box[0] >> 4;
+                maxChunkX = box[3] >> 4;
+                minChunkZ = box[2] >> 4;
+                maxChunkZ = box[5] >> 4;
+                minSectionY = box[1] >> 4;
+                maxSectionY = box[4] >> 4;
+                chunkX = minChunkX;
+                chunkZ = minChunkZ;
+                sectionY = minSectionY;
+                return;
+            }
+            box = null;
+        }
+
+        /**
+         * Writes the next section. Returns true if there are more sections left to write.
+         */
+        public boolean writeNextSection() {
+            if (box == null) {
+                return false;
+            }
+            writeSection(chunkX, sectionY, chunkZ);
+            if (++sectionY > maxSectionY) {
+                sectionY = minSectionY;
+                if (++chunkZ > maxChunkZ) {
+                    chunkZ = minChunkZ;
+                    if (++chunkX > maxChunkX) {
+                        nextBox();
+                    }
+                }
+            }
+            return box != null;
+        }
+
+        public BlockData pickMaterial() {
+            if (chances == null) {
+                return materials[0];
+            }
+            for (int i = 0; i < materials.length; i++) {
+                if (CoreUtilities.getRandom().nextDouble() <= chances[i]) {
+                    return materials[i];
+                }
+            }
+            return null;
+        }
+
+        public void writeSection(int chunkX, int sectionY, int chunkZ) {
+            int lowX = Math.max(chunkX << 4, box[0]), highX = Math.min((chunkX << 4) + 15, box[3]);
+            int lowY = Math.max(sectionY << 4, box[1]), highY = Math.min((sectionY << 4) + 15, box[4]);
+            int lowZ = Math.max(chunkZ << 4, box[2]), highZ = Math.min((chunkZ << 4) + 15, box[5]);
+            int count = 0;
+            for (int x = lowX; x <= highX; x++) {
+                for (int z = lowZ; z <= highZ; z++) {
+                    for (int y = lowY; y <= highY; y++) {
+                        if (!area.contains(x, y, z)) {
+                            continue;
+                        }
+                        BlockData material = pickMaterial();
+                        if (material == null) {
+                            continue;
+                        }
+                        positions[count] = (short) (((x & 15) << 8) | ((z & 15) << 4) | (y & 15));
+                        data[count++] = material;
+                    }
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            if (!physics) {
+                suppressPhysics(area.world, chunkX, sectionY, chunkZ);
+            }
+            NMSHandler.blockHelper.setSectionBlocks(area.world.getChunkAt(chunkX, chunkZ), sectionY, positions, data, count, physics);
+        }
+    }
+
     @Override
     public void execute(final ScriptEntry scriptEntry) {
         final ListTag materials = scriptEntry.getObjectTag("materials");
-        final List<LocationTag> locations = (List<LocationTag>) scriptEntry.getObject("locations");
+        final ObjectTag area = scriptEntry.getObjectTag("area");
         final ListTag location_list = scriptEntry.getObjectTag("location_list");
         final ElementTag physics = scriptEntry.getElement("physics");
         final ItemTag natural = scriptEntry.getObjectTag("natural");
@@ -259,7 +505,7 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         }
         if (scriptEntry.dbCallShouldDebug()) {
             Debug.report(scriptEntry, getName(), materials, physics, radiusElement, heightElement, depthElement, natural,
-                    delayed, maxDelayMs, script, percents, source, (locations == null ? location_list : db("locations", locations)));
+                    delayed, maxDelayMs, script, percents, source, (area == null ? location_list : area));
         }
         Player sourcePlayer = source == null ? null : source.getPlayerEntity();
         final boolean doPhysics = physics.asBoolean();
@@ -274,12 +520,12 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             }
         }
         final List<Float> percs = percentages;
-        if (locations == null && location_list == null) {
+        if (area == null && location_list == null) {
             Debug.echoError("Must specify a valid location!");
             scriptEntry.setFinished(true);
             return;
         }
-        if ((location_list != null && location_list.isEmpty()) || (locations != null && locations.isEmpty())) {
+        if (location_list != null && location_list.isEmpty()) {
             scriptEntry.setFinished(true);
             return;
         }
@@ -288,49 +534,76 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             scriptEntry.setFinished(true);
             return;
         }
-        no_physics = !doPhysics;
+        AreaInput areaInput = null;
+        if (area != null) {
+            areaInput = area instanceof CuboidTag ? new AreaInput((CuboidTag) area) : new AreaInput((EllipsoidTag) area);
+            if (areaInput.world == null) {
+                Debug.echoError(scriptEntry, "Input '" + area + "' is missing a world value");
+                scriptEntry.setFinished(true);
+                return;
+            }
+        }
+        final boolean[] aborted = new boolean[] { false };
+        final BooleanSupplier step;
+        if (areaInput != null && sourcePlayer == null && natural == null && radius == 0 && height == 0 && depth == 0
+                && (materialList.size() == 1 || percs != null)) {
+            SectionWriter writer = new SectionWriter(areaInput, materialList, percs, doPhysics);
+            if (writer.clipped) {
+                Debug.echoError(scriptEntry, "Invalid modifyblock area: " + area + " extends outside the world height limits, the blocks outside of the world will be skipped.");
+            }
+            step = writer::writeNextSection;
+        }
+        else {
+            Iterator<LocationTag> locations = areaInput != null ? areaInput.iterator() : new Iterator<>() {
+                int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < location_list.size();
+                }
+
+                @Override
+                public LocationTag next() {
+                    return getLocAt(location_list, index++, scriptEntry);
+                }
+            };
+            step = new BooleanSupplier() {
+                int index = 0;
+
+                @Override
+                public boolean getAsBoolean() {
+                    if (!locations.hasNext()) {
+                        return false;
+                    }
+                    LocationTag loc = locations.next();
+                    if (isLocationBad(scriptEntry, loc)) {
+                        aborted[0] = true;
+                        return false;
+                    }
+                    if (!doPhysics) {
+                        suppressPhysicsAround(loc, radius, height, depth);
+                    }
+                    handleLocation(loc, index++, materialList, doPhysics, natural, radius, height, depth, percs, sourcePlayer, scriptEntry);
+                    return locations.hasNext();
+                }
+            };
+        }
         if (delayed.asBoolean()) {
             final long maxDelay = maxDelayMs.asLong();
             new BukkitRunnable() {
-                int index = 0;
                 @Override
                 public void run() {
                     try {
                         long start = CoreUtilities.monotonicMillis();
-                        LocationTag loc;
-                        if (locations != null) {
-                            loc = locations.get(0);
-                        }
-                        else {
-                            loc = getLocAt(location_list, 0, scriptEntry);
-                        }
-                        if (isLocationBad(scriptEntry, loc)) {
+                        boolean more;
+                        do {
+                            more = step.getAsBoolean();
+                        } while (more && CoreUtilities.monotonicMillis() - start <= maxDelay);
+                        if (aborted[0]) {
                             scriptEntry.setFinished(true);
                             cancel();
-                            return;
-                        }
-                        boolean was_static = preSetup(loc);
-                        while ((locations != null && locations.size() > index) || (location_list != null && location_list.size() > index)) {
-                            LocationTag nLoc;
-                            if (locations != null) {
-                                nLoc = locations.get(index);
-                            }
-                            else {
-                                nLoc = getLocAt(location_list, index, scriptEntry);
-                            }
-                            if (isLocationBad(scriptEntry, nLoc)) {
-                                scriptEntry.setFinished(true);
-                                cancel();
-                                return;
-                            }
-                            handleLocation(nLoc, index, materialList, doPhysics, natural, radius, height, depth, percs, sourcePlayer, scriptEntry);
-                            index++;
-                            if (CoreUtilities.monotonicMillis() - start > maxDelay) {
-                                break;
-                            }
                         }
-                        postComplete(loc, was_static);
-                        if ((locations != null && locations.size() == index) || (location_list != null && location_list.size() == index)) {
+                        else if (!more) {
                             if (script != null) {
                                 ScriptUtilities.createAndStartQueue(script.getContainer(), null, scriptEntry.entryData, null, null, null, null, null, scriptEntry);
                             }
@@ -340,66 +613,55 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
                     }
                     catch (Throwable ex) {
                         Debug.echoError(ex);
+                        scriptEntry.setFinished(true);
+                        cancel();
                     }
                 }
             }.runTaskTimer(Denizen.getInstance(), 1, 1);
         }
         else {
-            LocationTag loc;
-            if (locations != null) {
-                loc = locations.get(0);
-            }
-            else {
-                loc = getLocAt(location_list, 0, scriptEntry);
-            }
-            if (isLocationBad(scriptEntry, loc)) {
-                scriptEntry.setFinished(true);
-                return;
-            }
-            boolean was_static = preSetup(loc);
-            int index = 0;
-            if (locations != null) {
-                for (LocationTag obj : locations) {
-                    if (isLocationBad(scriptEntry, obj)) {
-                        scriptEntry.setFinished(true);
-                        return;
-                    }
-                    handleLocation(obj, index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry);
-                    index++;
-                }
-            }
-            else {
-                for (int i = 0; i < location_list.size(); i++) {
-                    LocationTag obj = getLocAt(location_list, i, scriptEntry);
-                    if (isLocationBad(scriptEntry, obj)) {
-                        scriptEntry.setFinished(true);
-                        return;
-                    }
-                    handleLocation(obj, index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry);
-                    index++;
-                }
+            while (step.getAsBoolean()) {
+                // Keep going
             }
-            postComplete(loc, was_static);
             scriptEntry.setFinished(true);
         }
     }
 
-    boolean preSetup(LocationTag loc0) {
-        // Freeze the first world in the list.
-        World world = loc0.getWorld();
-        boolean was_static = NMSHandler.worldHelper.isStatic(world);
-        if (no_physics) {
-            NMSHandler.worldHelper.setStatic(world, true);
+    /**
+     * Packs a chunk section position into a long, in the same layout as vanilla section positions.
+     */
+    public static long sectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((sectionX & 0x3FFFFFL) << 42) | ((sectionZ & 0x3FFFFFL) << 20) | (sectionY & 0xFFFFFL);
+    }
+
+    /**
+     * Holds back physics within a chunk section for the next few ticks.
+     */
+    public static void suppressPhysics(World world, int sectionX, int sectionY, int sectionZ) {
+        suppressedSections.computeIfAbsent(world.getUID(), k -> new LongOpenHashSet()).add(sectionKey(sectionX, sectionY, sectionZ));
+        physitick = tick;
+    }
+
+    /**
+     * Holds back physics within every chunk section that a single location edit (including its radius/height/depth spread) can touch.
+     */
+    public static void suppressPhysicsAround(LocationTag location, int radius, int height, int depth) {
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        for (int sectionX = (x - radius) >> 4; sectionX <= (x + radius) >> 4; sectionX++) {
+            for (int sectionZ = (z - radius) >> 4; sectionZ <= (z + radius) >> 4; sectionZ++) {
+                for (int sectionY = (y - depth) >> 4; sectionY <= (y + height) >> 4; sectionY++) {
+                    suppressPhysics(location.getWorld(), sectionX, sectionY, sectionZ);
+                }
+            }
         }
-        return was_static;
     }
 
-    void postComplete(Location loc, boolean was_static) {
-        // Unfreeze the first world in the list.
-        if (no_physics) {
-            NMSHandler.worldHelper.setStatic(loc.getWorld(), was_static);
+    public static boolean isPhysicsSuppressed(Block block) {
+        if (suppressedSections.isEmpty()) {
+            return false;
         }
-        no_physics = false;
+        LongOpenHashSet sections = suppressedSections.get(block.getWorld().getUID());
+        return sections != null && sections.contains(sectionKey(block.getX() >> 4, block.getY() >> 4, block.getZ() >> 4));
     }
 
     <T extends Event & Cancellable> boolean callEvent(T event, ScriptEntry scriptEntry) {
@@ -504,18 +766,22 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         }
     }
 
-    public static boolean no_physics = false;
-
     public static final HashSet<Location> block_physics = new HashSet<>();
 
+    /**
+     * Chunk sections (per world) that a 'no_physics' modifyblock is editing, cleared along with {@link #block_physics}.
+     */
+    public static final HashMap<UUID, LongOpenHashSet> suppressedSections = new HashMap<>();
+
     public static long tick = 0;
 
     public static long physitick = 0;
 
     @EventHandler
     public void blockPhysics(BlockPhysicsEvent event) {
-        if (no_physics) {
+        if (isPhysicsSuppressed(event.getBlock())) {
             event.setCancelled(true);
+            return;
         }
         if (block_physics.contains(event.getBlock().getLocation())) {
             event.setCancelled(true);
@@ -527,8 +793,9 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         if (event.getEntity().getType() != EntityType.FALLING_BLOCK) {
             return;
         }
-        if (no_physics) {
+        if (isPhysicsSuppressed(event.getBlock())) {
             event.setCancelled(true);
+            return;
         }
         if (block_physics.contains(event.getBlock().getLocation())) {
             event.setCancelled(true);
@@ -29,6 +29,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.URLDecoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -39,7 +42,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
 
     public SchematicCommand() {
         setName("schematic");
-        setSyntax("schematic [create/load/unload/rotate/save/flip_x/flip_y/flip_z/paste (fake_to:<player>|... fake_duration:<duration>) (noair) (mask:<material_matcher>)] [name:<name>] (filename:<name>) (angle:<#>) (<location>) (area:<area>) (delayed) (max_delay_ms:<#>) (entities) (flags)");
+        setSyntax("schematic [create/load/unload/rotate/save/flip_x/flip_y/flip_z/paste (fake_to:<player>|... fake_duration:<duration>) (noair) (mask:<material_matcher>)/cancel] [name:<name>] (filename:<name>) (angle:<#>) (<location>) (area:<area>) (delayed) (max_delay_ms:<#>) (entities) (flags)");
         setRequiredArguments(2, 13);
         TagManager.registerTagHandler(new TagRunnable.RootForm() {
             @Override
@@ -57,7 +60,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
 
     // <--[command]
     // @Name Schematic
-    // @Syntax schematic [create/load/unload/rotate/save/flip_x/flip_y/flip_z/paste (fake_to:<player>|... fake_duration:<duration>) (noair) (mask:<material_matcher>)] [name:<name>] (filename:<name>) (angle:<#>) (<location>) (area:<area>) (delayed) (max_delay_ms:<#>) (entities) (flags)
+    // @Syntax schematic [create/load/unload/rotate/save/flip_x/flip_y/flip_z/paste (fake_to:<player>|... fake_duration:<duration>) (noair) (mask:<material_matcher>)/cancel] [name:<name>] (filename:<name>) (angle:<#>) (<location>) (area:<area>) (delayed) (max_delay_ms:<#>) (entities) (flags)
     // @Group world
     // @Required 2
     // @Maximum 13
@@ -88,6 +91,13 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     // For 'save', 'load', and 'rotate', this processes async to prevent server lockup.
     // For 'paste' and 'create', this delays how many blocks can be processed at once, spread over many ticks.
     // Optionally, specify 'max_delay_ms' to control how many milliseconds the 'delayed' set can run for in any given tick (defaults to 50) (for create/paste only).
+    // While the server is lagging, delayed create/paste operations automatically use less than 'max_delay_ms' each tick.
+    //
+    // Each delayed operation runs as a job, with an id available as <entry[saveName].job_id>.
+    // The state and progress of jobs can be read with the 'schematic.job_...' tags listed below.
+    // Use the "cancel" option to cancel all running jobs for the named schematic.
+    // Cancelling a rotate leaves the schematic unrotated, cancelling a save deletes the partially written file, and cancelling a paste or create stops it where it is.
+    // The number of background threads used by delayed load/save/rotate jobs can be configured in the Denizen config.
     //
     // The "load" option by default will load '.schem' files. If no '.schem' file is available, will attempt to load a legacy '.schematic' file instead.
     //
@@ -122,6 +132,10 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     // <schematic[<name>].exists>
     // <schematic[<name>].cuboid[<origin_location>]>
     // <schematic.list>
+    // <schematic.jobs>
+    // <schematic.job_state[<id>]>
+    // <schematic.job_progress[<id>]>
+    // <schematic.job_schematic[<id>]>
     //
     // @Usage
     // Use to create a new schematic from a cuboid and an origin location.
@@ -142,6 +156,10 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     // @Usage
     // Use to save a created schematic.
     // - ~schematic save name:MySchematic
+    //
+    // @Usage
+    // Use to cancel a delayed paste of a schematic.
+    // - schematic cancel name:MySchematic
     // -->
 
     public static boolean noPhys = false;
@@ -158,7 +176,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         tab.addWithPrefix("name:", schematics.keySet());
     }
 
-    private enum Type {CREATE, LOAD, UNLOAD, ROTATE, PASTE, SAVE, FLIP_X, FLIP_Y, FLIP_Z}
+    private enum Type {CREATE, LOAD, UNLOAD, ROTATE, PASTE, SAVE, FLIP_X, FLIP_Y, FLIP_Z, CANCEL}
 
     public static Map<String, CuboidBlockSet> schematics;
 
@@ -186,44 +204,34 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         }
     }
 
-    public static void rotateSchem(CuboidBlockSet schematic, int angle, boolean delayed, Runnable callback) {
-        Runnable rotateRunnable = () -> {
-            try {
-                int ang = angle;
-                while (ang < 0) {
-                    ang = 360 + ang;
-                }
-                while (ang >= 360) {
-                    ang -= 360;
-                }
-                if (ang != 0) {
-                    ang = 360 - ang;
-                    while (ang > 0) {
-                        ang -= 90;
-                        schematic.rotateOne();
-                    }
-                }
-            }
-            finally {
-                if (delayed) {
-                    Bukkit.getScheduler().runTask(Denizen.instance, () -> schematic.isModifying = false);
-                }
-                if (callback != null) {
-                    if (delayed) {
-                        Bukkit.getScheduler().runTask(Denizen.instance, callback);
-                    }
-                    else {
-                        callback.run();
-                    }
-                }
+    /**
+     * Rotates the schematic in place. If a job is given, cancellation is checked between each quarter turn.
+     */
+    public static void rotateSchem(CuboidBlockSet schematic, int angle, BlockSetJob job) {
+        int ang = angle;
+        while (ang < 0) {
+            ang = 360 + ang;
+        }
+        while (ang >= 360) {
+            ang -= 360;
+        }
+        if (ang != 0) {
+            ang = 360 - ang;
+            int turns = (ang + 89) / 90;
+            for (int turn = 0; turn < turns; turn++) {
+                if (job != null) {
+                    job.checkCancelled();
+                    job.setProgress(turn, turns);
+                }
+                schematic.rotateOne();
             }
-        };
-        if (delayed) {
-            schematic.isModifying = true;
-            Bukkit.getScheduler().runTaskAsynchronously(Denizen.instance, rotateRunnable);
         }
-        else {
-            rotateRunnable.run();
+    }
+
+    public static void reportJobError(ScriptEntry scriptEntry, BlockSetJob job, String message) {
+        if (job.state == BlockSetJob.State.FAILED) {
+            Debug.echoError(scriptEntry, message);
+            Debug.echoError(scriptEntry, job.error);
         }
     }
 
@@ -313,13 +321,19 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     }
                     set = new CuboidBlockSet();
                     if (delayed) {
-                        set.buildDelayed(area, location, maskSet, () -> {
-                            if (copyEntities) {
-                                set.buildEntities(area, location);
+                        BlockSetJob job = BlockSetJob.create("create", name.asString().toUpperCase());
+                        scriptEntry.saveObject("job_id", new ElementTag(job.id));
+                        job.onFinish = () -> {
+                            if (job.state == BlockSetJob.State.DONE) {
+                                if (copyEntities) {
+                                    set.buildEntities(area, location);
+                                }
+                                schematics.put(name.asString().toUpperCase(), set);
                             }
-                            schematics.put(name.asString().toUpperCase(), set);
+                            reportJobError(scriptEntry, job, "Error creating schematic object " + name.asString() + ".");
                             scriptEntry.setFinished(true);
-                        }, maxDelayMs.asLong(), flags);
+                        };
+                        set.buildDelayed(area, location, maskSet, job, maxDelayMs.asLong(), flags);
                     }
                     else {
                         scriptEntry.setFinished(true);
@@ -359,43 +373,30 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     }
                 }
                 File schemFile = f;
-                Runnable loadRunnable = () -> {
-                    try {
-                        InputStream fs = new FileInputStream(schemFile);
-                        CuboidBlockSet newSet;
-                        newSet = SpongeSchematicHelper.fromSpongeStream(fs);
-                        fs.close();
-                        Runnable storeSchem = () -> {
-                            schematics.put(name.asString().toUpperCase(), newSet);
-                            scriptEntry.setFinished(true);
-                        };
-                        if (delayed) {
-                            Bukkit.getScheduler().runTask(Denizen.instance, storeSchem);
+                if (delayed) {
+                    BlockSetJob job = BlockSetJob.create("load", name.asString().toUpperCase());
+                    scriptEntry.saveObject("job_id", new ElementTag(job.id));
+                    job.onFinish = () -> {
+                        if (job.state == BlockSetJob.State.DONE) {
+                            schematics.put(name.asString().toUpperCase(), job.result);
                         }
-                        else {
-                            storeSchem.run();
+                        reportJobError(scriptEntry, job, "Error loading schematic file " + name.asString() + ".");
+                        scriptEntry.setFinished(true);
+                    };
+                    job.submitAsync(() -> {
+                        try (InputStream fs = new BlockSetJob.ProgressInputStream(new FileInputStream(schemFile), schemFile.length(), job)) {
+                            job.result = SpongeSchematicHelper.fromSpongeStream(fs);
                         }
+                    });
+                }
+                else {
+                    try (InputStream fs = new FileInputStream(schemFile)) {
+                        schematics.put(name.asString().toUpperCase(), SpongeSchematicHelper.fromSpongeStream(fs));
                     }
                     catch (Exception ex) {
-                        Runnable showError = () -> {
-                            Debug.echoError(scriptEntry, "Error loading schematic file " + name.asString() + ".");
-                            Debug.echoError(scriptEntry, ex);
-                        };
-                        if (delayed) {
-                            Bukkit.getScheduler().runTask(Denizen.instance, showError);
-                        }
-                        else {
-                            showError.run();
-                        }
-                        scriptEntry.setFinished(true);
-                        return;
+                        Debug.echoError(scriptEntry, "Error loading schematic file " + name.asString() + ".");
+                        Debug.echoError(scriptEntry, ex);
                     }
-                };
-                if (delayed) {
-                    Bukkit.getScheduler().runTaskAsynchronously(Denizen.instance, loadRunnable);
-                }
-                else {
-                    loadRunnable.run();
                     scriptEntry.setFinished(true);
                 }
                 break;
@@ -426,7 +427,29 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     Debug.echoError("Cannot rotate schematic: schematic is currently processing another instruction.");
                     return;
                 }
-                rotateSchem(schematic, angle.asInt(), delayed, () -> scriptEntry.setFinished(true));
+                if (delayed) {
+                    // Rotate a copy, so a cancelled or failed rotation leaves the schematic untouched
+                    BlockSetJob job = BlockSetJob.create("rotate", name.asString().toUpperCase());
+                    scriptEntry.saveObject("job_id", new ElementTag(job.id));
+                    schematic.isModifying = true;
+                    job.onFinish = () -> {
+                        schematic.isModifying = false;
+                        if (job.state == BlockSetJob.State.DONE && schematics.get(name.asString().toUpperCase()) == schematic) {
+                            schematics.put(name.asString().toUpperCase(), job.result);
+                        }
+                        reportJobError(scriptEntry, job, "Error rotating schematic " + name.asString() + ".");
+                        scriptEntry.setFinished(true);
+                    };
+                    job.submitAsync(() -> {
+                        CuboidBlockSet rotated = schematic.duplicate();
+                        rotateSchem(rotated, angle.asInt(), job);
+                        job.result = rotated;
+                    });
+                }
+                else {
+                    rotateSchem(schematic, angle.asInt(), null);
+                    scriptEntry.setFinished(true);
+                }
                 break;
             }
             case FLIP_X: {
@@ -509,20 +532,26 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                         Debug.echoError("Cannot paste schematic: schematic is currently processing another instruction.");
                         return;
                     }
+                    BlockSetJob job = delayed ? BlockSetJob.create("paste", name.asString().toUpperCase()) : null;
+                    if (job != null) {
+                        scriptEntry.saveObject("job_id", new ElementTag(job.id));
+                    }
                     Consumer<CuboidBlockSet> pasteRunnable = (schematic) -> {
                         if (delayed) {
                             schematic.readingProcesses++;
-                            schematic.setBlocksDelayed(() -> {
+                            job.onFinish = () -> {
                                 try {
-                                    if (copyEntities) {
+                                    if (copyEntities && job.state == BlockSetJob.State.DONE) {
                                         schematic.pasteEntities(location);
                                     }
+                                    reportJobError(scriptEntry, job, "Exception pasting schematic file " + name.asString() + ".");
                                 }
                                 finally {
                                     scriptEntry.setFinished(true);
                                     schematic.readingProcesses--;
                                 }
-                            }, input, maxDelayMs.asLong());
+                            };
+                            schematic.setBlocksDelayed(job, input, maxDelayMs.asLong());
                         }
                         else {
                             schematic.setBlocks(input);
@@ -534,7 +563,17 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     };
                     if (angle != null) {
                         final CuboidBlockSet newSet = set.duplicate();
-                        rotateSchem(newSet, angle.asInt(), delayed, () -> pasteRunnable.accept(newSet));
+                        if (delayed) {
+                            job.onFinish = () -> {
+                                reportJobError(scriptEntry, job, "Exception pasting schematic file " + name.asString() + ".");
+                                scriptEntry.setFinished(true);
+                            };
+                            job.submitAsync(() -> rotateSchem(newSet, angle.asInt(), job), () -> pasteRunnable.accept(newSet));
+                        }
+                        else {
+                            rotateSchem(newSet, angle.asInt(), null);
+                            pasteRunnable.accept(newSet);
+                        }
                     }
                     else {
                         pasteRunnable.accept(set);
@@ -566,33 +605,57 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     scriptEntry.setFinished(true);
                     return;
                 }
-                Runnable saveRunnable = () -> {
-                    try {
-                        f.getParentFile().mkdirs();
-                        FileOutputStream fs = new FileOutputStream(f);
-                        SpongeSchematicHelper.saveToSpongeStream(set, fs);
-                        fs.flush();
-                        fs.close();
-                    }
-                    catch (Exception ex) {
-                        Bukkit.getScheduler().runTask(Denizen.instance, () -> {
-                            Debug.echoError(scriptEntry, "Error saving schematic file " + fname + ".");
-                            Debug.echoError(scriptEntry, ex);
-                        });
-                    }
-                    Bukkit.getScheduler().runTask(Denizen.instance, () -> {
+                if (delayed) {
+                    BlockSetJob job = BlockSetJob.create("save", name.asString().toUpperCase());
+                    scriptEntry.saveObject("job_id", new ElementTag(job.id));
+                    set.readingProcesses++;
+                    job.onFinish = () -> {
                         set.readingProcesses--;
+                        reportJobError(scriptEntry, job, "Error saving schematic file " + fname + ".");
                         scriptEntry.setFinished(true);
+                    };
+                    job.submitAsync(() -> {
+                        // Write to a temporary file and only replace the real file once complete, so a cancelled or failed save leaves any existing schematic untouched
+                        f.getParentFile().mkdirs();
+                        File tempFile = new File(f.getPath() + "~tmp");
+                        try {
+                            try (FileOutputStream fs = new FileOutputStream(tempFile)) {
+                                SpongeSchematicHelper.writeSpongeStream(set, fs, job);
+                            }
+                            job.checkCancelled();
+                            try {
+                                Files.move(tempFile.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                            }
+                            catch (AtomicMoveNotSupportedException ex) {
+                                Files.move(tempFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                            }
+                        }
+                        catch (Throwable ex) {
+                            tempFile.delete();
+                            throw ex;
+                        }
                     });
-                };
-                if (delayed) {
-                    set.readingProcesses++;
-                    Bukkit.getScheduler().runTaskAsynchronously(Denizen.instance, saveRunnable);
                 }
                 else {
                     scriptEntry.setFinished(true);
-                    saveRunnable.run();
+                    try {
+                        f.getParentFile().mkdirs();
+                        try (FileOutputStream fs = new FileOutputStream(f)) {
+                            SpongeSchematicHelper.writeSpongeStream(set, fs, null);
+                        }
+                    }
+                    catch (Exception ex) {
+                        Debug.echoError(scriptEntry, "Error saving schematic file " + fname + ".");
+                        Debug.echoError(scriptEntry, ex);
+                    }
+                }
+                break;
+            }
+            case CANCEL: {
+                if (BlockSetJob.cancelAll(name.asString().toUpperCase()) == 0) {
+                    Debug.echoError(scriptEntry, "Schematic " + name.asString() + " has no running jobs to cancel.");
                 }
+                scriptEntry.setFinished(true);
                 break;
             }
         }
@@ -615,6 +678,65 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         if (attribute.startsWith("list")) {
             event.setReplacedObject(new ListTag(schematics.keySet()).getObjectAttribute(attribute.fulfill(1)));
         }
+
+        // <--[tag]
+        // @attribute <schematic.jobs>
+        // @returns ListTag
+        // @description
+        // Returns a list of the ids of all schematic jobs that are queued, running, or finished within the last minute.
+        // See <@link command schematic> for info on jobs.
+        // -->
+        if (attribute.startsWith("jobs")) {
+            ListTag result = new ListTag();
+            for (int jobId : BlockSetJob.jobs.keySet()) {
+                result.addObject(new ElementTag(jobId));
+            }
+            event.setReplacedObject(result.getObjectAttribute(attribute.fulfill(1)));
+            return;
+        }
+        if (attribute.startsWith("job_") && attribute.hasParam()) {
+            BlockSetJob job = BlockSetJob.getJob(attribute.getIntParam());
+            if (job == null) {
+                Debug.echoError(attribute.getScriptEntry(), "Schematic job " + attribute.getParam() + " does not exist.");
+                return;
+            }
+
+            // <--[tag]
+            // @attribute <schematic.job_state[<id>]>
+            // @returns ElementTag
+            // @description
+            // Returns the state of a schematic job: 'queued', 'running', 'done', 'cancelled', or 'failed'.
+            // -->
+            if (attribute.startsWith("job_state")) {
+                event.setReplacedObject(new ElementTag(job.state.name().toLowerCase())
+                        .getObjectAttribute(attribute.fulfill(1)));
+                return;
+            }
+
+            // <--[tag]
+            // @attribute <schematic.job_progress[<id>]>
+            // @returns ElementTag(Decimal)
+            // @description
+            // Returns the progress of a schematic job, as a percentage from 0 to 100.
+            // -->
+            if (attribute.startsWith("job_progress")) {
+                event.setReplacedObject(new ElementTag(job.progress * 100)
+                        .getObjectAttribute(attribute.fulfill(1)));
+                return;
+            }
+
+            // <--[tag]
+            // @attribute <schematic.job_schematic[<id>]>
+            // @returns ElementTag
+            // @description
+            // Returns the name of the schematic a schematic job is for.
+            // -->
+            if (attribute.startsWith("job_schematic")) {
+                event.setReplacedObject(new ElementTag(job.name)
+                        .getObjectAttribute(attribute.fulfill(1)));
+                return;
+            }
+        }
         if (id == null) {
             return;
         }
@@ -714,7 +836,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         // Returns the number of blocks in the schematic.
         // -->
         if (attribute.startsWith("blocks")) {
-            event.setReplacedObject(new ElementTag(set.blocks.length)
+            event.setReplacedObject(new ElementTag(set.getBlockCount())
                     .getObjectAttribute(attribute.fulfill(1)));
             return;
         }
@@ -60,6 +60,8 @@ public class MapScriptContainer extends ScriptContainer {
     //             # Optionally add width/height numbers.
     //             width: 128
     //             height: 128
+    //             # Optionally set to true to dither the image into the map's limited colors (better for photos and gradients, worse for pixel art).
+    //             dither: false
     //             # Specify a tag to show or hide custom content! Valid for all objects.
     //             # Note that all inputs other than 'type' for all objects support tags that will be dynamically reparsed per-player each time the map updates.
     //             visible: <player.name.contains_text[bob].not>
@@ -140,7 +142,8 @@ public class MapScriptContainer extends ScriptContainer {
                         String image = objectSection.getString("image");
                         int width = Integer.parseInt(objectSection.getString("width", "0"));
                         int height = Integer.parseInt(objectSection.getString("height", "0"));
-                        added = new MapImage(renderer, x, y, visible, shouldDebug(), image, width, height);
+                        boolean dither = objectSection.getString("dither", "false").equalsIgnoreCase("true");
+                        added = new MapImage(renderer, x, y, visible, shouldDebug(), image, width, height, dither);
                         break;
                     case "text":
                         if (!objectSection.contains("text")) {
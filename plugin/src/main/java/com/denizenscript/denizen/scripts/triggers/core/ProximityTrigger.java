@@ -6,6 +6,7 @@ import com.denizenscript.denizen.npc.traits.TriggerTrait;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.triggers.AbstractTrigger;
+import com.denizenscript.denizen.utilities.entity.PlayerSpatialIndex;
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCRegistry;
@@ -90,18 +91,40 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
             if (timesUsed == 0) { // skip if not in use
                 return;
             }
-            Collection<? extends Player> allPlayers = Bukkit.getOnlinePlayers();
+            ArrayList<Player> candidates = new ArrayList<>();
             for (NPCRegistry registry : CitizensAPI.getNPCRegistries()) {
                 for (NPC citizensNPC : registry) {
                     if (citizensNPC == null || !citizensNPC.isSpawned()) {
                         continue;
                     }
-                    if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getOrAddTrait(TriggerTrait.class).isEnabled(name)) {
+                    TriggerTrait triggerTrait = citizensNPC.getTraitNullable(TriggerTrait.class);
+                    if (triggerTrait == null || !triggerTrait.isEnabled(name)) {
+                        continue;
+                    }
+                    Set<UUID> inside = playersInProximity.get(citizensNPC.getUniqueId());
+                    Location npcLocation = citizensNPC.getStoredLocation();
+                    if (inside == null && (npcLocation == null || npcLocation.getWorld() == null || !PlayerSpatialIndex.hasPlayers(npcLocation.getWorld()))) {
+                        continue;
+                    }
+                    // Only players that could be entering (within the radius) or that need an exit/move (already inside) are considered
+                    candidates.clear();
+                    if (npcLocation != null && npcLocation.getWorld() != null) {
+                        double searchRadius = Math.min(triggerTrait.getRadius(name), maxProximityDistance);
+                        PlayerSpatialIndex.getPossiblePlayers(npcLocation.getWorld(), npcLocation.getX(), npcLocation.getZ(), searchRadius, candidates);
+                    }
+                    if (inside != null) {
+                        for (UUID id : new ArrayList<>(inside)) {
+                            Player player = Bukkit.getPlayer(id);
+                            if (player != null && !candidates.contains(player)) {
+                                candidates.add(player);
+                            }
+                        }
+                    }
+                    if (candidates.isEmpty()) {
                         continue;
                     }
                     NPCTag npc = new NPCTag(citizensNPC);
-                    TriggerTrait triggerTrait = npc.getTriggerTrait();
-                    for (Player bukkitPlayer : allPlayers) {
+                    for (Player bukkitPlayer : candidates) {
                         tryProcessSinglePair(npc, triggerTrait, bukkitPlayer);
                     }
                 }
@@ -166,6 +189,9 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
         if (npcs == null) {
             return;
         }
+        for (UUID id : npcs) {
+            removeFromNPC(id, event.getPlayer().getUniqueId());
+        }
         PlayerTag player = new PlayerTag(event.getPlayer());
         for (UUID id : npcs) {
             NPC citizen = CitizensAPI.getNPCRegistry().getByUniqueId(id);
@@ -211,6 +237,11 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
      */
     private static Map<UUID, Set<UUID>> proximityTracker = new HashMap<>();
 
+    /**
+     * NPC UUID to set of Player UUIDs, the reverse of {@link #proximityTracker}.
+     */
+    private static Map<UUID, Set<UUID>> playersInProximity = new HashMap<>();
+
     //
     // Ensures that a Player who has entered proximity of an NPC also fires Exit Proximity.
     //
@@ -238,6 +269,7 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     private void enterProximityOf(Player player, NPCTag npc) {
         Set<UUID> npcs = proximityTracker.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
         npcs.add(npc.getCitizen().getUniqueId());
+        playersInProximity.computeIfAbsent(npc.getCitizen().getUniqueId(), k -> new HashSet<>()).add(player.getUniqueId());
     }
 
     /**
@@ -256,5 +288,17 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
         if (npcs.isEmpty()) {
             proximityTracker.remove(player.getUniqueId());
         }
+        removeFromNPC(npc.getCitizen().getUniqueId(), player.getUniqueId());
+    }
+
+    private void removeFromNPC(UUID npcId, UUID playerId) {
+        Set<UUID> players = playersInProximity.get(npcId);
+        if (players == null) {
+            return;
+        }
+        players.remove(playerId);
+        if (players.isEmpty()) {
+            playersInProximity.remove(npcId);
+        }
     }
 }
@@ -13,6 +13,8 @@ import com.denizenscript.denizen.scripts.containers.core.CommandScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.utilities.*;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.flags.FlagLoadMetrics;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.events.ScriptEvent;
@@ -1312,6 +1314,7 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
         // @description
         // Returns a list of all players (online or offline) with a specified flag set.
         // Warning: this will cause the player flag cache to temporarily fill with ALL historical playerdata.
+        // Player flag files are loaded in parallel on the async flag loader where possible.
         // Can use "!<flag_name>" style to only return players *without* the flag.
         // -->
         tagProcessor.registerTag(ListTag.class, ElementTag.class, "players_flagged", (attribute, object, input) -> {
@@ -1323,7 +1326,9 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
                 want = false;
                 flag = flag.substring(1);
             }
-            for (UUID playerId : PlayerTag.getAllPlayers().values()) {
+            Collection<UUID> allPlayers = PlayerTag.getAllPlayers().values();
+            PlayerFlagHandler.prefetch(allPlayers);
+            for (UUID playerId : allPlayers) {
                 PlayerTag player = new PlayerTag(playerId);
                 if (player.getFlagTracker().hasFlag(flag) == want) {
                     flaggedPlayers.addObject(player);
@@ -1839,22 +1844,88 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
         // @returns MapTag
         // @description
         // Generates a report about noted area tracking.
+        // The report format depends on the configured noted area index type.
         // This tag is strictly for internal debugging reasons.
         // -->
         tagProcessor.registerTag(MapTag.class, "area_notes_debug", (attribute, object) -> {
             MapTag worlds = new MapTag();
-            for (Map.Entry<String, NotedAreaTracker.PerWorldSet> set : NotedAreaTracker.worlds.entrySet()) {
+            for (Map.Entry<String, NotedAreaTracker.AreaIndex> set : NotedAreaTracker.worlds.entrySet()) {
                 MapTag worldData = new MapTag();
-                worldData.putObject("global", new ListTag(set.getValue().globalSet.list, trackedArea -> trackedArea.area));
-                worldData.putObject("x50", areaNotesDebug(set.getValue().sets50));
-                worldData.putObject("x50_offset", areaNotesDebug(set.getValue().sets50_offset));
-                worldData.putObject("x200", areaNotesDebug(set.getValue().sets200));
-                worldData.putObject("x200_offset", areaNotesDebug(set.getValue().sets200_offset));
+                if (set.getValue() instanceof NotedAreaTracker.PerWorldSet grid) {
+                    worldData.putObject("global", new ListTag(grid.globalSet.list, trackedArea -> trackedArea.area));
+                    worldData.putObject("x50", areaNotesDebug(grid.sets50));
+                    worldData.putObject("x50_offset", areaNotesDebug(grid.sets50_offset));
+                    worldData.putObject("x200", areaNotesDebug(grid.sets200));
+                    worldData.putObject("x200_offset", areaNotesDebug(grid.sets200_offset));
+                }
+                else if (set.getValue() instanceof AreaRTree tree) {
+                    worldData.putObject("rtree_depth", new ElementTag(tree.depth()));
+                    ListTag areas = new ListTag();
+                    tree.forEachArea(trackedArea -> areas.addObject(trackedArea.area));
+                    worldData.putObject("rtree", areas);
+                }
                 worlds.putObject(set.getKey(), worldData);
             }
             return worlds;
         });
 
+        // <--[tag]
+        // @attribute <server.player_flag_cache_stats>
+        // @returns MapTag
+        // @description
+        // Returns statistics about the player flag cache and player flag loading, as a map with keys:
+        // "entries", "weight" and "max_weight" (estimated flag data size in bytes), "hits", "misses", "hit_rate" (0 to 1),
+        // "size_evictions", "time_evictions", "async_loads", "sync_loads", "rejected_loads",
+        // "load_p50_ms", "load_p95_ms", "load_p99_ms", "main_thread_load_ms", and "main_thread_wait_ms".
+        // Also available via the '/denizen flagstats' command.
+        // This tag is generally meant for performance debugging.
+        // -->
+        tagProcessor.registerTag(MapTag.class, "player_flag_cache_stats", (attribute, object) -> {
+            MapTag result = new MapTag();
+            result.putObject("entries", new ElementTag(PlayerFlagHandler.playerFlagTrackerCache.size()));
+            result.putObject("weight", new ElementTag(PlayerFlagHandler.playerFlagTrackerCache.getTotalWeight()));
+            result.putObject("max_weight", new ElementTag(PlayerFlagHandler.playerFlagTrackerCache.maxWeight));
+            result.putObject("hits", new ElementTag(FlagLoadMetrics.cacheHits.sum()));
+            result.putObject("misses", new ElementTag(FlagLoadMetrics.cacheMisses.sum()));
+            result.putObject("hit_rate", new ElementTag(FlagLoadMetrics.hitRate()));
+            result.putObject("size_evictions", new ElementTag(FlagLoadMetrics.sizeEvictions.sum()));
+            result.putObject("time_evictions", new ElementTag(FlagLoadMetrics.timeEvictions.sum()));
+            result.putObject("async_loads", new ElementTag(FlagLoadMetrics.asyncLoads.sum()));
+            result.putObject("sync_loads", new ElementTag(FlagLoadMetrics.syncLoads.sum()));
+            result.putObject("rejected_loads", new ElementTag(FlagLoadMetrics.rejectedLoads.sum()));
+            result.putObject("load_p50_ms", new ElementTag(FlagLoadMetrics.loadPercentile(0.5) / 1_000_000.0));
+            result.putObject("load_p95_ms", new ElementTag(FlagLoadMetrics.loadPercentile(0.95) / 1_000_000.0));
+            result.putObject("load_p99_ms", new ElementTag(FlagLoadMetrics.loadPercentile(0.99) / 1_000_000.0));
+            result.putObject("main_thread_load_ms", new ElementTag(FlagLoadMetrics.mainThreadLoadNanos.sum() / 1_000_000.0));
+            result.putObject("main_thread_wait_ms", new ElementTag(FlagLoadMetrics.mainThreadWaitNanos.sum() / 1_000_000.0));
+            return result;
+        });
+
+        // <--[tag]
+        // @attribute <server.event_path_stats[<event_name>]>
+        // @returns MapTag
+        // @description
+        // Returns statistics about how many script paths an event has checked since the server started, as a map with keys:
+        // "fires" (how many times the event fired), "paths_evaluated" (script paths checked against a fire),
+        // "paths_skipped" (script paths not checked at all, because the event's path index ruled them out), and "paths_matched" (script paths that matched and ran).
+        // Specify the event by ScriptEvent name, like "PlayerBreaksBlock".
+        // Only counts the main (non-'bukkit_priority') handler of the event.
+        // This tag is generally meant for performance debugging.
+        // -->
+        tagProcessor.registerTag(MapTag.class, ElementTag.class, "event_path_stats", (attribute, object, input) -> {
+            ScriptEvent scriptEvent = ScriptEvent.eventLookup.get(input.asLowerString());
+            if (!(scriptEvent instanceof BukkitScriptEvent event)) {
+                attribute.echoError("Unknown event '" + input + "'.");
+                return null;
+            }
+            MapTag result = new MapTag();
+            result.putObject("fires", new ElementTag(event.statsFires));
+            result.putObject("paths_evaluated", new ElementTag(event.statsPathsEvaluated));
+            result.putObject("paths_skipped", new ElementTag(event.statsPathsSkipped));
+            result.putObject("paths_matched", new ElementTag(event.statsPathsMatched));
+            return result;
+        });
+
         // <--[mechanism]
         // @object server
         // @name clean_flags
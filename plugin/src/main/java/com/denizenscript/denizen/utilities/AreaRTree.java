@@ -0,0 +1,425 @@
+package com.denizenscript.denizen.utilities;
+
+import com.denizenscript.denizen.objects.AreaContainmentObject;
+import com.denizenscript.denizen.utilities.NotedAreaTracker.TrackedArea;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * An R-tree of the noted areas within one world, used by {@link NotedAreaTracker} as an alternative to the grid index.
+ * Unlike the grid, this accounts for the Y range of areas, and lookups don't degrade for areas too large to fit a grid cell (eg long thin regions).
+ * Areas added before the first lookup are bulk-loaded (Sort-Tile-Recursive) into a tightly packed tree. Later changes are applied incrementally.
+ */
+public class AreaRTree implements NotedAreaTracker.AreaIndex {
+
+    public static final int MAX_ENTRIES = 16, MIN_ENTRIES = 6;
+
+    public static final class Node {
+
+        public Node(boolean leaf) {
+            this.leaf = leaf;
+            nodes = leaf ? null : new Node[MAX_ENTRIES + 1];
+            areas = leaf ? new TrackedArea[MAX_ENTRIES + 1] : null;
+            resetBounds();
+        }
+
+        public final boolean leaf;
+
+        public final Node[] nodes;
+
+        public final TrackedArea[] areas;
+
+        public int size;
+
+        public Node parent;
+
+        public int lowX, lowY, lowZ, highX, highY, highZ;
+
+        public void resetBounds() {
+            lowX = lowY = lowZ = Integer.MAX_VALUE;
+            highX = highY = highZ = Integer.MIN_VALUE;
+        }
+
+        public void expand(int lowX, int lowY, int lowZ, int highX, int highY, int highZ) {
+            this.lowX = Math.min(this.lowX, lowX);
+            this.lowY = Math.min(this.lowY, lowY);
+            this.lowZ = Math.min(this.lowZ, lowZ);
+            this.highX = Math.max(this.highX, highX);
+            this.highY = Math.max(this.highY, highY);
+            this.highZ = Math.max(this.highZ, highZ);
+        }
+
+        public void expand(TrackedArea area) {
+            expand(area.lowX, area.lowY, area.lowZ, area.highX, area.highY, area.highZ);
+        }
+
+        public void expand(Node node) {
+            expand(node.lowX, node.lowY, node.lowZ, node.highX, node.highY, node.highZ);
+        }
+
+        public void recalculate() {
+            resetBounds();
+            for (int i = 0; i < size; i++) {
+                if (leaf) {
+                    expand(areas[i]);
+                }
+                else {
+                    expand(nodes[i]);
+                }
+            }
+        }
+
+        public void addArea(TrackedArea area) {
+            areas[size++] = area;
+            expand(area);
+        }
+
+        public void addNode(Node node) {
+            nodes[size++] = node;
+            node.parent = this;
+            expand(node);
+        }
+
+        public void removeNode(Node node) {
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] == node) {
+                    nodes[i] = nodes[--size];
+                    nodes[size] = null;
+                    return;
+                }
+            }
+        }
+
+        public boolean mightContain(int x, int y, int z) {
+            return x >= lowX && x <= highX && z >= lowZ && z <= highZ && y >= lowY && y <= highY;
+        }
+
+        public boolean mightIntersect(TrackedArea area) {
+            return area.lowX <= highX && area.highX >= lowX && area.lowZ <= highZ && area.highZ >= lowZ && area.lowY <= highY && area.highY >= lowY;
+        }
+
+        public boolean encloses(TrackedArea area) {
+            return area.lowX >= lowX && area.highX <= highX && area.lowZ >= lowZ && area.highZ <= highZ && area.lowY >= lowY && area.highY <= highY;
+        }
+
+        public double volume() {
+            return (highX - (double) lowX + 1) * (highY - (double) lowY + 1) * (highZ - (double) lowZ + 1);
+        }
+
+        public double volumeIfExpanded(TrackedArea area) {
+            return (Math.max(highX, area.highX) - (double) Math.min(lowX, area.lowX) + 1)
+                    * (Math.max(highY, area.highY) - (double) Math.min(lowY, area.lowY) + 1)
+                    * (Math.max(highZ, area.highZ) - (double) Math.min(lowZ, area.lowZ) + 1);
+        }
+    }
+
+    public Node root = new Node(true);
+
+    /**
+     * Areas added since the last lookup, not yet placed in the tree.
+     */
+    public final ArrayList<TrackedArea> pending = new ArrayList<>();
+
+    public int count = 0;
+
+    @Override
+    public void add(TrackedArea area) {
+        pending.add(area);
+        count++;
+    }
+
+    @Override
+    public boolean remove(TrackedArea area) {
+        if (pending.remove(area)) {
+            count--;
+            return true;
+        }
+        Node leaf = findLeaf(root, area);
+        if (leaf == null) {
+            return false;
+        }
+        for (int i = 0; i < leaf.size; i++) {
+            if (leaf.areas[i].equals(area)) {
+                leaf.areas[i] = leaf.areas[--leaf.size];
+                leaf.areas[leaf.size] = null;
+                break;
+            }
+        }
+        count--;
+        condense(leaf);
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void forEachAreaThatContains(int x, int y, int z, Location location, Consumer<AreaContainmentObject> action) {
+        flushPending();
+        if (root.mightContain(x, y, z)) {
+            forEachAreaThatContains(root, x, y, z, location, action);
+        }
+    }
+
+    @Override
+    public void forEachAreaThatIntersects(TrackedArea area, Consumer<AreaContainmentObject> action) {
+        flushPending();
+        if (root.mightIntersect(area)) {
+            forEachAreaThatIntersects(root, area, action);
+        }
+    }
+
+    @Override
+    public void forEachArea(Consumer<TrackedArea> action) {
+        flushPending();
+        forEachArea(root, action);
+    }
+
+    public int depth() {
+        flushPending();
+        int depth = 1;
+        for (Node node = root; !node.leaf; node = node.nodes[0]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private static void forEachAreaThatContains(Node node, int x, int y, int z, Location location, Consumer<AreaContainmentObject> action) {
+        if (node.leaf) {
+            for (int i = 0; i < node.size; i++) {
+                TrackedArea area = node.areas[i];
+                if (area.mightContain(x, y, z) && area.area.doesContainLocation(location)) {
+                    action.accept(area.area);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < node.size; i++) {
+            Node child = node.nodes[i];
+            if (child.mightContain(x, y, z)) {
+                forEachAreaThatContains(child, x, y, z, location, action);
+            }
+        }
+    }
+
+    private static void forEachAreaThatIntersects(Node node, TrackedArea area2, Consumer<AreaContainmentObject> action) {
+        if (node.leaf) {
+            for (int i = 0; i < node.size; i++) {
+                TrackedArea area = node.areas[i];
+                if (area.mightIntersect(area2)) {
+                    action.accept(area.area);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < node.size; i++) {
+            Node child = node.nodes[i];
+            if (child.mightIntersect(area2)) {
+                forEachAreaThatIntersects(child, area2, action);
+            }
+        }
+    }
+
+    private static void forEachArea(Node node, Consumer<TrackedArea> action) {
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) {
+                action.accept(node.areas[i]);
+            }
+            else {
+                forEachArea(node.nodes[i], action);
+            }
+        }
+    }
+
+    /**
+     * Places all pending areas into the tree, bulk-loading if the tree is currently empty.
+     */
+    public void flushPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (root.size == 0 && pending.size() > MAX_ENTRIES) {
+            root = bulkLoad(pending);
+        }
+        else {
+            for (TrackedArea area : pending) {
+                insert(area);
+            }
+        }
+        pending.clear();
+    }
+
+    private static Node bulkLoad(List<TrackedArea> input) {
+        List<Node> level = new ArrayList<>();
+        for (List<TrackedArea> group : tile(new ArrayList<>(input), a -> a.lowX + a.highX, a -> a.lowY + a.highY, a -> a.lowZ + a.highZ)) {
+            Node leaf = new Node(true);
+            for (TrackedArea area : group) {
+                leaf.addArea(area);
+            }
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            List<Node> nextLevel = new ArrayList<>();
+            for (List<Node> group : tile(level, n -> n.lowX + n.highX, n -> n.lowY + n.highY, n -> n.lowZ + n.highZ)) {
+                Node branch = new Node(false);
+                for (Node node : group) {
+                    branch.addNode(node);
+                }
+                nextLevel.add(branch);
+            }
+            level = nextLevel;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Sort-Tile-Recursive grouping: slices the entries along X, then each slab along Y, then each run along Z, into groups of at most MAX_ENTRIES spatially close entries.
+     * Centers are given doubled (low + high) to avoid a division.
+     */
+    private static <T> List<List<T>> tile(List<T> items, ToIntFunction<T> centerX, ToIntFunction<T> centerY, ToIntFunction<T> centerZ) {
+        List<List<T>> groups = new ArrayList<>();
+        int count = items.size();
+        int groupCount = (count + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int slices = Math.max(1, (int) Math.ceil(Math.cbrt(groupCount)));
+        int slabSize = MAX_ENTRIES * slices * slices, runSize = MAX_ENTRIES * slices;
+        items.sort(Comparator.comparingInt(centerX));
+        for (int slabStart = 0; slabStart < count; slabStart += slabSize) {
+            List<T> slab = items.subList(slabStart, Math.min(count, slabStart + slabSize));
+            slab.sort(Comparator.comparingInt(centerY));
+            for (int runStart = 0; runStart < slab.size(); runStart += runSize) {
+                List<T> run = slab.subList(runStart, Math.min(slab.size(), runStart + runSize));
+                run.sort(Comparator.comparingInt(centerZ));
+                for (int groupStart = 0; groupStart < run.size(); groupStart += MAX_ENTRIES) {
+                    groups.add(run.subList(groupStart, Math.min(run.size(), groupStart + MAX_ENTRIES)));
+                }
+            }
+        }
+        return groups;
+    }
+
+    private void insert(TrackedArea area) {
+        Node node = root;
+        while (!node.leaf) {
+            node.expand(area);
+            node = chooseChild(node, area);
+        }
+        node.addArea(area);
+        while (node.size > MAX_ENTRIES) {
+            Node sibling = split(node);
+            if (node.parent == null) {
+                Node newRoot = new Node(false);
+                newRoot.addNode(node);
+                newRoot.addNode(sibling);
+                root = newRoot;
+                return;
+            }
+            node.parent.addNode(sibling);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Picks the child needing the least volume enlargement to fit the area, preferring smaller children on ties.
+     */
+    private static Node chooseChild(Node node, TrackedArea area) {
+        Node best = null;
+        double bestEnlargement = Double.MAX_VALUE, bestVolume = Double.MAX_VALUE;
+        for (int i = 0; i < node.size; i++) {
+            Node child = node.nodes[i];
+            double volume = child.volume();
+            double enlargement = child.volumeIfExpanded(area) - volume;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && volume < bestVolume)) {
+                best = child;
+                bestEnlargement = enlargement;
+                bestVolume = volume;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Splits an overflowing node in half along its longest axis, returning the new sibling holding the upper half.
+     */
+    private static Node split(Node node) {
+        int spanX = node.highX - node.lowX, spanY = node.highY - node.lowY, spanZ = node.highZ - node.lowZ;
+        Node sibling = new Node(node.leaf);
+        int half = node.size / 2;
+        if (node.leaf) {
+            ToIntFunction<TrackedArea> center = spanX >= spanY && spanX >= spanZ ? a -> a.lowX + a.highX : (spanZ >= spanY ? a -> a.lowZ + a.highZ : a -> a.lowY + a.highY);
+            Arrays.sort(node.areas, 0, node.size, Comparator.comparingInt(center));
+            for (int i = half; i < node.size; i++) {
+                sibling.addArea(node.areas[i]);
+                node.areas[i] = null;
+            }
+        }
+        else {
+            ToIntFunction<Node> center = spanX >= spanY && spanX >= spanZ ? n -> n.lowX + n.highX : (spanZ >= spanY ? n -> n.lowZ + n.highZ : n -> n.lowY + n.highY);
+            Arrays.sort(node.nodes, 0, node.size, Comparator.comparingInt(center));
+            for (int i = half; i < node.size; i++) {
+                sibling.addNode(node.nodes[i]);
+                node.nodes[i] = null;
+            }
+        }
+        node.size = half;
+        node.recalculate();
+        return sibling;
+    }
+
+    private static Node findLeaf(Node node, TrackedArea area) {
+        if (node.leaf) {
+            for (int i = 0; i < node.size; i++) {
+                if (node.areas[i].equals(area)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+        for (int i = 0; i < node.size; i++) {
+            Node child = node.nodes[i];
+            if (child.encloses(area)) {
+                Node result = findLeaf(child, area);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * After a removal, drops underfull nodes on the path to the root (reinserting their areas) and shrinks the bounds along the way.
+     */
+    private void condense(Node node) {
+        ArrayList<TrackedArea> orphans = new ArrayList<>();
+        while (node.parent != null) {
+            Node parent = node.parent;
+            if (node.size < MIN_ENTRIES) {
+                parent.removeNode(node);
+                forEachArea(node, orphans::add);
+            }
+            else {
+                node.recalculate();
+            }
+            node = parent;
+        }
+        root.recalculate();
+        while (!root.leaf && root.size == 1) {
+            root = root.nodes[0];
+            root.parent = null;
+        }
+        if (!root.leaf && root.size == 0) {
+            root = new Node(true);
+        }
+        for (TrackedArea area : orphans) {
+            insert(area);
+        }
+    }
+}
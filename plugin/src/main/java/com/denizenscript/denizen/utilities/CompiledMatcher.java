@@ -0,0 +1,183 @@
+package com.denizenscript.denizen.utilities;
+
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Material;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A matcher string that has been pre-processed once, so that repeated advanced matching (such as event 'matches' checks on every block break or inventory click) doesn't redo string handling and matcher creation every time.
+ * Shared by all object types that support advanced matching, via a bounded cache keyed by the matcher text.
+ * Everything other than the lazily built caches is immutable, and instances are safe to use from any thread.
+ */
+public class CompiledMatcher {
+
+    /**
+     * How many distinct matcher strings are kept compiled at once.
+     */
+    public static int CACHE_SIZE = 2048;
+
+    private static final LinkedHashMap<String, CompiledMatcher> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledMatcher> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static CompiledMatcher get(String text) {
+        synchronized (cache) {
+            CompiledMatcher result = cache.get(text);
+            if (result == null) {
+                result = new CompiledMatcher(text);
+                cache.put(text, result);
+            }
+            return result;
+        }
+    }
+
+    private static final Object NULL_VALUE = new Object();
+
+    public final String text;
+
+    public final String lowText;
+
+    /**
+     * The lowercased text before the first ':' (like 'item_flagged'), or null if there is no ':'.
+     */
+    public final String prefix;
+
+    /**
+     * The original text after the first ':', or null if there is no ':'.
+     */
+    public final String prefixValue;
+
+    /**
+     * Whether the text looks like a property matcher, like 'stone[waterlogged=true]'.
+     */
+    public final boolean hasProperties;
+
+    /**
+     * The material exactly named by the text, if any.
+     */
+    public final Material exactMaterial;
+
+    private volatile ScriptEvent.MatchHelper matchHelper;
+
+    private volatile ScriptEvent.MatchHelper prefixValueMatchHelper;
+
+    private volatile boolean[] materialLookup;
+
+    private final HashMap<Class<?>, Object> typeCache = new HashMap<>();
+
+    public CompiledMatcher(String text) {
+        this.text = text;
+        lowText = CoreUtilities.toLowerCase(text);
+        int colon = text.indexOf(':');
+        prefix = colon == -1 ? null : lowText.substring(0, colon);
+        prefixValue = colon == -1 ? null : text.substring(colon + 1);
+        hasProperties = text.contains("[") && text.endsWith("]");
+        exactMaterial = Material.getMaterial(CoreUtilities.toUpperCase(text));
+    }
+
+    public boolean hasPrefix(String prefix) {
+        return prefix.equals(this.prefix);
+    }
+
+    public ScriptEvent.MatchHelper getMatchHelper() {
+        ScriptEvent.MatchHelper result = matchHelper;
+        if (result == null) {
+            result = ScriptEvent.createMatcher(text);
+            matchHelper = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets a match helper for the text after the prefix.
+     */
+    public ScriptEvent.MatchHelper getPrefixValueMatchHelper() {
+        ScriptEvent.MatchHelper result = prefixValueMatchHelper;
+        if (result == null) {
+            result = ScriptEvent.createMatcher(prefixValue);
+            prefixValueMatchHelper = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets (or creates and stores) a per-type cached value, such as a property match helper. The creator may return null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getForType(Class<?> type, Supplier<T> creator) {
+        synchronized (typeCache) {
+            Object result = typeCache.get(type);
+            if (result == null) {
+                result = creator.get();
+                typeCache.put(type, result == null ? NULL_VALUE : result);
+            }
+            return result == NULL_VALUE ? null : (T) result;
+        }
+    }
+
+    /**
+     * Equivalent to {@link MaterialTag#advancedMatchesInternal(Material, String, boolean)} for this matcher.
+     * For matchers that only depend on the material itself, the result for every material is computed once into a lookup table.
+     */
+    public boolean matchesMaterial(Material material, boolean allowByMaterialName) {
+        if (material == null) {
+            return false;
+        }
+        switch (lowText) {
+            case "material":
+                return true;
+            case "block":
+                return material.isBlock();
+            case "item":
+                return material.isItem();
+        }
+        if (prefix != null) {
+            if (prefix.equals("vanilla_tagged")) {
+                HashSet<String> tags = VanillaTagHelper.tagsByMaterial.get(material);
+                if (tags == null) {
+                    return false;
+                }
+                ScriptEvent.MatchHelper matcher = getPrefixValueMatchHelper();
+                for (String tag : tags) {
+                    if (matcher.doesMatch(tag)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            else if (prefix.equals("material_flagged")) {
+                return ScriptEvent.coreFlaggedCheck(prefixValue, new MaterialTag(material).getFlagTracker());
+            }
+        }
+        if (!allowByMaterialName) {
+            return false;
+        }
+        boolean[] lookup = materialLookup;
+        if (lookup == null) {
+            Material[] materials = Material.values();
+            lookup = new boolean[materials.length];
+            for (Material option : materials) {
+                lookup[option.ordinal()] = matchesMaterialName(option);
+            }
+            materialLookup = lookup;
+        }
+        return lookup[material.ordinal()];
+    }
+
+    private boolean matchesMaterialName(Material material) {
+        if (exactMaterial != null) {
+            return exactMaterial == material;
+        }
+        return getMatchHelper().doesMatch(material.name());
+    }
+}
@@ -5,9 +5,14 @@ import com.denizenscript.denizen.objects.CuboidTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.bukkit.Location;
+import org.bukkit.World;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -19,6 +24,7 @@ import java.util.function.Consumer;
  * Note that vertical position (Y coordinate) is entirely ignored.
  * Because most noted areas are likely to fit into one of these grids, any lookups can confine themselves to only looking at the Areas defined within the same grid cell.
  * This uses multiple layers of imperfect checks before doing the final exact-containment check, as the imperfect checks are significantly faster to run, especially for complex area shapes like polygons.
+ * Alternately, the tracker can be configured to index each world with an {@link AreaRTree}, which accounts for the Y range and handles areas too large for the grid.
  */
 public class NotedAreaTracker {
 
@@ -74,6 +80,28 @@ public class NotedAreaTracker {
         }
     }
 
+    /**
+     * A spatial index of the noted areas within one world.
+     */
+    public interface AreaIndex {
+
+        void add(TrackedArea area);
+
+        boolean remove(TrackedArea area);
+
+        boolean isEmpty();
+
+        void forEachAreaThatContains(int x, int y, int z, Location location, Consumer<AreaContainmentObject> action);
+
+        void forEachAreaThatIntersects(TrackedArea area, Consumer<AreaContainmentObject> action);
+
+        void forEachArea(Consumer<TrackedArea> action);
+    }
+
+    public enum IndexType { GRID, RTREE }
+
+    public static IndexType indexType = IndexType.GRID;
+
     public static final class AreaSet {
 
         public AreaSet(int type, int index) {
@@ -92,7 +120,7 @@ public class NotedAreaTracker {
         }
     }
 
-    public static final class PerWorldSet {
+    public static final class PerWorldSet implements AreaIndex {
 
         public final AreaSet globalSet = new AreaSet(0, 0);
 
@@ -135,10 +163,28 @@ public class NotedAreaTracker {
             return globalSet;
         }
 
+        @Override
         public boolean isEmpty() {
             return globalSet.isEmpty() && sets50.isEmpty() && sets50_offset.isEmpty() && sets200.isEmpty() && sets200_offset.isEmpty();
         }
 
+        @Override
+        public void add(TrackedArea area) {
+            bestSetFor(area, true).list.add(area);
+        }
+
+        @Override
+        public boolean remove(TrackedArea area) {
+            AreaSet areaSet = bestSetFor(area, false);
+            if (areaSet == null || !areaSet.list.remove(area)) {
+                return false;
+            }
+            if (areaSet.isEmpty()) {
+                remove(areaSet);
+            }
+            return true;
+        }
+
         public void remove(AreaSet set) {
             switch (set.type) {
                 case 1 -> sets50.remove(set.index);
@@ -147,23 +193,134 @@ public class NotedAreaTracker {
                 case 4 -> sets200_offset.remove(set.index);
             }
         }
+
+        @Override
+        public void forEachAreaThatContains(int x, int y, int z, Location location, Consumer<AreaContainmentObject> action) {
+            forEachAreaInSetThatContains(x, y, z, location, globalSet, action);
+            forEachAreaInSetThatContains(x, y, z, location, sets50.get(getIndex(x, z, 50, 0)), action);
+            forEachAreaInSetThatContains(x, y, z, location, sets50_offset.get(getIndex(x, z, 50, 25)), action);
+            forEachAreaInSetThatContains(x, y, z, location, sets200.get(getIndex(x, z, 200, 0)), action);
+            forEachAreaInSetThatContains(x, y, z, location, sets200_offset.get(getIndex(x, z, 200, 100)), action);
+        }
+
+        @Override
+        public void forEachAreaThatIntersects(TrackedArea area2, Consumer<AreaContainmentObject> action) {
+            forEachAreaInSetThatIntersects(area2, globalSet, action);
+            long xDistance = area2.highX - area2.lowX, zDistance = area2.highZ - area2.lowZ;
+            // Loose heuristic for when a regional-indexed loop is probably counterproductive - total looped regions exceeds 10x actual total areas available
+            if (xDistance * zDistance / (50 * 50) > (sets50.size() + sets50_offset.size()) * 10L) {
+                for (AreaSet areaSet : sets50.values()) {
+                    forEachAreaInSetThatIntersects(area2, areaSet, action);
+                }
+                for (AreaSet areaSet : sets50_offset.values()) {
+                    forEachAreaInSetThatIntersects(area2, areaSet, action);
+                }
+            }
+            else {
+                for (int x = area2.lowX - 50; x <= area2.highX + 50; x += 50) {
+                    for (int z = area2.lowZ - 50; z <= area2.highZ + 50; z += 50) {
+                        forEachAreaInSetThatIntersects(area2, sets50.get(getIndex(x, z, 50, 0)), action);
+                        forEachAreaInSetThatIntersects(area2, sets50_offset.get(getIndex(x, z, 50, 25)), action);
+                    }
+                }
+            }
+            if (xDistance * zDistance / (288 * 200) > (sets200.size() + sets200_offset.size()) * 10L) {
+                for (AreaSet areaSet : sets200.values()) {
+                    forEachAreaInSetThatIntersects(area2, areaSet, action);
+                }
+                for (AreaSet areaSet : sets200_offset.values()) {
+                    forEachAreaInSetThatIntersects(area2, areaSet, action);
+                }
+            }
+            else {
+                for (int x = area2.lowX - 200; x <= area2.highX + 200; x += 200) {
+                    for (int z = area2.lowZ - 200; z <= area2.highZ + 200; z += 200) {
+                        forEachAreaInSetThatIntersects(area2, sets200.get(getIndex(x, z, 200, 0)), action);
+                        forEachAreaInSetThatIntersects(area2, sets200_offset.get(getIndex(x, z, 200, 100)), action);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void forEachArea(Consumer<TrackedArea> action) {
+            globalSet.list.forEach(action);
+            for (Int2ObjectOpenHashMap<AreaSet> sets : List.of(sets50, sets50_offset, sets200, sets200_offset)) {
+                for (AreaSet areaSet : sets.values()) {
+                    areaSet.list.forEach(action);
+                }
+            }
+        }
     }
 
-    public static HashMap<String, PerWorldSet> worlds = new HashMap<>();
+    public static HashMap<String, AreaIndex> worlds = new HashMap<>();
+
+    private static final Reference2IntOpenHashMap<AreaContainmentObject> areaIds = new Reference2IntOpenHashMap<>();
+
+    private static final Int2ObjectOpenHashMap<AreaContainmentObject> areasById = new Int2ObjectOpenHashMap<>();
+
+    private static int nextAreaId = 0, trackedCount = 0;
+
+    static {
+        areaIds.defaultReturnValue(-1);
+    }
+
+    /**
+     * Gets a compact numeric ID for an area object. IDs are never reused, so a stale ID can't be mistaken for a different area.
+     */
+    public static int getAreaId(AreaContainmentObject area) {
+        int id = areaIds.getInt(area);
+        if (id == -1) {
+            if (areasById.size() > trackedCount * 2 + 1024) {
+                // Drop IDs of areas that were forgotten, so the registry doesn't grow forever as areas are noted and removed
+                areaIds.keySet().removeIf(oldArea -> oldArea.getNoteName() == null);
+                areasById.values().removeIf(oldArea -> oldArea.getNoteName() == null);
+            }
+            id = nextAreaId++;
+            areaIds.put(area, id);
+            areasById.put(id, area);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the area for an ID from {@link #getAreaId}, or null if it is no longer known.
+     */
+    public static AreaContainmentObject getAreaById(int id) {
+        return areasById.get(id);
+    }
+
+    public static AreaIndex createIndex() {
+        return indexType == IndexType.RTREE ? new AreaRTree() : new PerWorldSet();
+    }
+
+    /**
+     * Changes the index type used for all worlds, moving all currently tracked areas into new indices if needed.
+     */
+    public static void setIndexType(IndexType type) {
+        if (type == indexType) {
+            return;
+        }
+        indexType = type;
+        for (Map.Entry<String, AreaIndex> world : worlds.entrySet()) {
+            AreaIndex newIndex = createIndex();
+            world.getValue().forEachArea(newIndex::add);
+            world.setValue(newIndex);
+        }
+    }
 
     /**
      * Call to add an area into the tracker.
      */
     public static void add(AreaContainmentObject area) {
         String worldName = CoreUtilities.toLowerCase(area.getWorld().getName());
-        PerWorldSet set = worlds.get(worldName);
-        if (set == null) {
-            set = new PerWorldSet();
-            worlds.put(worldName, set);
+        AreaIndex index = worlds.get(worldName);
+        if (index == null) {
+            index = createIndex();
+            worlds.put(worldName, index);
         }
-        TrackedArea tracker = new TrackedArea(area);
-        AreaSet areaSet = set.bestSetFor(tracker, true);
-        areaSet.list.add(tracker);
+        index.add(new TrackedArea(area));
+        trackedCount++;
     }
 
     /**
@@ -171,25 +328,19 @@ public class NotedAreaTracker {
      */
     public static void remove(AreaContainmentObject area) {
         String worldName = CoreUtilities.toLowerCase(area.getWorld().getName());
-        PerWorldSet set = worlds.get(worldName);
-        if (set == null) {
-            return;
-        }
-        TrackedArea tracker = new TrackedArea(area);
-        AreaSet areaSet = set.bestSetFor(tracker, false);
-        if (areaSet == null) {
+        AreaIndex index = worlds.get(worldName);
+        if (index == null) {
             return;
         }
-        areaSet.list.remove(tracker);
-        if (areaSet.isEmpty()) {
-            set.remove(areaSet);
-            if (set.isEmpty()) {
+        if (index.remove(new TrackedArea(area))) {
+            trackedCount--;
+            if (index.isEmpty()) {
                 worlds.remove(worldName);
             }
         }
     }
 
-    public static void forEachAreaInSetThatContains(int x, int y, int z, LocationTag location, AreaSet set, Consumer<AreaContainmentObject> action) {
+    public static void forEachAreaInSetThatContains(int x, int y, int z, Location location, AreaSet set, Consumer<AreaContainmentObject> action) {
         if (set == null) {
             return;
         }
@@ -204,16 +355,26 @@ public class NotedAreaTracker {
      * Call to run an action over every Area that contains a given location.
      */
     public static void forEachAreaThatContains(LocationTag location, Consumer<AreaContainmentObject> action) {
-        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
-        PerWorldSet set = worlds.get(CoreUtilities.toLowerCase(location.getWorldName()));
-        if (set == null) {
+        AreaIndex index = worlds.get(CoreUtilities.toLowerCase(location.getWorldName()));
+        if (index == null) {
+            return;
+        }
+        index.forEachAreaThatContains(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location, action);
+    }
+
+    /**
+     * Call to run an action over every Area that contains a given raw location.
+     */
+    public static void forEachAreaThatContains(Location location, Consumer<AreaContainmentObject> action) {
+        World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+        AreaIndex index = worlds.get(CoreUtilities.toLowerCase(world.getName()));
+        if (index == null) {
             return;
         }
-        forEachAreaInSetThatContains(x, y, z, location, set.globalSet, action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets50.get(PerWorldSet.getIndex(x, z, 50, 0)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets50_offset.get(PerWorldSet.getIndex(x, z, 50, 25)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets200.get(PerWorldSet.getIndex(x, z, 200, 0)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets200_offset.get(PerWorldSet.getIndex(x, z, 200, 100)), action);
+        index.forEachAreaThatContains(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location, action);
     }
 
     public static void forEachAreaInSetThatIntersects(TrackedArea area2, AreaSet set, Consumer<AreaContainmentObject> action) {
@@ -229,46 +390,10 @@ public class NotedAreaTracker {
 
     public static void forEachAreaThatIntersects(LocationTag min, LocationTag max, Consumer<AreaContainmentObject> action) {
         CuboidTag.LocationPair pair = new CuboidTag.LocationPair(min, max);
-        min = pair.low;
-        max = pair.high;
-        TrackedArea area2 = new TrackedArea(null, min, max);
-        PerWorldSet set = worlds.get(CoreUtilities.toLowerCase(min.getWorldName()));
-        if (set == null) {
+        AreaIndex index = worlds.get(CoreUtilities.toLowerCase(pair.low.getWorldName()));
+        if (index == null) {
             return;
         }
-        forEachAreaInSetThatIntersects(area2, set.globalSet, action);
-        // Loose heuristic for when a regional-indexed loop is probably counterproductive - total looped regions exceeds 10x actual total areas available
-        if (pair.xDistance() * pair.zDistance() / (50 * 50) > (set.sets50.size() + set.sets50_offset.size()) * 10) {
-            for (AreaSet areaSet : set.sets50.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
-            }
-            for (AreaSet areaSet : set.sets50_offset.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
-            }
-        }
-        else {
-            for (int x = area2.lowX - 50; x <= area2.highX + 50; x += 50) {
-                for (int z = area2.lowZ - 50; z <= area2.highZ + 50; z += 50) {
-                    forEachAreaInSetThatIntersects(area2, set.sets50.get(PerWorldSet.getIndex(x, z, 50, 0)), action);
-                    forEachAreaInSetThatIntersects(area2, set.sets50_offset.get(PerWorldSet.getIndex(x, z, 50, 25)), action);
-                }
-            }
-        }
-        if (pair.xDistance() * pair.zDistance() / (288 * 200) > (set.sets200.size() + set.sets200_offset.size()) * 10) {
-            for (AreaSet areaSet : set.sets200.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
-            }
-            for (AreaSet areaSet : set.sets200_offset.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
-            }
-        }
-        else {
-            for (int x = area2.lowX - 200; x <= area2.highX + 200; x += 200) {
-                for (int z = area2.lowZ - 200; z <= area2.highZ + 200; z += 200) {
-                    forEachAreaInSetThatIntersects(area2, set.sets200.get(PerWorldSet.getIndex(x, z, 200, 0)), action);
-                    forEachAreaInSetThatIntersects(area2, set.sets200_offset.get(PerWorldSet.getIndex(x, z, 200, 100)), action);
-                }
-            }
-        }
+        index.forEachAreaThatIntersects(new TrackedArea(null, pair.low, pair.high), action);
     }
 }
@@ -25,6 +25,7 @@ import org.bukkit.util.Consumer;
 
 import java.lang.invoke.MethodHandle;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 public class PaperAPITools {
@@ -217,4 +218,11 @@ public class PaperAPITools {
     public boolean canUseEquipmentSlot(LivingEntity entity, EquipmentSlot slot) {
         return true;
     }
+
+    /**
+     * Starts loading a chunk in the background, or returns null if the server can't load chunks asynchronously.
+     */
+    public CompletableFuture<Chunk> getChunkAtAsync(World world, int x, int z) {
+        return null;
+    }
 }
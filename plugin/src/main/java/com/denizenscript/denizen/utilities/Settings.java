@@ -1,9 +1,13 @@
 package com.denizenscript.denizen.utilities;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.events.EventExecutorCodeGen;
 import com.denizenscript.denizen.objects.PolygonTag;
 import com.denizenscript.denizen.scripts.commands.entity.RemoveCommand;
+import com.denizenscript.denizen.scripts.commands.entity.RenameCommand;
 import com.denizenscript.denizen.tags.core.CustomColorTagBase;
+import com.denizenscript.denizen.utilities.blocks.BlockSetJob;
+import com.denizenscript.denizen.utilities.flags.FlagChangeLog;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizencore.utilities.CoreConfiguration;
 import com.denizenscript.denizencore.objects.core.DurationTag;
@@ -83,6 +87,8 @@ public class Settings {
         // Spigot
         PolygonTag.preferInclusive = config.getBoolean("Tags.Polygon default inclusive", false);
         allowAsyncPassThrough = config.getBoolean("Scripts.Economy.Pass async to main thread", false);
+        String areaIndex = config.getString("Scripts.Noted areas.Index type", "grid");
+        NotedAreaTracker.setIndexType(CoreUtilities.equalsIgnoreCase(areaIndex, "rtree") ? NotedAreaTracker.IndexType.RTREE : NotedAreaTracker.IndexType.GRID);
         skipChunkFlagCleaning = config.getBoolean("Saves.Skip chunk flag cleaning", false);
         nullifySkullSkinIds = config.getBoolean("Tags.Nullify skull skin ids", false);
         worldPlayerDataSaveDelay = (float) DurationTag.valueOf(config.getString("Save world player file delay", "10s"), CoreUtilities.basicContext).getSeconds();
@@ -125,14 +131,23 @@ public class Settings {
         cache_worldScriptChatEventAsynchronous = config.getBoolean("Scripts.World.Events.On player chats.Use asynchronous event", false);
         cache_worldScriptTimeEventFrequency = DurationTag.valueOf(config.getString("Scripts.World.Events.On time changes.Frequency of check", "250t"), CoreUtilities.basicContext);
         cache_blockTagsMaxBlocks = config.getInt("Tags.Block tags.Max blocks", 1000000);
+        cache_blockTagsMaxSnapshotBlocks = config.getInt("Tags.Block tags.Max snapshot blocks", 20000000);
         cache_chatHistoryMaxMessages = config.getInt("Tags.Chat history.Max messages", 10);
         cache_packetInterception = config.getBoolean("Packets.Interception", true);
         cache_packetInterceptAutoInit = config.getBoolean("Packets.Auto init", false);
         cache_commandScriptAutoInit = config.getBoolean("Scripts.Command.Auto init", false);
+        EventExecutorCodeGen.enabled = config.getBoolean("Scripts.Generated event executors", true);
         PlayerFlagHandler.cacheTimeoutSeconds = config.getLong("Saves.Offline player cache timeout", 300);
+        PlayerFlagHandler.playerFlagTrackerCache.maxWeight = config.getLong("Saves.Offline player cache max megabytes", 512) * 1024 * 1024;
         PlayerFlagHandler.asyncPreload = config.getBoolean("Saves.Load async on login", true);
         PlayerFlagHandler.saveOnlyWhenWorldSaveOn = config.getBoolean("Saves.Only save if world save is on", false);
+        PlayerFlagHandler.binaryFormat = config.getBoolean("Saves.Binary player flag files", true);
+        FlagChangeLog.enabled = config.getBoolean("Saves.Incremental flag saving", true);
+        PlayerFlagHandler.loadThreads = Math.max(1, config.getInt("Saves.Player flag loader threads", 2));
+        PlayerFlagHandler.loadWaitTimeoutMillis = DurationTag.valueOf(config.getString("Saves.Player flag load wait timeout", "15s"), CoreUtilities.basicContext).getMillis();
         RemoveCommand.alwaysWarnOnMassRemove = config.getBoolean("Commands.Remove.Always warn on mass delete", false);
+        RenameCommand.defaultRefreshMillis = DurationTag.valueOf(config.getString("Commands.Rename.Per player refresh", "0s"), CoreUtilities.basicContext).getMillis();
+        BlockSetJob.workerThreads = Math.max(1, config.getInt("Commands.Schematic.Job threads", 2));
         ConfigurationSection colorSection = config.getConfigurationSection("Colors");
         if (colorSection != null) {
             CustomColorTagBase.customColors.clear();
@@ -172,7 +187,7 @@ public class Settings {
             cache_chatToTargetFormat, cache_chatWithTargetToBystandersFormat, cache_chatWithTargetsToBystandersFormat,
             cache_chatToNpcFormat, cache_chatToNpcOverheardFormat, cache_interactQueueSpeed, cache_limitPath;
 
-    public static int cache_blockTagsMaxBlocks, cache_chatHistoryMaxMessages;
+    public static int cache_blockTagsMaxBlocks, cache_blockTagsMaxSnapshotBlocks, cache_chatHistoryMaxMessages;
 
     public static double cache_chatBystandersRange, cache_chatToNpcOverhearingRange;
 
@@ -411,6 +426,10 @@ public class Settings {
         return cache_blockTagsMaxBlocks;
     }
 
+    public static int blockTagsMaxSnapshotBlocks() {
+        return cache_blockTagsMaxSnapshotBlocks;
+    }
+
     public static int chatHistoryMaxMessages() {
         return cache_chatHistoryMaxMessages;
     }
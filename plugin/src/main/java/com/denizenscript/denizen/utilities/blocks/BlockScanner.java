@@ -0,0 +1,166 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizen.utilities.Settings;
+import com.denizenscript.denizencore.tags.TagContext;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Scans a box of blocks using chunk snapshots, so that the actual block checks can run in parallel (on the common fork-join pool) rather than one block at a time on the main thread.
+ * Snapshots are taken on the calling thread, which should be the main thread (or the owning region thread).
+ * Results are box-relative indices, sorted in X-major, then Y, then Z order (the same order as a plain nested loop over the box).
+ */
+public class BlockScanner {
+
+    /**
+     * Boxes smaller than this are cheaper to check directly than to snapshot.
+     */
+    public static int MIN_SNAPSHOT_VOLUME = 4096;
+
+    @FunctionalInterface
+    public interface PositionFilter {
+
+        /**
+         * Returns true if the absolute block position is within the searched shape. Must be thread-safe.
+         */
+        boolean test(int x, int y, int z);
+    }
+
+    @FunctionalInterface
+    public interface BlockTest {
+
+        /**
+         * Returns true if the block matches. X and Z are relative to the snapshot's chunk, Y is absolute. Must be thread-safe.
+         */
+        boolean test(ChunkSnapshot snapshot, int x, int y, int z);
+    }
+
+    /**
+     * Compiles a location matcher into a lookup of matching materials (indexed by ordinal), or returns null if the matcher depends on more than the block's material (such as flags, areas, or block properties).
+     */
+    public static boolean[] compileMaterialMatcher(String matcher, TagContext context) {
+        String matcherLow = CoreUtilities.toLowerCase(matcher);
+        if (matcherLow.contains("location") || matcherLow.contains("block_flagged:") || matcherLow.contains("[")) {
+            return null;
+        }
+        Material[] materials = Material.values();
+        boolean[] result = new boolean[materials.length];
+        for (Material material : materials) {
+            if (material.isBlock() && !material.isLegacy()) {
+                result[material.ordinal()] = new MaterialTag(material).tryAdvancedMatcher(matcher, context);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a block test that checks the block material against a compiled material matcher.
+     */
+    public static BlockTest materialTest(boolean[] materials) {
+        return (snapshot, x, y, z) -> materials[snapshot.getBlockType(x, y, z).ordinal()];
+    }
+
+    public final World world;
+
+    public final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    public final int ySize, zSize;
+
+    /**
+     * Prepares a scan of the given (inclusive) box. The Y range is clamped to the world's height limits.
+     */
+    public BlockScanner(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.world = world;
+        this.minX = minX;
+        this.minY = Math.max(minY, world.getMinHeight());
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = Math.min(maxY, world.getMaxHeight() - 1);
+        this.maxZ = maxZ;
+        ySize = Math.max(0, this.maxY - this.minY + 1);
+        zSize = maxZ - minZ + 1;
+    }
+
+    public long getVolume() {
+        return (long) (maxX - minX + 1) * ySize * zSize;
+    }
+
+    /**
+     * Returns true if the box is large enough to be worth snapshotting, but not larger than the configured limit.
+     */
+    public boolean shouldUseSnapshots() {
+        long volume = getVolume();
+        return volume >= MIN_SNAPSHOT_VOLUME && volume <= Settings.blockTagsMaxSnapshotBlocks();
+    }
+
+    public int getX(long index) {
+        return minX + (int) (index / ((long) ySize * zSize));
+    }
+
+    public int getY(long index) {
+        return minY + (int) ((index / zSize) % ySize);
+    }
+
+    public int getZ(long index) {
+        return minZ + (int) (index % zSize);
+    }
+
+    public LocationTag getLocation(long index) {
+        return new LocationTag(world, getX(index), getY(index), getZ(index));
+    }
+
+    /**
+     * Scans the box, returning the sorted indices of each block position that passes the filter (if any) and the test.
+     */
+    public long[] scan(PositionFilter filter, BlockTest test) {
+        if (ySize == 0 || maxX < minX || maxZ < minZ) {
+            return new long[0];
+        }
+        int minChunkX = minX >> 4, minChunkZ = minZ >> 4;
+        int chunkCountX = (maxX >> 4) - minChunkX + 1, chunkCountZ = (maxZ >> 4) - minChunkZ + 1;
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[chunkCountX * chunkCountZ];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = world.getChunkAt(minChunkX + i / chunkCountZ, minChunkZ + i % chunkCountZ).getChunkSnapshot(false, false, false);
+        }
+        LongArrayList[] found = new LongArrayList[snapshots.length];
+        IntStream.range(0, snapshots.length).parallel().forEach((i) -> {
+            found[i] = scanChunk(snapshots[i], minChunkX + i / chunkCountZ, minChunkZ + i % chunkCountZ, filter, test);
+        });
+        int total = 0;
+        for (LongArrayList list : found) {
+            total += list.size();
+        }
+        long[] result = new long[total];
+        int offset = 0;
+        for (LongArrayList list : found) {
+            list.getElements(0, result, offset, list.size());
+            offset += list.size();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public LongArrayList scanChunk(ChunkSnapshot snapshot, int chunkX, int chunkZ, PositionFilter filter, BlockTest test) {
+        LongArrayList found = new LongArrayList();
+        int lowX = Math.max(chunkX << 4, minX), highX = Math.min((chunkX << 4) + 15, maxX);
+        int lowZ = Math.max(chunkZ << 4, minZ), highZ = Math.min((chunkZ << 4) + 15, maxZ);
+        for (int x = lowX; x <= highX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = lowZ; z <= highZ; z++) {
+                    if ((filter == null || filter.test(x, y, z)) && test.test(snapshot, x & 15, y, z & 15)) {
+                        found.add(((long) (x - minX) * ySize + (y - minY)) * zSize + (z - minZ));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -25,7 +25,7 @@ public interface BlockSet {
 
     FullBlockData[] getBlocks();
 
-    void setBlocksDelayed(final Runnable runme, final InputParams input, long maxDelayMs);
+    void setBlocksDelayed(BlockSetJob job, InputParams input, long maxDelayMs);
 
     void setBlocks(InputParams input);
 }
@@ -0,0 +1,359 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tracked, cancellable block set operation (such as a delayed schematic load, save, rotate, create or paste).
+ * Async jobs run on a shared worker pool, ticked jobs run on the main thread with a per-tick time budget that shrinks automatically while the server is lagging.
+ * The job registry is only to be used from the main thread, the state, progress and cancel fields may be read from anywhere.
+ */
+public class BlockSetJob {
+
+    public enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+
+    /**
+     * Thrown by {@link #checkCancelled()} to stop an async job early.
+     */
+    public static class CancelledException extends RuntimeException {
+
+        public CancelledException() {
+            super("Job was cancelled", null, false, false);
+        }
+    }
+
+    @FunctionalInterface
+    public interface AsyncWork {
+
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface TickedWork {
+
+        /**
+         * Processes as much as fits in the given number of milliseconds. Returns true once the work is complete.
+         */
+        boolean run(long budgetMs);
+    }
+
+    /**
+     * How many background threads async jobs can use.
+     * Note that changing this requires a restart, as the pool is only created once.
+     */
+    public static int workerThreads = 2;
+
+    /**
+     * How long finished jobs remain readable (eg by tags) before they're forgotten.
+     */
+    public static long finishedRetentionMillis = 60 * 1000;
+
+    /**
+     * Average tick length above which the server is considered to be lagging, and ticked jobs shrink their time budget.
+     */
+    public static double laggingTickMillis = 52;
+
+    public static Int2ObjectLinkedOpenHashMap<BlockSetJob> jobs = new Int2ObjectLinkedOpenHashMap<>();
+
+    public static ArrayList<BlockSetJob> tickedJobs = new ArrayList<>();
+
+    public static int nextId = 1;
+
+    public static double averageTickMillis = 50;
+
+    /**
+     * Multiplier (0 to 1) applied to each ticked job's maximum per-tick time.
+     */
+    public static double budgetScale = 1;
+
+    private static long lastTickNanos = 0;
+
+    private static BukkitTask ticker;
+
+    private static ThreadPoolExecutor executor;
+
+    public final int id;
+
+    public final String type;
+
+    public final String name;
+
+    public volatile State state = State.QUEUED;
+
+    /**
+     * Completion fraction, from 0 to 1.
+     */
+    public volatile double progress = 0;
+
+    public volatile boolean cancelRequested = false;
+
+    public volatile Throwable error;
+
+    /**
+     * The block set produced by the job, if any.
+     */
+    public volatile CuboidBlockSet result;
+
+    /**
+     * Called on the main thread once the job ends, whether it completed, failed or was cancelled.
+     */
+    public Runnable onFinish;
+
+    public TickedWork tickedWork;
+
+    public long maxDelayMs;
+
+    public long finishTime;
+
+    public BlockSetJob(int id, String type, String name) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+    }
+
+    public boolean isActive() {
+        return state == State.QUEUED || state == State.RUNNING;
+    }
+
+    public void setProgress(long done, long total) {
+        progress = total <= 0 ? 1 : Math.min(1, done / (double) total);
+    }
+
+    public void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancelledException();
+        }
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public static BlockSetJob create(String type, String name) {
+        long now = System.currentTimeMillis();
+        Iterator<BlockSetJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            BlockSetJob job = iterator.next();
+            if (!job.isActive() && now - job.finishTime > finishedRetentionMillis) {
+                iterator.remove();
+            }
+        }
+        BlockSetJob job = new BlockSetJob(nextId++, type, name);
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    public static BlockSetJob getJob(int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Requests cancellation of all active jobs for the given schematic name. Returns how many jobs were affected.
+     */
+    public static int cancelAll(String name) {
+        int count = 0;
+        for (BlockSetJob job : jobs.values()) {
+            if (job.isActive() && name.equals(job.name)) {
+                job.cancel();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            executor = new ThreadPoolExecutor(workerThreads, workerThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+                Thread thread = new Thread(runnable, "Denizen Block Set Job #" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Counts bytes read from a stream of known length as job progress, and stops reading once the job is cancelled.
+     */
+    public static class ProgressInputStream extends FilterInputStream {
+
+        public final BlockSetJob job;
+
+        public final long length;
+
+        public long bytesRead = 0;
+
+        public ProgressInputStream(InputStream in, long length, BlockSetJob job) {
+            super(in);
+            this.length = length;
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                track(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                track(result);
+            }
+            return result;
+        }
+
+        private void track(int count) {
+            job.checkCancelled();
+            bytesRead += count;
+            // Reading the file is most, but not all, of a load
+            job.progress = Math.min(0.9, 0.9 * bytesRead / Math.max(1, length));
+        }
+    }
+
+    /**
+     * Runs the work on the job worker pool. The work should call {@link #checkCancelled()} and update {@link #progress} as it goes.
+     */
+    public void submitAsync(AsyncWork work) {
+        submitAsync(work, null);
+    }
+
+    /**
+     * Runs the work on the job worker pool. If 'then' is given, it's run on the main thread after the work succeeds and is responsible for continuing (and eventually finishing) the job.
+     */
+    public void submitAsync(AsyncWork work, Runnable then) {
+        getExecutor().execute(() -> {
+            State endState;
+            if (cancelRequested) {
+                endState = State.CANCELLED;
+            }
+            else {
+                state = State.RUNNING;
+                try {
+                    work.run();
+                    endState = State.DONE;
+                }
+                catch (Throwable ex) {
+                    endState = cancelRequested ? State.CANCELLED : State.FAILED;
+                    error = ex;
+                }
+            }
+            State finalState = endState;
+            if (endState == State.DONE && then != null) {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), then);
+            }
+            else {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> finish(finalState));
+            }
+        });
+    }
+
+    /**
+     * Runs the work on the main thread, a little each tick, until it completes or the job is cancelled.
+     */
+    public void submitTicked(long maxDelayMs, TickedWork work) {
+        this.maxDelayMs = maxDelayMs;
+        this.tickedWork = work;
+        tickedJobs.add(this);
+        if (ticker == null) {
+            lastTickNanos = 0;
+            ticker = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    runTickedJobs();
+                }
+            }.runTaskTimer(Denizen.getInstance(), 1, 1);
+        }
+    }
+
+    /**
+     * Gets the time a ticked job may use this tick, given its configured maximum.
+     */
+    public static long getTickBudget(long maxDelayMs) {
+        return Math.max(1, Math.round(maxDelayMs * budgetScale));
+    }
+
+    /**
+     * Tracks the average tick length, shrinking the shared budget scale quickly while ticks run long, and growing it back slowly once they don't.
+     */
+    public static void updateBudget() {
+        long now = System.nanoTime();
+        if (lastTickNanos != 0) {
+            averageTickMillis = averageTickMillis * 0.9 + ((now - lastTickNanos) / 1_000_000.0) * 0.1;
+            if (averageTickMillis > laggingTickMillis) {
+                budgetScale = Math.max(0.05, budgetScale * 0.8);
+            }
+            else {
+                budgetScale = Math.min(1, budgetScale + 0.05);
+            }
+        }
+        lastTickNanos = now;
+    }
+
+    public static void runTickedJobs() {
+        updateBudget();
+        for (BlockSetJob job : new ArrayList<>(tickedJobs)) {
+            if (job.cancelRequested) {
+                tickedJobs.remove(job);
+                job.finish(State.CANCELLED);
+                continue;
+            }
+            job.state = State.RUNNING;
+            boolean done;
+            try {
+                done = job.tickedWork.run(getTickBudget(job.maxDelayMs));
+            }
+            catch (Throwable ex) {
+                tickedJobs.remove(job);
+                job.error = ex;
+                job.finish(State.FAILED);
+                continue;
+            }
+            if (done) {
+                tickedJobs.remove(job);
+                job.finish(State.DONE);
+            }
+        }
+        if (tickedJobs.isEmpty()) {
+            ticker.cancel();
+            ticker = null;
+        }
+    }
+
+    public void finish(State endState) {
+        state = endState;
+        if (endState == State.DONE) {
+            progress = 1;
+        }
+        finishTime = System.currentTimeMillis();
+        tickedWork = null;
+        if (onFinish != null) {
+            try {
+                onFinish.run();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+    }
+}
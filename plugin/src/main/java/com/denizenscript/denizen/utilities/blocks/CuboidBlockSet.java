@@ -1,10 +1,9 @@
 package com.denizenscript.denizen.utilities.blocks;
 
-import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.NMSVersion;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.*;
-import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.Mechanism;
@@ -12,18 +11,23 @@ import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
-import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.Vector;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
 
 public class CuboidBlockSet implements BlockSet {
 
@@ -50,7 +54,7 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        blocks = new FullBlockData[x_width * y_length * z_height];
+        initStorage();
         int index = 0;
         double lowX = low.getBlockX() + 0.5, lowY = low.getBlockY() + 0.5, lowZ = low.getBlockZ() + 0.5;
         Location refLoc = low.clone();
@@ -64,13 +68,13 @@ public class CuboidBlockSet implements BlockSet {
                     if (block != STRUCTURE_VOID && mask != null && !mask.contains(block.data.getMaterial())) {
                         block = STRUCTURE_VOID;
                     }
-                    blocks[index++] = block;
+                    setBlock(index++, block);
                 }
             }
         }
     }
 
-    public void buildDelayed(AreaContainmentObject area, Location center, HashSet<Material> mask, Runnable runme, long maxDelayMs, boolean copyFlags) {
+    public void buildDelayed(AreaContainmentObject area, Location center, HashSet<Material> mask, BlockSetJob job, long maxDelayMs, boolean copyFlags) {
         hasFlags = copyFlags;
         CuboidTag boundary;
         if (area instanceof CuboidTag && ((CuboidTag) area).pairs.size() == 1) {
@@ -89,13 +93,13 @@ public class CuboidBlockSet implements BlockSet {
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
         final long goal = (long)x_width * y_length * z_height;
-        blocks = new FullBlockData[x_width * y_length * z_height];
+        initStorage();
         double lowX = low.getBlockX() + 0.5, lowY = low.getBlockY() + 0.5, lowZ = low.getBlockZ() + 0.5;
         Location refLoc = low.clone();
-        new BukkitRunnable() {
+        job.submitTicked(maxDelayMs, new BlockSetJob.TickedWork() {
             int index = 0;
             @Override
-            public void run() {
+            public boolean run(long budgetMs) {
                 long start = CoreUtilities.monotonicMillis();
                 while (index < goal) {
                     long z = index % ((long) z_height);
@@ -108,24 +112,37 @@ public class CuboidBlockSet implements BlockSet {
                     if (block != STRUCTURE_VOID && mask != null && !mask.contains(block.data.getMaterial())) {
                         block = STRUCTURE_VOID;
                     }
-                    blocks[index] = block;
+                    setBlock(index, block);
                     index++;
-                    if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
-                        return;
+                    if (CoreUtilities.monotonicMillis() - start > budgetMs) {
+                        job.setProgress(index, goal);
+                        return false;
                     }
                 }
-                if (runme != null) {
-                    runme.run();
-                }
-                cancel();
-
+                return true;
             }
-        }.runTaskTimer(Denizen.getInstance(), 1, 1);
+        });
     }
 
     public AreaContainmentObject constraint = null;
 
-    public FullBlockData[] blocks = null;
+    /**
+     * Deduplicated block states. Entries only hold block data, tile entity data and flags are kept in the sparse side maps.
+     */
+    public FullBlockData[] palette = null;
+
+    public int paletteSize = 0;
+
+    public HashMap<BlockData, Integer> paletteIds = null;
+
+    /**
+     * Palette index of each block, in x-major then y then z order (see {@link #getIndex(int, int, int)}).
+     */
+    public int[] indices = null;
+
+    public Int2ObjectOpenHashMap<CompoundTag> tileEntities = new Int2ObjectOpenHashMap<>();
+
+    public Int2ObjectOpenHashMap<MapTag> flags = new Int2ObjectOpenHashMap<>();
 
     public boolean hasFlags = false;
 
@@ -149,7 +166,12 @@ public class CuboidBlockSet implements BlockSet {
 
     public CuboidBlockSet duplicate() {
         CuboidBlockSet result = new CuboidBlockSet();
-        result.blocks = blocks.clone();
+        result.palette = palette.clone();
+        result.paletteSize = paletteSize;
+        result.paletteIds = new HashMap<>(paletteIds);
+        result.indices = indices.clone();
+        result.tileEntities = new Int2ObjectOpenHashMap<>(tileEntities);
+        result.flags = new Int2ObjectOpenHashMap<>(flags);
         result.hasFlags = hasFlags;
         result.x_width = x_width;
         result.y_length = y_length;
@@ -163,9 +185,86 @@ public class CuboidBlockSet implements BlockSet {
         return result;
     }
 
+    /**
+     * Allocates empty storage for the current dimensions, with every block initially structure void.
+     */
+    public void initStorage() {
+        palette = new FullBlockData[16];
+        paletteSize = 0;
+        paletteIds = new HashMap<>();
+        indices = new int[x_width * y_length * z_height];
+        tileEntities = new Int2ObjectOpenHashMap<>();
+        flags = new Int2ObjectOpenHashMap<>();
+        getPaletteId(STRUCTURE_VOID.data);
+    }
+
+    /**
+     * Gets the palette index for the block data, adding it to the palette if needed.
+     */
+    public int getPaletteId(BlockData data) {
+        Integer id = paletteIds.get(data);
+        if (id != null) {
+            return id;
+        }
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+        }
+        paletteIds.put(data, paletteSize);
+        palette[paletteSize] = data == STRUCTURE_VOID.data ? STRUCTURE_VOID : new FullBlockData(data);
+        return paletteSize++;
+    }
+
+    public int getIndex(int x, int y, int z) {
+        return z + y * z_height + x * z_height * y_length;
+    }
+
+    public int getBlockCount() {
+        return indices.length;
+    }
+
+    /**
+     * Gets the block at an index. Blocks without tile entity data or flags return the shared palette entry, so the result must not be modified.
+     */
+    public FullBlockData getBlock(int index) {
+        FullBlockData block = palette[indices[index]];
+        CompoundTag tileEntity = tileEntities.get(index);
+        MapTag flagMap = flags.get(index);
+        if (tileEntity == null && flagMap == null) {
+            return block;
+        }
+        return new FullBlockData(block.data, tileEntity, flagMap);
+    }
+
+    public void setBlock(int index, FullBlockData block) {
+        indices[index] = getPaletteId(block.data);
+        setSideData(index, block.tileEntityData, block.flags);
+    }
+
+    public void setSideData(int index, CompoundTag tileEntity, MapTag flagMap) {
+        if (tileEntity == null) {
+            tileEntities.remove(index);
+        }
+        else {
+            tileEntities.put(index, tileEntity);
+        }
+        if (flagMap == null) {
+            flags.remove(index);
+        }
+        else {
+            flags.put(index, flagMap);
+        }
+    }
+
+    /**
+     * Builds a full array of block objects. This is expensive for large sets, prefer {@link #getBlock(int)}.
+     */
     @Override
     public FullBlockData[] getBlocks() {
-        return blocks;
+        FullBlockData[] result = new FullBlockData[indices.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getBlock(i);
+        }
+        return result;
     }
 
     public CuboidTag getCuboid(Location loc) {
@@ -299,47 +398,13 @@ public class CuboidBlockSet implements BlockSet {
     }
 
     @Override
-    public void setBlocksDelayed(final Runnable runme, final InputParams input, long maxDelayMs) {
-        final long goal = (long)x_width * y_length * z_height;
-        new BukkitRunnable() {
-            int index = 0;
-            @Override
-            public void run() {
-                SchematicCommand.noPhys = true;
-                long start = CoreUtilities.monotonicMillis();
-                while (index < goal) {
-                    int z = index % (z_height);
-                    int y = ((index - z) % (y_length * z_height)) / z_height;
-                    int x = (index - y - z) / (y_length * z_height);
-                    setBlockSingle(blocks[index], x, y, z, input);
-                    index++;
-                    if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
-                        SchematicCommand.noPhys = false;
-                        return;
-                    }
-                }
-                SchematicCommand.noPhys = false;
-                cancel();
-                if (runme != null) {
-                    runme.run();
-                }
-            }
-        }.runTaskTimer(Denizen.getInstance(), 1, 1);
+    public void setBlocksDelayed(BlockSetJob job, InputParams input, long maxDelayMs) {
+        new SchematicPaster(this, input).pasteDelayed(job, maxDelayMs);
     }
 
     @Override
     public void setBlocks(InputParams input) {
-        SchematicCommand.noPhys = true;
-        int index = 0;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    setBlockSingle(blocks[index], x, y, z, input);
-                    index++;
-                }
-            }
-        }
-        SchematicCommand.noPhys = false;
+        new SchematicPaster(this, input).pasteAll();
     }
 
     public void rotateEntitiesOne() {
@@ -363,24 +428,76 @@ public class CuboidBlockSet implements BlockSet {
         entities = outEntities;
     }
 
+    /**
+     * Maps a block position in one layout to an index in another.
+     */
+    @FunctionalInterface
+    public interface PositionMapping {
+        int map(int x, int y, int z);
+    }
+
+    /**
+     * Minimum block count before a transform remaps indices in parallel.
+     */
+    public static int PARALLEL_TRANSFORM_THRESHOLD = 1 << 16;
+
+    /**
+     * Transforms the palette once, then rebuilds the index array in the new dimensions.
+     * 'source' maps a position in the new layout to its index in the old one, 'destination' maps a position in the old layout to its index in the new one (used for the sparse side maps).
+     */
+    public void transform(int newXWidth, int newYLength, int newZHeight, UnaryOperator<FullBlockData> blockTransform, PositionMapping source, PositionMapping destination) {
+        FullBlockData[] newPalette = new FullBlockData[paletteSize];
+        HashMap<BlockData, Integer> newIds = new HashMap<>(paletteSize * 2);
+        for (int i = 0; i < paletteSize; i++) {
+            newPalette[i] = palette[i] == STRUCTURE_VOID ? STRUCTURE_VOID : blockTransform.apply(palette[i]);
+            newIds.putIfAbsent(newPalette[i].data, i);
+        }
+        int[] oldIndices = indices;
+        int[] newIndices = new int[oldIndices.length];
+        int layerSize = newYLength * newZHeight;
+        IntStream layers = IntStream.range(0, newXWidth);
+        if (oldIndices.length >= PARALLEL_TRANSFORM_THRESHOLD) {
+            layers = layers.parallel();
+        }
+        layers.forEach(x -> {
+            int index = x * layerSize;
+            for (int y = 0; y < newYLength; y++) {
+                for (int z = 0; z < newZHeight; z++) {
+                    newIndices[index++] = oldIndices[source.map(x, y, z)];
+                }
+            }
+        });
+        tileEntities = remapSideMap(tileEntities, destination);
+        flags = remapSideMap(flags, destination);
+        palette = newPalette;
+        paletteIds = newIds;
+        indices = newIndices;
+    }
+
+    public <T> Int2ObjectOpenHashMap<T> remapSideMap(Int2ObjectOpenHashMap<T> map, PositionMapping destination) {
+        Int2ObjectOpenHashMap<T> result = new Int2ObjectOpenHashMap<>(map.size());
+        int layerSize = y_length * z_height;
+        for (Int2ObjectMap.Entry<T> entry : map.int2ObjectEntrySet()) {
+            int index = entry.getIntKey();
+            int x = index / layerSize;
+            int y = (index % layerSize) / z_height;
+            int z = index % z_height;
+            result.put(destination.map(x, y, z), entry.getValue());
+        }
+        return result;
+    }
+
     public void rotateOne() {
         rotateEntitiesOne();
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
+        int oldXWidth = x_width, oldZHeight = z_height, yLength = y_length;
+        transform(oldZHeight, yLength, oldXWidth, FullBlockData::rotateOne,
+                (x, y, z) -> x + y * oldZHeight + (oldXWidth - 1 - z) * oldZHeight * yLength,
+                (x, y, z) -> (oldXWidth - 1 - x) + y * oldXWidth + z * oldXWidth * yLength);
         int cx = center_x;
         center_x = center_z;
         center_z = x_width - 1 - cx;
-        for (int x = 0; x < z_height; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = x_width - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(z, y, x).rotateOne();
-                }
-            }
-        }
-        int xw = x_width;
-        x_width = z_height;
-        z_height = xw;
-        blocks = bd;
+        x_width = oldZHeight;
+        z_height = oldXWidth;
     }
 
     public void flipEntities(int offsetMultiplier_X, int offsetMultiplier_Z) {
@@ -416,49 +533,25 @@ public class CuboidBlockSet implements BlockSet {
 
     public void flipX() {
         flipEntities(-1, 1);
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
         center_x = x_width - center_x - 1;
-        for (int x = x_width - 1; x >= 0; x--) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z).flipX();
-                }
-            }
-        }
-        blocks = bd;
+        PositionMapping mirror = (x, y, z) -> getIndex(x_width - 1 - x, y, z);
+        transform(x_width, y_length, z_height, FullBlockData::flipX, mirror, mirror);
     }
 
     public void flipY() {
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
         center_y = y_length - center_y - 1;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = y_length - 1; y >= 0; y--) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z).flipY();
-                }
-            }
-        }
-        blocks = bd;
+        PositionMapping mirror = (x, y, z) -> getIndex(x, y_length - 1 - y, z);
+        transform(x_width, y_length, z_height, FullBlockData::flipY, mirror, mirror);
     }
 
     public void flipZ() {
         flipEntities(1, -1);
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
         center_z = z_height - center_z - 1;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = z_height - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(x, y, z).flipZ();
-                }
-            }
-        }
-        blocks = bd;
+        PositionMapping mirror = (x, y, z) -> getIndex(x, y, z_height - 1 - z);
+        transform(x_width, y_length, z_height, FullBlockData::flipZ, mirror, mirror);
     }
 
     public FullBlockData blockAt(double X, double Y, double Z) {
-        return blocks[(int) (Z + Y * z_height + X * z_height * y_length)];
+        return getBlock((int) (Z + Y * z_height + X * z_height * y_length));
     }
 }
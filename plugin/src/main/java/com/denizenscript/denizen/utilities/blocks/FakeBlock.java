@@ -8,44 +8,196 @@ import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
 import com.denizenscript.denizencore.objects.core.DurationTag;
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Creates a temporary fake block and shows it to a PlayerTag.
  */
 public class FakeBlock {
 
+    /**
+     * All fake blocks shown to one player.
+     * Blocks are grouped per world, chunk and chunk section. Each section keeps its blocks sorted by their packed section-relative offset
+     * (the same format as used in section block update packets), so packet handlers can go straight to the sections a packet touches and binary search within them.
+     */
     public static class FakeBlockMap {
 
-        public Map<LocationTag, FakeBlock> byLocation = new HashMap<>();
+        public static short packOffset(int x, int y, int z) {
+            return (short) (((x & 15) << 8) | ((z & 15) << 4) | (y & 15));
+        }
+
+        public static long chunkKey(int chunkX, int chunkZ) {
+            return (chunkX & 0xFFFFFFFFL) | ((long) chunkZ << 32);
+        }
+
+        public static class Section {
+
+            public short[] offsets = new short[8];
+
+            public FakeBlock[] blocks = new FakeBlock[8];
+
+            public int size = 0;
+
+            /**
+             * Incremented whenever a block in this section is added, removed, or changes material.
+             */
+            public int modCount = 0;
+
+            /**
+             * Version-specific cache of this section's patched chunk packet data, only valid while {@link #modCount} is unchanged.
+             */
+            public Object packetCache;
+
+            public FakeBlock get(short offset) {
+                int index = Arrays.binarySearch(offsets, 0, size, offset);
+                return index >= 0 ? blocks[index] : null;
+            }
+
+            public void put(short offset, FakeBlock block) {
+                int index = Arrays.binarySearch(offsets, 0, size, offset);
+                modCount++;
+                if (index >= 0) {
+                    blocks[index] = block;
+                    return;
+                }
+                index = -index - 1;
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                    blocks = Arrays.copyOf(blocks, size * 2);
+                }
+                System.arraycopy(offsets, index, offsets, index + 1, size - index);
+                System.arraycopy(blocks, index, blocks, index + 1, size - index);
+                offsets[index] = offset;
+                blocks[index] = block;
+                size++;
+            }
+
+            public boolean remove(short offset) {
+                int index = Arrays.binarySearch(offsets, 0, size, offset);
+                if (index < 0) {
+                    return false;
+                }
+                modCount++;
+                System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+                System.arraycopy(blocks, index + 1, blocks, index, size - index - 1);
+                size--;
+                blocks[size] = null;
+                return true;
+            }
+        }
+
+        public static class ChunkBlocks {
+
+            public final Int2ObjectAVLTreeMap<Section> sections = new Int2ObjectAVLTreeMap<>();
+
+            public int size = 0;
+
+            public void addAllTo(List<FakeBlock> output) {
+                for (Section section : sections.values()) {
+                    output.addAll(Arrays.asList(section.blocks).subList(0, section.size));
+                }
+            }
+        }
+
+        public final HashMap<String, Long2ObjectOpenHashMap<ChunkBlocks>> worlds = new HashMap<>();
+
+        public int size = 0;
+
+        public ChunkBlocks getChunk(String worldName, int chunkX, int chunkZ) {
+            Long2ObjectOpenHashMap<ChunkBlocks> chunks = worlds.get(worldName);
+            return chunks == null ? null : chunks.get(chunkKey(chunkX, chunkZ));
+        }
+
+        public Section getSection(String worldName, int chunkX, int sectionY, int chunkZ) {
+            ChunkBlocks chunk = getChunk(worldName, chunkX, chunkZ);
+            return chunk == null ? null : chunk.sections.get(sectionY);
+        }
+
+        public FakeBlock get(String worldName, int x, int y, int z) {
+            Section section = getSection(worldName, x >> 4, y >> 4, z >> 4);
+            return section == null ? null : section.get(packOffset(x, y, z));
+        }
 
-        public Map<ChunkCoordinate, List<FakeBlock>> byChunk = new HashMap<>();
+        public FakeBlock get(LocationTag location) {
+            return get(location.getWorldName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
 
         public FakeBlock getOrAdd(PlayerTag player, LocationTag location) {
-            location = new LocationTag(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location.getWorldName());
-            FakeBlock block = byLocation.get(location);
+            int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+            ChunkBlocks chunk = worlds.computeIfAbsent(location.getWorldName(), k -> new Long2ObjectOpenHashMap<>()).computeIfAbsent(chunkKey(x >> 4, z >> 4), k -> new ChunkBlocks());
+            Section section = chunk.sections.get(y >> 4);
+            if (section == null) {
+                section = new Section();
+                chunk.sections.put(y >> 4, section);
+            }
+            short offset = packOffset(x, y, z);
+            FakeBlock block = section.get(offset);
             if (block != null) {
                 return block;
             }
-            block = new FakeBlock(player, location);
-            byLocation.put(location, block);
-            List<FakeBlock> chunkBlocks = byChunk.computeIfAbsent(block.chunkCoord, k -> new ArrayList<>());
-            chunkBlocks.add(block);
+            block = new FakeBlock(player, new LocationTag(x, y, z, location.getWorldName()));
+            section.put(offset, block);
+            chunk.size++;
+            size++;
             return block;
         }
 
         public void remove(FakeBlock block) {
-            if (byLocation.remove(block.location) != null) {
-                List<FakeBlock> chunkBlocks = byChunk.get(block.chunkCoord);
-                if (chunkBlocks != null) {
-                    chunkBlocks.remove(block);
-                    if (chunkBlocks.isEmpty()) {
-                        byChunk.remove(block.chunkCoord);
+            LocationTag location = block.location;
+            Long2ObjectOpenHashMap<ChunkBlocks> chunks = worlds.get(location.getWorldName());
+            if (chunks == null) {
+                return;
+            }
+            long key = chunkKey(block.chunkCoord.x, block.chunkCoord.z);
+            ChunkBlocks chunk = chunks.get(key);
+            if (chunk == null) {
+                return;
+            }
+            int sectionY = location.getBlockY() >> 4;
+            Section section = chunk.sections.get(sectionY);
+            if (section == null || section.get(packOffset(location.getBlockX(), location.getBlockY(), location.getBlockZ())) != block) {
+                return;
+            }
+            section.remove(packOffset(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+            size--;
+            if (section.size == 0) {
+                chunk.sections.remove(sectionY);
+            }
+            if (--chunk.size == 0) {
+                chunks.remove(key);
+                if (chunks.isEmpty()) {
+                    worlds.remove(location.getWorldName());
+                }
+            }
+        }
+
+        public void markChanged(FakeBlock block) {
+            LocationTag location = block.location;
+            Section section = getSection(location.getWorldName(), block.chunkCoord.x, location.getBlockY() >> 4, block.chunkCoord.z);
+            if (section != null) {
+                section.modCount++;
+            }
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public void forEach(Consumer<FakeBlock> action) {
+            for (Long2ObjectOpenHashMap<ChunkBlocks> chunks : worlds.values()) {
+                for (ChunkBlocks chunk : chunks.values()) {
+                    for (Section section : chunk.sections.values()) {
+                        for (int i = 0; i < section.size; i++) {
+                            action.accept(section.blocks[i]);
+                        }
                     }
                 }
             }
@@ -59,7 +211,15 @@ public class FakeBlock {
         if (map == null) {
             return null;
         }
-        return map.byLocation.get(location);
+        return map.get(location);
+    }
+
+    public static FakeBlock getFakeBlockFor(UUID id, String worldName, int x, int y, int z) {
+        FakeBlockMap map = blocks.get(id);
+        if (map == null) {
+            return null;
+        }
+        return map.get(worldName, x, y, z);
     }
 
     public static List<FakeBlock> getFakeBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
@@ -67,7 +227,13 @@ public class FakeBlock {
         if (map == null) {
             return null;
         }
-        return map.byChunk.get(chunkCoord);
+        FakeBlockMap.ChunkBlocks chunk = map.getChunk(chunkCoord.worldName, chunkCoord.x, chunkCoord.z);
+        if (chunk == null) {
+            return null;
+        }
+        List<FakeBlock> result = new ArrayList<>(chunk.size);
+        chunk.addAllTo(result);
+        return result;
     }
 
     public final PlayerTag player;
@@ -83,30 +249,45 @@ public class FakeBlock {
     }
 
     public static void showFakeBlockTo(List<PlayerTag> players, LocationTag location, MaterialTag material, DurationTag duration, boolean sendNow) {
+        showFakeBlocksTo(players, Collections.singletonList(location), Collections.singletonList(material), duration, sendNow);
+    }
+
+    /**
+     * Shows many fake blocks at once. Materials are matched to locations by index, looping if there are fewer materials than locations.
+     */
+    public static void showFakeBlocksTo(List<PlayerTag> players, List<LocationTag> locations, List<MaterialTag> materials, DurationTag duration, boolean sendNow) {
         NetworkInterceptHelper.enable();
         for (PlayerTag player : players) {
             if (!player.isOnline() || !player.isValid()) {
                 continue;
             }
             UUID uuid = player.getPlayerEntity().getUniqueId();
-            FakeBlockMap playerBlocks = blocks.get(uuid);
-            if (playerBlocks == null) {
-                playerBlocks = new FakeBlockMap();
-                blocks.put(uuid, playerBlocks);
+            FakeBlockMap playerBlocks = blocks.computeIfAbsent(uuid, k -> new FakeBlockMap());
+            for (int i = 0; i < locations.size(); i++) {
+                FakeBlock block = playerBlocks.getOrAdd(player, locations.get(i));
+                block.updateBlock(materials.get(i % materials.size()), duration, sendNow);
             }
-            FakeBlock block = playerBlocks.getOrAdd(player, location);
-            block.updateBlock(material, duration, sendNow);
         }
     }
 
     public static void stopShowingTo(List<PlayerTag> players, final LocationTag location) {
+        stopShowingTo(players, Collections.singletonList(location));
+    }
+
+    public static void stopShowingTo(List<PlayerTag> players, List<LocationTag> locations) {
         for (PlayerTag player : players) {
-            FakeBlockMap playerBlocks = blocks.get(player.getPlayerEntity().getUniqueId());
-            if (playerBlocks != null) {
-                FakeBlock block = playerBlocks.byLocation.get(location);
+            FakeBlockMap playerBlocks = blocks.get(player.getUUID());
+            if (playerBlocks == null) {
+                continue;
+            }
+            for (LocationTag location : locations) {
+                FakeBlock block = playerBlocks.get(location);
                 if (block != null) {
                     block.cancelBlock();
                 }
+                if (!blocks.containsKey(player.getUUID())) {
+                    break;
+                }
             }
         }
     }
@@ -132,7 +313,7 @@ public class FakeBlock {
         material = null;
         FakeBlockMap mapping = blocks.get(player.getUUID());
         mapping.remove(this);
-        if (mapping.byChunk.isEmpty()) {
+        if (mapping.isEmpty()) {
             blocks.remove(player.getUUID());
         }
         if (player.isOnline()) {
@@ -148,6 +329,10 @@ public class FakeBlock {
             currentTask.cancel();
         }
         this.material = material;
+        FakeBlockMap mapping = blocks.get(player.getUUID());
+        if (mapping != null) {
+            mapping.markChanged(this);
+        }
         if (player.hasChunkLoaded(location.getChunk())) {
             if (sendNow || !NMSHandler.getVersion().isAtLeast(NMSVersion.v1_18)) {
                 player.getPlayerEntity().sendBlockChange(location, material.getModernData());
@@ -594,6 +594,13 @@ public class FullBlockData {
 
     public void set(Block block, boolean physics) {
         block.setBlockData(data, physics);
+        applyExtraData(block);
+    }
+
+    /**
+     * Applies the tile entity data and flags to a block that already has this block data.
+     */
+    public void applyExtraData(Block block) {
         if (tileEntityData != null) {
             NMSHandler.blockHelper.setNbtData(block, tileEntityData);
         }
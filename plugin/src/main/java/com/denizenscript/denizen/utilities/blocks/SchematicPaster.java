@@ -0,0 +1,245 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
+import com.denizenscript.denizen.utilities.PaperAPITools;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pastes a {@link CuboidBlockSet} one destination chunk section at a time.
+ * Chunks are visited in order (X-major, then Z, then sections bottom to top), so upcoming chunks can be loaded in the background while earlier ones are written.
+ * Each section's blocks are collected and handed to {@link com.denizenscript.denizen.nms.interfaces.BlockHelper#setSectionBlocks} in one call.
+ */
+public class SchematicPaster {
+
+    /**
+     * How many chunks ahead of the writer to request background loading for, in delayed mode.
+     */
+    public static int PRELOAD_CHUNKS_AHEAD = 8;
+
+    public final CuboidBlockSet set;
+
+    public final BlockSet.InputParams input;
+
+    public final World world;
+
+    public final int originX, originY, originZ;
+
+    public final int minChunkX, minChunkZ, chunkCountX, chunkCountZ;
+
+    public final int minSectionY, maxSectionY;
+
+    /**
+     * Palette ids that are never pasted (structure void, or air when 'noair' is used).
+     */
+    public final boolean[] skipPaletteId;
+
+    public int chunkCursor = 0;
+
+    public int sectionCursor;
+
+    public Chunk currentChunk;
+
+    public Long2ObjectOpenHashMap<CompletableFuture<Chunk>> preloads = new Long2ObjectOpenHashMap<>();
+
+    public int preloadCursor = 0;
+
+    public short[] positions = new short[4096];
+
+    public BlockData[] data = new BlockData[4096];
+
+    public IntArrayList extraDataIndices = new IntArrayList();
+
+    public IntArrayList extraDataPositions = new IntArrayList();
+
+    public SchematicPaster(CuboidBlockSet set, BlockSet.InputParams input) {
+        this.set = set;
+        this.input = input;
+        world = input.centerLocation.getWorld();
+        originX = input.centerLocation.getBlockX() - set.center_x;
+        originY = input.centerLocation.getBlockY() - set.center_y;
+        originZ = input.centerLocation.getBlockZ() - set.center_z;
+        minChunkX = originX >> 4;
+        minChunkZ = originZ >> 4;
+        chunkCountX = ((originX + set.x_width - 1) >> 4) - minChunkX + 1;
+        chunkCountZ = ((originZ + set.z_height - 1) >> 4) - minChunkZ + 1;
+        minSectionY = Math.max(originY, world.getMinHeight()) >> 4;
+        maxSectionY = Math.min(originY + set.y_length - 1, world.getMaxHeight() - 1) >> 4;
+        sectionCursor = minSectionY;
+        skipPaletteId = new boolean[set.paletteSize];
+        for (int i = 0; i < set.paletteSize; i++) {
+            Material material = set.palette[i].data.getMaterial();
+            skipPaletteId[i] = material == Material.STRUCTURE_VOID || (input.noAir && material == Material.AIR);
+        }
+    }
+
+    public boolean isDone() {
+        return chunkCursor >= chunkCountX * chunkCountZ || minSectionY > maxSectionY;
+    }
+
+    public int chunkXAt(int cursor) {
+        return minChunkX + cursor / chunkCountZ;
+    }
+
+    public int chunkZAt(int cursor) {
+        return minChunkZ + cursor % chunkCountZ;
+    }
+
+    /**
+     * Requests background loading for the next few chunks, if the server supports it.
+     */
+    public void preloadAhead() {
+        int total = chunkCountX * chunkCountZ;
+        preloadCursor = Math.max(preloadCursor, chunkCursor + 1);
+        while (preloadCursor < total && preloadCursor <= chunkCursor + PRELOAD_CHUNKS_AHEAD) {
+            int x = chunkXAt(preloadCursor), z = chunkZAt(preloadCursor);
+            if (!world.isChunkLoaded(x, z)) {
+                CompletableFuture<Chunk> future = PaperAPITools.instance.getChunkAtAsync(world, x, z);
+                if (future == null) {
+                    preloadCursor = total;
+                    return;
+                }
+                preloads.put(FakeBlock.FakeBlockMap.chunkKey(x, z), future);
+            }
+            preloadCursor++;
+        }
+    }
+
+    public Chunk getChunk(int x, int z) {
+        CompletableFuture<Chunk> future = preloads.remove(FakeBlock.FakeBlockMap.chunkKey(x, z));
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            Chunk chunk = future.getNow(null);
+            if (chunk != null && chunk.isLoaded()) {
+                return chunk;
+            }
+        }
+        return world.getChunkAt(x, z);
+    }
+
+    /**
+     * Pastes the next section. Returns false if there was nothing left to paste.
+     */
+    public boolean pasteNextSection() {
+        if (isDone()) {
+            return false;
+        }
+        int chunkX = chunkXAt(chunkCursor), chunkZ = chunkZAt(chunkCursor);
+        if (currentChunk == null) {
+            currentChunk = getChunk(chunkX, chunkZ);
+        }
+        pasteSection(currentChunk, chunkX, sectionCursor, chunkZ);
+        if (++sectionCursor > maxSectionY) {
+            sectionCursor = minSectionY;
+            chunkCursor++;
+            currentChunk = null;
+        }
+        return true;
+    }
+
+    public void pasteSection(Chunk chunk, int chunkX, int sectionY, int chunkZ) {
+        int lowX = Math.max(chunkX << 4, originX), highX = Math.min((chunkX << 4) + 15, originX + set.x_width - 1);
+        int lowZ = Math.max(chunkZ << 4, originZ), highZ = Math.min((chunkZ << 4) + 15, originZ + set.z_height - 1);
+        int lowY = Math.max(Math.max(sectionY << 4, originY), world.getMinHeight());
+        int highY = Math.min(Math.min((sectionY << 4) + 15, originY + set.y_length - 1), world.getMaxHeight() - 1);
+        int count = 0;
+        extraDataIndices.clear();
+        extraDataPositions.clear();
+        boolean hasExtraData = !set.tileEntities.isEmpty() || !set.flags.isEmpty();
+        for (int x = lowX; x <= highX; x++) {
+            for (int z = lowZ; z <= highZ; z++) {
+                int index = set.getIndex(x - originX, lowY - originY, z - originZ);
+                for (int y = lowY; y <= highY; y++, index += set.z_height) {
+                    int paletteId = set.indices[index];
+                    if (skipPaletteId[paletteId]) {
+                        continue;
+                    }
+                    if (input.mask != null && !input.mask.contains(chunk.getBlock(x & 15, y, z & 15).getType())) {
+                        continue;
+                    }
+                    short position = (short) (((x & 15) << 8) | ((z & 15) << 4) | (y & 15));
+                    positions[count] = position;
+                    data[count++] = set.palette[paletteId].data;
+                    if (hasExtraData && (set.tileEntities.containsKey(index) || set.flags.containsKey(index))) {
+                        extraDataIndices.add(index);
+                        extraDataPositions.add(position);
+                    }
+                }
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        if (input.fakeTo != null) {
+            List<LocationTag> locations = new ArrayList<>(count);
+            List<MaterialTag> materials = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                locations.add(new LocationTag(world, (chunkX << 4) + ((positions[i] >> 8) & 15), (sectionY << 4) + (positions[i] & 15), (chunkZ << 4) + ((positions[i] >> 4) & 15)));
+                materials.add(new MaterialTag(data[i]));
+            }
+            FakeBlock.showFakeBlocksTo(input.fakeTo, locations, materials, input.fakeDuration, false);
+            return;
+        }
+        NMSHandler.blockHelper.setSectionBlocks(chunk, sectionY, positions, data, count);
+        for (int i = 0; i < extraDataIndices.size(); i++) {
+            int position = extraDataPositions.getInt(i);
+            set.getBlock(extraDataIndices.getInt(i)).applyExtraData(chunk.getBlock((position >> 8) & 15, (sectionY << 4) + (position & 15), (position >> 4) & 15));
+        }
+    }
+
+    public void pasteAll() {
+        SchematicCommand.noPhys = true;
+        try {
+            while (pasteNextSection()) {
+                // Keep going
+            }
+        }
+        finally {
+            SchematicCommand.noPhys = false;
+        }
+    }
+
+    /**
+     * Gets the fraction (0 to 1) of sections that have been processed.
+     */
+    public double getProgress() {
+        long sectionCount = Math.max(0, maxSectionY - minSectionY + 1);
+        long total = (long) chunkCountX * chunkCountZ * sectionCount;
+        if (total == 0) {
+            return 1;
+        }
+        return Math.min(1, (chunkCursor * sectionCount + (sectionCursor - minSectionY)) / (double) total);
+    }
+
+    public void pasteDelayed(BlockSetJob job, long maxDelayMs) {
+        job.submitTicked(maxDelayMs, (budgetMs) -> {
+            SchematicCommand.noPhys = true;
+            long start = CoreUtilities.monotonicMillis();
+            try {
+                preloadAhead();
+                while (pasteNextSection()) {
+                    if (CoreUtilities.monotonicMillis() - start > budgetMs) {
+                        job.progress = getProgress();
+                        return false;
+                    }
+                }
+            }
+            finally {
+                SchematicCommand.noPhys = false;
+            }
+            preloads.clear();
+            return true;
+        });
+    }
+}
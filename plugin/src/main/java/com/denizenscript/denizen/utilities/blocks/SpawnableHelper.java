@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.utilities.blocks;
 
 import com.denizenscript.denizen.utilities.Utilities;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
@@ -50,4 +51,22 @@ public class SpawnableHelper {
         }
         return true;
     }
+
+    /**
+     * Equivalent to {@link #isSpawnable(Location)}, but reads from a chunk snapshot (X and Z relative to the chunk), and so is safe to use off the main thread.
+     */
+    public static boolean isSpawnable(ChunkSnapshot snapshot, int x, int y, int z, int minHeight, int maxHeight) {
+        if (y - 1 <= minHeight || y + 1 >= maxHeight) {
+            return false;
+        }
+        if (!snapshot.getBlockType(x, y + 1, z).isAir()) {
+            return false;
+        }
+        Material self = snapshot.getBlockType(x, y, z);
+        if (self.isSolid() || DANGEROUS_MATERIALS.contains(self)) {
+            return false;
+        }
+        Material below = snapshot.getBlockType(x, y - 1, z);
+        return below.isSolid() && !DANGEROUS_MATERIALS.contains(below);
+    }
 }
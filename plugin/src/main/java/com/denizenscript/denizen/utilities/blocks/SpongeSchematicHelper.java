@@ -9,14 +9,12 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.block.data.BlockData;
-import org.bukkit.util.BlockVector;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -54,49 +52,182 @@ public class SpongeSchematicHelper {
         public boolean bool;
     }
 
+    public static void expectType(int type, int expected, String name) throws Exception {
+        if (type != expected) {
+            throw new Exception(name + " tag is not of tag type " + NBTConstants.getClassFromType(expected).getName());
+        }
+    }
+
+    /**
+     * Reads varint-encoded Sponge palette ids (in x, then z, then y order) straight into the set's index array.
+     * The raw ids are later remapped to the set's own palette.
+     */
+    public static void readBlockData(DataInput input, int byteCount, CuboidBlockSet cbs) throws Exception {
+        int[] indices = cbs.indices;
+        int i = 0;
+        int x = 0, y = 0, z = 0;
+        while (i < byteCount) {
+            int value = 0;
+            int varintLength = 0;
+            while (true) {
+                if (i >= byteCount) {
+                    throw new Exception("Schem file blocks tag data corrupted");
+                }
+                byte b = input.readByte();
+                i++;
+                value |= (b & 127) << (varintLength++ * 7);
+                if (varintLength > 5) {
+                    throw new Exception("Schem file blocks tag data corrupted");
+                }
+                if ((b & 128) != 128) {
+                    break;
+                }
+            }
+            if (y >= cbs.y_length) {
+                throw new Exception("Schem file blocks tag has more blocks than the schematic size allows");
+            }
+            indices[cbs.getIndex(x, y, z)] = value;
+            if (++x == cbs.x_width) {
+                x = 0;
+                if (++z == cbs.z_height) {
+                    z = 0;
+                    y++;
+                }
+            }
+        }
+    }
+
     // Referenced from WorldEdit source and Sponge schematic format v2 documentation
     // Some values are custom and specific to Denizen
+    // The file is read as a stream, so the (potentially huge) block data never exists as a tag tree. If the block data comes before the schematic size, only its raw bytes are buffered.
     public static CuboidBlockSet fromSpongeStream(InputStream is) {
         boolean isPrimary = Bukkit.isPrimaryThread();
         CuboidBlockSet cbs = new CuboidBlockSet();
-        try {
-            NBTInputStream nbtStream = new NBTInputStream(new GZIPInputStream(is));
-            NamedTag rootTag = nbtStream.readNamedTag();
-            nbtStream.close();
-            if (!rootTag.getName().equals("Schematic")) {
+        try (NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new GZIPInputStream(is), 65536))) {
+            if (nbtStream.readTagType() != NBTConstants.TYPE_COMPOUND || !nbtStream.readTagName().equals("Schematic")) {
                 throw new Exception("Tag 'Schematic' does not exist or is not first!");
             }
-            CompoundTag schematicTag = (CompoundTag) rootTag.getTag();
-            Map<String, Tag> schematic = schematicTag.getValue();
-            if (schematic.containsKey("DenizenEntities")) {
-                String entities = stringifyTag(schematic.get("DenizenEntities"));
-                cbs.entities = ListTag.valueOf(entities, CoreUtilities.errorButNoDebugContext);
-            }
-            short width = getChildTag(schematic, "Width", ShortTag.class).getValue();
-            short length = getChildTag(schematic, "Length", ShortTag.class).getValue();
-            short height = getChildTag(schematic, "Height", ShortTag.class).getValue();
+            DataInputStream input = nbtStream.getDataInput();
+            int width = -1, length = -1, height = -1;
             int originX = 0;
             int originY = 0;
             int originZ = 0;
-            if (schematic.containsKey("DenizenOffset")) {
-                // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
-                int[] offsetArr = getChildTag(schematic, "DenizenOffset", IntArrayTag.class).getValue();
-                originX = offsetArr[0];
-                originY = offsetArr[1];
-                originZ = offsetArr[2];
+            Map<String, Integer> paletteMap = null;
+            byte[] bufferedBlocks = null;
+            boolean hasBlocks = false;
+            List<CompoundTag> tileEntities = new ArrayList<>();
+            Map<String, Tag> flags = null;
+            while (true) {
+                int type = nbtStream.readTagType();
+                if (type == NBTConstants.TYPE_END) {
+                    break;
+                }
+                String name = nbtStream.readTagName();
+                switch (name) {
+                    case "Width" -> {
+                        expectType(type, NBTConstants.TYPE_SHORT, name);
+                        width = input.readShort() & 0xFFFF;
+                    }
+                    case "Length" -> {
+                        expectType(type, NBTConstants.TYPE_SHORT, name);
+                        length = input.readShort() & 0xFFFF;
+                    }
+                    case "Height" -> {
+                        expectType(type, NBTConstants.TYPE_SHORT, name);
+                        height = input.readShort() & 0xFFFF;
+                    }
+                    case "DenizenOffset" -> {
+                        // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
+                        expectType(type, NBTConstants.TYPE_INT_ARRAY, name);
+                        int[] offsetArr = ((IntArrayTag) nbtStream.readTagPayload(type)).getValue();
+                        originX = offsetArr[0];
+                        originY = offsetArr[1];
+                        originZ = offsetArr[2];
+                    }
+                    case "DenizenEntities" -> {
+                        String entities = stringifyTag(nbtStream.readTagPayload(type));
+                        cbs.entities = ListTag.valueOf(entities, CoreUtilities.errorButNoDebugContext);
+                    }
+                    case "Palette" -> {
+                        expectType(type, NBTConstants.TYPE_COMPOUND, name);
+                        paletteMap = new HashMap<>(256);
+                        while (true) {
+                            int entryType = nbtStream.readTagType();
+                            if (entryType == NBTConstants.TYPE_END) {
+                                break;
+                            }
+                            String key = nbtStream.readTagName();
+                            expectType(entryType, NBTConstants.TYPE_INT, key);
+                            paletteMap.put(key, input.readInt());
+                        }
+                    }
+                    case "BlockData" -> {
+                        expectType(type, NBTConstants.TYPE_BYTE_ARRAY, name);
+                        int byteCount = input.readInt();
+                        hasBlocks = true;
+                        if (width >= 0 && length >= 0 && height >= 0) {
+                            cbs.x_width = width;
+                            cbs.z_height = length;
+                            cbs.y_length = height;
+                            cbs.initStorage();
+                            readBlockData(input, byteCount, cbs);
+                        }
+                        else {
+                            bufferedBlocks = new byte[byteCount];
+                            input.readFully(bufferedBlocks);
+                        }
+                    }
+                    case "BlockEntities" -> {
+                        expectType(type, NBTConstants.TYPE_LIST, name);
+                        int childType = input.readByte();
+                        int count = input.readInt();
+                        for (int i = 0; i < count; i++) {
+                            if (childType == NBTConstants.TYPE_COMPOUND) {
+                                tileEntities.add((CompoundTag) nbtStream.readTagPayload(childType));
+                            }
+                            else {
+                                nbtStream.skipTagPayload(childType);
+                            }
+                        }
+                    }
+                    case "DenizenFlags" -> {
+                        expectType(type, NBTConstants.TYPE_COMPOUND, name);
+                        flags = ((CompoundTag) nbtStream.readTagPayload(type)).getValue();
+                    }
+                    default -> nbtStream.skipTagPayload(type);
+                }
+            }
+            if (width < 0) {
+                throw new Exception("Schem file is missing a 'Width' tag");
+            }
+            if (length < 0) {
+                throw new Exception("Schem file is missing a 'Length' tag");
+            }
+            if (height < 0) {
+                throw new Exception("Schem file is missing a 'Height' tag");
+            }
+            if (paletteMap == null) {
+                throw new Exception("Schem file is missing a 'Palette' tag");
+            }
+            if (!hasBlocks) {
+                throw new Exception("Schem file is missing a 'BlockData' tag");
+            }
+            if (bufferedBlocks != null) {
+                cbs.x_width = width;
+                cbs.z_height = length;
+                cbs.y_length = height;
+                cbs.initStorage();
+                readBlockData(new DataInputStream(new ByteArrayInputStream(bufferedBlocks)), bufferedBlocks.length, cbs);
+                bufferedBlocks = null;
             }
-            cbs.x_width = width;
-            cbs.z_height = length;
-            cbs.y_length = height;
             cbs.center_x = originX;
             cbs.center_y = originY;
             cbs.center_z = originZ;
-            cbs.blocks = new FullBlockData[width * length * height];
-            Map<String, Tag> paletteMap = getChildTag(schematic, "Palette", CompoundTag.class).getValue();
             HashMap<Integer, BlockData> palette = new HashMap<>(256);
             List<Map.Entry<Integer, String>> latePairs = isPrimary ? null : new ArrayList<>();
-            for (String key : paletteMap.keySet()) {
-                int id = getChildTag(paletteMap, key, IntTag.class).getValue();
+            for (Map.Entry<String, Integer> paletteEntry : paletteMap.entrySet()) {
+                String key = paletteEntry.getKey();
+                int id = paletteEntry.getValue();
                 if (isPrimary) {
                     palette.put(id, blockDataCache.computeIfAbsent(key, SpongeSchematicHelper::unstableParseMaterial));
                 }
@@ -125,56 +256,34 @@ public class SpongeSchematicHelper {
                     }
                 }
             }
-            Map<BlockVector, Map<String, Tag>> tileEntitiesMap = new HashMap<>();
-            if (schematic.containsKey("BlockEntities")) {
-                List<Tag> tileEntities = getChildTag(schematic, "BlockEntities", JNBTListTag.class).getValue();
-                for (Tag tag : tileEntities) {
-                    if (!(tag instanceof CompoundTag)) {
-                        continue;
-                    }
-                    CompoundTag t = (CompoundTag) tag;
-                    int[] pos = getChildTag(t.getValue(), "Pos", IntArrayTag.class).getValue();
-                    int x = pos[0];
-                    int y = pos[1];
-                    int z = pos[2];
-                    BlockVector vec = new BlockVector(x, y, z);
-                    tileEntitiesMap.put(vec, t.getValue());
-                }
+            int maxPaletteId = 0;
+            for (int id : palette.keySet()) {
+                maxPaletteId = Math.max(maxPaletteId, id);
             }
-            byte[] blocks = getChildTag(schematic, "BlockData", ByteArrayTag.class).getValue();
-            int i = 0;
-            int index = 0;
-            while (i < blocks.length) {
-                int value = 0;
-                int varintLength = 0;
-                while (true) {
-                    value |= (blocks[i] & 127) << (varintLength++ * 7);
-                    if (varintLength > 5) {
-                        throw new Exception("Schem file blocks tag data corrupted");
-                    }
-                    if ((blocks[i] & 128) != 128) {
-                        i++;
-                        break;
-                    }
-                    i++;
+            int[] localIds = new int[maxPaletteId + 1];
+            for (Map.Entry<Integer, BlockData> entry : palette.entrySet()) {
+                if (entry.getKey() >= 0 && entry.getValue() != null) {
+                    localIds[entry.getKey()] = cbs.getPaletteId(entry.getValue());
                 }
-                FullBlockData block = new FullBlockData(palette.get(value));
-                int y = index / (width * length);
-                int z = (index % (width * length)) / width;
-                int x = (index % (width * length)) % width;
-                int cbsIndex = z + y * cbs.z_height + x * cbs.z_height * cbs.y_length;
-                BlockVector pt = new BlockVector(x, y, z);
-                if (tileEntitiesMap.containsKey(pt)) {
-                    block.tileEntityData = NMSHandler.instance.createCompoundTag(tileEntitiesMap.get(pt));
+            }
+            int[] indices = cbs.indices;
+            for (int i = 0; i < indices.length; i++) {
+                int value = indices[i];
+                indices[i] = value < localIds.length ? localIds[value] : 0;
+            }
+            for (CompoundTag t : tileEntities) {
+                int[] pos = getChildTag(t.getValue(), "Pos", IntArrayTag.class).getValue();
+                int x = pos[0];
+                int y = pos[1];
+                int z = pos[2];
+                if (x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < length) {
+                    cbs.tileEntities.put(cbs.getIndex(x, y, z), NMSHandler.instance.createCompoundTag(t.getValue()));
                 }
-                cbs.blocks[cbsIndex] = block;
-                index++;
             }
-            if (schematic.containsKey("DenizenFlags")) {
-                Map<String, Tag> flags = getChildTag(schematic, "DenizenFlags", CompoundTag.class).getValue();
+            if (flags != null) {
                 for (Map.Entry<String, Tag> flagData : flags.entrySet()) {
                     int flagIndex = Integer.parseInt(flagData.getKey());
-                    cbs.blocks[flagIndex].flags = MapTag.valueOf(stringifyTag(flagData.getValue()), CoreUtilities.noDebugContext);
+                    cbs.flags.put(flagIndex, MapTag.valueOf(stringifyTag(flagData.getValue()), CoreUtilities.noDebugContext));
                 }
             }
         }
@@ -195,70 +304,107 @@ public class SpongeSchematicHelper {
         return expected.cast(tag);
     }
 
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & -128) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    // The block data is written straight to the output: a first pass over the blocks assigns palette ids and measures the encoded length, then the second pass writes the varints.
     public static void saveToSpongeStream(CuboidBlockSet blockSet, OutputStream os) {
         try {
-            HashMap<String, Tag> schematic = new HashMap<>();
-            schematic.put("Width", new ShortTag((short) (blockSet.x_width)));
-            schematic.put("Length", new ShortTag((short) (blockSet.z_height)));
-            schematic.put("Height", new ShortTag((short) (blockSet.y_length)));
-            schematic.put("DenizenOffset", new IntArrayTag(new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z}));
+            writeSpongeStream(blockSet, os, null);
+        }
+        catch (Exception ex) {
+            Debug.echoError(ex);
+        }
+    }
+
+    /**
+     * Writes the schematic, reporting progress to and checking for cancellation of the given job (if any).
+     */
+    public static void writeSpongeStream(CuboidBlockSet blockSet, OutputStream os, BlockSetJob job) throws Exception {
+        try (NBTOutputStream stream = new NBTOutputStream(new BufferedOutputStream(new GZIPOutputStream(os), 65536))) {
+            DataOutputStream output = stream.getDataOutput();
+            stream.writeTagHeader(NBTConstants.TYPE_COMPOUND, "Schematic");
+            stream.writeNamedTag("Width", new ShortTag((short) (blockSet.x_width)));
+            stream.writeNamedTag("Length", new ShortTag((short) (blockSet.z_height)));
+            stream.writeNamedTag("Height", new ShortTag((short) (blockSet.y_length)));
+            stream.writeNamedTag("DenizenOffset", new IntArrayTag(new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z}));
             if (blockSet.entities != null) {
-                schematic.put("DenizenEntities", new ByteArrayTag(blockSet.entities.toString().getBytes(StandardCharsets.UTF_8)));
+                stream.writeNamedTag("DenizenEntities", new ByteArrayTag(blockSet.entities.toString().getBytes(StandardCharsets.UTF_8)));
             }
             Map<String, Tag> palette = new HashMap<>();
-            ByteArrayOutputStream blocksBuffer = new ByteArrayOutputStream((blockSet.x_width) * (blockSet.y_length) * (blockSet.z_height));
-            ArrayList<Tag> tileEntities = new ArrayList<>();
             int paletteMax = 0;
+            // Only palette entries that are actually used get written, each block state string once
+            int[] spongeIds = new int[blockSet.paletteSize];
+            Arrays.fill(spongeIds, -1);
+            long blockDataLength = 0;
+            int[] indices = blockSet.indices;
+            for (int i = 0; i < indices.length; i++) {
+                if (job != null && (i & 0xFFFF) == 0) {
+                    job.checkCancelled();
+                    job.setProgress(i, indices.length * 2L);
+                }
+                int localId = indices[i];
+                int blockId = spongeIds[localId];
+                if (blockId == -1) {
+                    String dataStr = blockSet.palette[localId].data.getAsString();
+                    Tag blockIdTag = palette.get(dataStr);
+                    if (blockIdTag == null) {
+                        blockIdTag = new IntTag(paletteMax++);
+                        palette.put(dataStr, blockIdTag);
+                    }
+                    blockId = ((IntTag) blockIdTag).getValue();
+                    spongeIds[localId] = blockId;
+                }
+                blockDataLength += varIntSize(blockId);
+            }
+            if (blockDataLength > Integer.MAX_VALUE) {
+                throw new Exception("Schematic is too large to save in Sponge format");
+            }
+            stream.writeNamedTag("PaletteMax", new IntTag(paletteMax));
+            stream.writeNamedTag("Palette", NMSHandler.instance.createCompoundTag(palette));
+            stream.writeTagHeader(NBTConstants.TYPE_BYTE_ARRAY, "BlockData");
+            output.writeInt((int) blockDataLength);
             for (int y = 0; y < blockSet.y_length; y++) {
+                if (job != null) {
+                    job.checkCancelled();
+                    job.setProgress(blockSet.y_length + (long) y, blockSet.y_length * 2L);
+                }
                 for (int z = 0; z < blockSet.z_height; z++) {
                     for (int x = 0; x < blockSet.x_width; x++) {
-                        int cbsIndex = z + y * blockSet.z_height + x * blockSet.z_height * blockSet.y_length;
-                        FullBlockData bd = blockSet.blocks[cbsIndex];
-                        String dataStr = bd.data.getAsString();
-                        Tag blockIdTag = palette.get(dataStr);
-                        if (blockIdTag == null) {
-                            blockIdTag = new IntTag(paletteMax++);
-                            palette.put(dataStr, blockIdTag);
-                        }
-                        int blockId = ((IntTag) blockIdTag).getValue();
+                        int blockId = spongeIds[blockSet.indices[blockSet.getIndex(x, y, z)]];
                         while ((blockId & -128) != 0) {
-                            blocksBuffer.write(blockId & 127 | 128);
+                            output.write(blockId & 127 | 128);
                             blockId >>>= 7;
                         }
-                        blocksBuffer.write(blockId);
-                        CompoundTag rawTag = bd.tileEntityData;
-                        if (rawTag != null) {
-                            HashMap<String, Tag> values = new HashMap<>(rawTag.getValue());
-                            values.put("Pos", new IntArrayTag(new int[] { x, y, z }));
-                            CompoundTag tileEntityTag = NMSHandler.instance.createCompoundTag(values);
-                            tileEntities.add(tileEntityTag);
-                        }
+                        output.write(blockId);
                     }
                 }
             }
-            schematic.put("PaletteMax", new IntTag(paletteMax));
-            schematic.put("Palette", NMSHandler.instance.createCompoundTag(palette));
-            schematic.put("BlockData", new ByteArrayTag(blocksBuffer.toByteArray()));
-            schematic.put("BlockEntities", new JNBTListTag(CompoundTag.class, tileEntities));
+            ArrayList<Tag> tileEntities = new ArrayList<>(blockSet.tileEntities.size());
+            int layerSize = blockSet.y_length * blockSet.z_height;
+            for (Int2ObjectMap.Entry<CompoundTag> entry : blockSet.tileEntities.int2ObjectEntrySet()) {
+                int index = entry.getIntKey();
+                HashMap<String, Tag> values = new HashMap<>(entry.getValue().getValue());
+                values.put("Pos", new IntArrayTag(new int[] { index / layerSize, (index % layerSize) / blockSet.z_height, index % blockSet.z_height }));
+                tileEntities.add(NMSHandler.instance.createCompoundTag(values));
+            }
+            stream.writeNamedTag("BlockEntities", new JNBTListTag(CompoundTag.class, tileEntities));
             if (blockSet.hasFlags) {
                 Map<String, Tag> flagMap = new HashMap<>();
-                for (int i = 0; i < blockSet.blocks.length; i++) {
-                    if (blockSet.blocks[i].flags != null) {
-                        flagMap.put(String.valueOf(i), new ByteArrayTag(blockSet.blocks[i].flags.toString().getBytes(StandardCharsets.UTF_8)));
-                    }
+                for (Int2ObjectMap.Entry<MapTag> entry : blockSet.flags.int2ObjectEntrySet()) {
+                    flagMap.put(String.valueOf(entry.getIntKey()), new ByteArrayTag(entry.getValue().toString().getBytes(StandardCharsets.UTF_8)));
                 }
                 if (!flagMap.isEmpty()) {
-                    schematic.put("DenizenFlags", NMSHandler.instance.createCompoundTag(flagMap));
+                    stream.writeNamedTag("DenizenFlags", NMSHandler.instance.createCompoundTag(flagMap));
                 }
             }
-            CompoundTag schematicTag = NMSHandler.instance.createCompoundTag(schematic);
-            NBTOutputStream stream = new NBTOutputStream(new GZIPOutputStream(os));
-            stream.writeNamedTag("Schematic", schematicTag);
-            os.flush();
-            stream.close();
-        }
-        catch (Exception ex) {
-            Debug.echoError(ex);
+            stream.writeEndTag();
         }
     }
 }
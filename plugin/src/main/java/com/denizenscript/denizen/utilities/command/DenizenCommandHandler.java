@@ -8,6 +8,8 @@ import com.denizenscript.denizen.utilities.command.manager.Paginator;
 import com.denizenscript.denizen.utilities.command.manager.exceptions.CommandException;
 import com.denizenscript.denizen.utilities.command.manager.messaging.Messaging;
 import com.denizenscript.denizen.utilities.debugging.DebugConsoleSender;
+import com.denizenscript.denizen.utilities.flags.FlagLoadMetrics;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.objects.notable.NoteManager;
@@ -264,6 +266,36 @@ public class DenizenCommandHandler {
         Messaging.send(sender, "Denizen save data saved to file from memory.");
     }
 
+    /*
+     * DENIZEN FLAGSTATS
+     */
+    @Command(
+            aliases = {"denizen"}, usage = "flagstats (-r)",
+            desc = "Shows player flag cache and loading statistics.", modifiers = {"flagstats"},
+            min = 1, max = 3, permission = "denizen.debug", flags = "r")
+    public void flagstats(CommandContext args, CommandSender sender) throws CommandException {
+        if (args.hasFlag('r')) {
+            FlagLoadMetrics.reset();
+            Messaging.send(sender, "Player flag statistics reset.");
+            return;
+        }
+        Messaging.send(sender, "<2>Player flag statistics:");
+        Messaging.send(sender, "<7>Cache hits: <f>" + FlagLoadMetrics.cacheHits.sum() + "<7>, misses: <f>" + FlagLoadMetrics.cacheMisses.sum()
+                + "<7>, hit rate: <f>" + String.format("%.1f", FlagLoadMetrics.hitRate() * 100) + "%");
+        Messaging.send(sender, "<7>Cached players: <f>" + PlayerFlagHandler.playerFlagTrackerCache.size() + "<7>, size: <f>" + (PlayerFlagHandler.playerFlagTrackerCache.getTotalWeight() / 1024) + "<7>KiB of <f>"
+                + (PlayerFlagHandler.playerFlagTrackerCache.maxWeight / 1024) + "<7>KiB, evictions: <f>" + FlagLoadMetrics.sizeEvictions.sum() + "<7> by size, <f>" + FlagLoadMetrics.timeEvictions.sum() + "<7> by time");
+        Messaging.send(sender, "<7>Loads: <f>" + FlagLoadMetrics.asyncLoads.sum() + "<7> async, <f>" + FlagLoadMetrics.syncLoads.sum() + "<7> sync, <f>"
+                + FlagLoadMetrics.rejectedLoads.sum() + "<7> rejected (loader queue full)");
+        Messaging.send(sender, "<7>Load latency: <f>p50 " + formatNanos(FlagLoadMetrics.loadPercentile(0.5)) + "<7>, <f>p95 " + formatNanos(FlagLoadMetrics.loadPercentile(0.95))
+                + "<7>, <f>p99 " + formatNanos(FlagLoadMetrics.loadPercentile(0.99)));
+        Messaging.send(sender, "<7>Main thread: <f>" + formatNanos(FlagLoadMetrics.mainThreadLoadNanos.sum()) + "<7> loading, <f>" + formatNanos(FlagLoadMetrics.mainThreadWaitNanos.sum())
+                + "<7> waiting over <f>" + FlagLoadMetrics.mainThreadWaits.sum() + "<7> waits");
+    }
+
+    public static String formatNanos(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
     /*
      * DENIZEN RELOAD
      */
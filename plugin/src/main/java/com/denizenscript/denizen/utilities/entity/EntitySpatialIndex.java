@@ -0,0 +1,297 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizencore.DenizenCore;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.entity.EntityTeleportEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * A per-world spatial hash of entities (in 16x16 columns), used to answer area queries without looping over every entity in the world.
+ * Membership is updated from spawn, load, unload, join, quit and teleport events, and is fully resynced from the world's entity list once a second to catch anything the events miss (such as non-player entities moving between worlds).
+ * Entities are re-bucketed by their current position at most once per tick, on the first query in that tick. Teleports re-bucket immediately.
+ * Results are only candidates: callers must still check each entity's live location.
+ * Only usable from the main thread.
+ */
+public class EntitySpatialIndex {
+
+    public static class Listeners implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntitySpawn(EntitySpawnEvent event) {
+            EntitySpatialIndex index = getIfPresent(event.getLocation().getWorld());
+            if (index != null) {
+                index.update(event.getEntity(), event.getLocation());
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onEntitiesLoad(EntitiesLoadEvent event) {
+            EntitySpatialIndex index = getIfPresent(event.getWorld());
+            if (index != null) {
+                for (Entity entity : event.getEntities()) {
+                    index.update(entity, entity.getLocation(index.tempLocation));
+                }
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onEntitiesUnload(EntitiesUnloadEvent event) {
+            EntitySpatialIndex index = getIfPresent(event.getWorld());
+            if (index != null) {
+                for (Entity entity : event.getEntities()) {
+                    index.remove(entity);
+                }
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntityTeleport(EntityTeleportEvent event) {
+            if (event.getTo() != null) {
+                teleported(event.getEntity(), event.getFrom(), event.getTo());
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onPlayerTeleport(PlayerTeleportEvent event) {
+            if (event.getTo() != null) {
+                teleported(event.getPlayer(), event.getFrom(), event.getTo());
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerJoin(PlayerJoinEvent event) {
+            addPlayer(event.getPlayer(), event.getPlayer().getLocation());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+            EntitySpatialIndex index = getIfPresent(event.getFrom());
+            if (index != null) {
+                index.remove(event.getPlayer());
+            }
+            addPlayer(event.getPlayer(), event.getPlayer().getLocation());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerRespawn(PlayerRespawnEvent event) {
+            addPlayer(event.getPlayer(), event.getRespawnLocation());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerQuit(PlayerQuitEvent event) {
+            EntitySpatialIndex index = getIfPresent(event.getPlayer().getWorld());
+            if (index != null) {
+                index.remove(event.getPlayer());
+            }
+        }
+
+        @EventHandler
+        public void onWorldUnload(WorldUnloadEvent event) {
+            indices.remove(event.getWorld().getUID());
+        }
+
+        public void addPlayer(Player player, Location location) {
+            EntitySpatialIndex index = getIfPresent(location.getWorld());
+            if (index != null) {
+                index.update(player, location);
+            }
+        }
+
+        public void teleported(Entity entity, Location from, Location to) {
+            if (from.getWorld() != to.getWorld()) {
+                EntitySpatialIndex fromIndex = getIfPresent(from.getWorld());
+                if (fromIndex != null) {
+                    fromIndex.remove(entity);
+                }
+            }
+            EntitySpatialIndex toIndex = getIfPresent(to.getWorld());
+            if (toIndex != null) {
+                toIndex.update(entity, to);
+            }
+        }
+    }
+
+    public static class Entry {
+
+        public final Entity entity;
+
+        public long cell;
+
+        public Entry(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * How often (in milliseconds) an index's membership is fully resynced from the world's entity list.
+     */
+    public static long RESYNC_MILLIS = 1000;
+
+    /**
+     * Extra distance searched around each query box, to cover entities that moved since the last re-bucket.
+     */
+    public static double MOVEMENT_SLACK = 4;
+
+    public static HashMap<UUID, EntitySpatialIndex> indices = new HashMap<>();
+
+    public static EntitySpatialIndex getIfPresent(World world) {
+        return world == null ? null : indices.get(world.getUID());
+    }
+
+    /**
+     * Returns true if the index for the world is already up to date for this tick, meaning queries against it are cheap.
+     */
+    public static boolean isFresh(World world) {
+        EntitySpatialIndex index = getIfPresent(world);
+        return index != null && index.bucketedAt == DenizenCore.serverTimeMillis;
+    }
+
+    /**
+     * Gets the (up to date) index for the world, creating it if needed.
+     */
+    public static EntitySpatialIndex getFor(World world) {
+        EntitySpatialIndex index = indices.computeIfAbsent(world.getUID(), (id) -> new EntitySpatialIndex(world));
+        index.refresh();
+        return index;
+    }
+
+    public static long cellKey(int cellX, int cellZ) {
+        return (cellX & 0xFFFFFFFFL) | ((long) cellZ << 32);
+    }
+
+    public static long cellKeyOf(Location location) {
+        return cellKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    public final World world;
+
+    public final HashMap<UUID, Entry> entries = new HashMap<>();
+
+    public final Long2ObjectOpenHashMap<ArrayList<Entry>> cells = new Long2ObjectOpenHashMap<>();
+
+    public long bucketedAt = Long.MIN_VALUE, resyncedAt = Long.MIN_VALUE;
+
+    public final Location tempLocation;
+
+    public EntitySpatialIndex(World world) {
+        this.world = world;
+        tempLocation = new Location(world, 0, 0, 0);
+    }
+
+    public void update(Entity entity, Location location) {
+        Entry entry = entries.get(entity.getUniqueId());
+        long cell = cellKeyOf(location);
+        if (entry != null) {
+            if (entry.entity == entity && entry.cell == cell) {
+                return;
+            }
+            removeFromCell(entry);
+        }
+        if (entry == null || entry.entity != entity) {
+            entry = new Entry(entity);
+            entries.put(entity.getUniqueId(), entry);
+        }
+        entry.cell = cell;
+        cells.computeIfAbsent(cell, (k) -> new ArrayList<>()).add(entry);
+    }
+
+    public void remove(Entity entity) {
+        Entry entry = entries.remove(entity.getUniqueId());
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    public void removeFromCell(Entry entry) {
+        ArrayList<Entry> cell = cells.get(entry.cell);
+        if (cell != null) {
+            cell.remove(entry);
+        }
+    }
+
+    /**
+     * Resyncs membership if it's due, and re-buckets every entity by its current position if that hasn't been done yet this tick.
+     */
+    public void refresh() {
+        long now = DenizenCore.serverTimeMillis;
+        if (now - resyncedAt >= RESYNC_MILLIS) {
+            resyncedAt = now;
+            entries.clear();
+            for (Entity entity : world.getEntities()) {
+                entries.put(entity.getUniqueId(), new Entry(entity));
+            }
+        }
+        else if (bucketedAt == now) {
+            return;
+        }
+        bucketedAt = now;
+        cells.clear();
+        entries.values().removeIf((entry) -> {
+            Entity entity = entry.entity;
+            if (!(entity instanceof Player) && !entity.isValid()) {
+                return true;
+            }
+            Location location = entity.getLocation(tempLocation);
+            if (location.getWorld() != world) {
+                return true;
+            }
+            entry.cell = cellKeyOf(location);
+            cells.computeIfAbsent(entry.cell, (k) -> new ArrayList<>()).add(entry);
+            return false;
+        });
+    }
+
+    /**
+     * Gets all entities that might be within the box (plus some slack for recent movement).
+     */
+    public ArrayList<Entity> getPossibleEntities(BoundingBox box) {
+        int minCellX = (int) Math.floor(box.getMinX() - MOVEMENT_SLACK) >> 4, maxCellX = (int) Math.floor(box.getMaxX() + MOVEMENT_SLACK) >> 4;
+        int minCellZ = (int) Math.floor(box.getMinZ() - MOVEMENT_SLACK) >> 4, maxCellZ = (int) Math.floor(box.getMaxZ() + MOVEMENT_SLACK) >> 4;
+        ArrayList<Entity> result = new ArrayList<>();
+        long cellCount = (long) (maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1);
+        if (cellCount > cells.size()) {
+            // Large query: cheaper to check each occupied cell than each cell in range
+            for (Long2ObjectMap.Entry<ArrayList<Entry>> cell : cells.long2ObjectEntrySet()) {
+                int cellX = (int) cell.getLongKey(), cellZ = (int) (cell.getLongKey() >> 32);
+                if (cellX >= minCellX && cellX <= maxCellX && cellZ >= minCellZ && cellZ <= maxCellZ) {
+                    for (Entry entry : cell.getValue()) {
+                        result.add(entry.entity);
+                    }
+                }
+            }
+            return result;
+        }
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int z = minCellZ; z <= maxCellZ; z++) {
+                ArrayList<Entry> cell = cells.get(cellKey(x, z));
+                if (cell != null) {
+                    for (Entry entry : cell) {
+                        result.add(entry.entity);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
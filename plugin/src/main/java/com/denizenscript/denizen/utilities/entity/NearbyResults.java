@@ -0,0 +1,105 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.tags.Attribute;
+
+import java.util.Arrays;
+
+/**
+ * Collects objects along with their pre-computed squared distance from a point, for 'find_...' tags that return results sorted by closeness.
+ * Only sorts as much as the tag actually needs: when the next attribute only reads the first few entries (like '.first' or '.get[3]'), the rest of the list is left unsorted.
+ */
+public class NearbyResults {
+
+    public ObjectTag[] values = new ObjectTag[16];
+
+    public double[] distances = new double[16];
+
+    public int size = 0;
+
+    public void add(ObjectTag value, double distanceSquared) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+        values[size] = value;
+        distances[size++] = distanceSquared;
+    }
+
+    /**
+     * Gets how many leading entries of a find tag's result need to be sorted, based on the attribute that follows it (at the given index).
+     * Only a plain '.first' or '.get[#]' (with a literal number) limits sorting, anything else gets a full sort.
+     */
+    public static int getSortLimit(Attribute attribute, int index) {
+        if (attribute.startsWith("first", index) && !attribute.hasContext(index)) {
+            return 1;
+        }
+        if (attribute.startsWith("get", index) && !attribute.startsWith("to", index + 1)) {
+            String raw = attribute.getAttribute(index);
+            int end = raw.indexOf(']');
+            if (raw.startsWith("get[") && end > 4 && end <= 13 && (raw.length() == end + 1 || raw.charAt(end + 1) == '.')) {
+                for (int i = 4; i < end; i++) {
+                    if (raw.charAt(i) < '0' || raw.charAt(i) > '9') {
+                        return Integer.MAX_VALUE;
+                    }
+                }
+                long requested = Long.parseLong(raw.substring(4, end));
+                return requested < 1 ? Integer.MAX_VALUE : (int) Math.min(requested, Integer.MAX_VALUE);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sorts so that the first 'limit' entries are the closest, in order of closeness. Entries past that are left in no particular order.
+     */
+    public void sortNearest(int limit) {
+        sortRange(0, size, Math.min(limit, size));
+    }
+
+    public ListTag toListTag() {
+        ListTag list = new ListTag();
+        for (int i = 0; i < size; i++) {
+            list.addObject(values[i]);
+        }
+        return list;
+    }
+
+    private void sortRange(int from, int to, int limit) {
+        while (to - from > 1 && from < limit) {
+            // Three-way partition, so that many equal distances (eg a pile of dropped items) don't degrade the sort
+            double pivot = distances[(from + to) >>> 1];
+            int lessEnd = from, greaterStart = to, i = from;
+            while (i < greaterStart) {
+                if (distances[i] < pivot) {
+                    swap(i++, lessEnd++);
+                }
+                else if (distances[i] > pivot) {
+                    swap(i, --greaterStart);
+                }
+                else {
+                    i++;
+                }
+            }
+            // Recurse into the smaller side, loop on the larger side
+            if (lessEnd - from < to - greaterStart) {
+                sortRange(from, lessEnd, limit);
+                from = greaterStart;
+            }
+            else {
+                sortRange(greaterStart, to, limit);
+                to = lessEnd;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        ObjectTag value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        double distance = distances[a];
+        distances[a] = distances[b];
+        distances[b] = distance;
+    }
+}
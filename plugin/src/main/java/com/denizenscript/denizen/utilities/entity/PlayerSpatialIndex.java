@@ -0,0 +1,92 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizencore.DenizenCore;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A per-world, per-chunk index of online players, for systems that repeatedly need "which players are near this point" for many points (such as NPC proximity triggers).
+ * Rebuilt from the online player list at most once per tick, on the first query in that tick, which is far cheaper than the full entity index as it only ever holds players.
+ * Results are only candidates: callers must still check each player's live location.
+ * Only usable from the main thread.
+ */
+public class PlayerSpatialIndex {
+
+    public static final class WorldCells {
+
+        public final Long2ObjectOpenHashMap<ArrayList<Player>> cells = new Long2ObjectOpenHashMap<>();
+    }
+
+    private static final HashMap<UUID, WorldCells> worlds = new HashMap<>();
+
+    private static long builtAt = Long.MIN_VALUE;
+
+    private static final Location tempLocation = new Location(null, 0, 0, 0);
+
+    public static void refresh() {
+        long now = DenizenCore.serverTimeMillis;
+        if (builtAt == now) {
+            return;
+        }
+        builtAt = now;
+        worlds.clear();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation(tempLocation);
+            if (location.getWorld() == null) {
+                continue;
+            }
+            WorldCells world = worlds.computeIfAbsent(location.getWorld().getUID(), (k) -> new WorldCells());
+            world.cells.computeIfAbsent(EntitySpatialIndex.cellKeyOf(location), (k) -> new ArrayList<>()).add(player);
+        }
+        tempLocation.setWorld(null);
+    }
+
+    /**
+     * Returns true if any player is currently in the world.
+     */
+    public static boolean hasPlayers(World world) {
+        refresh();
+        return worlds.containsKey(world.getUID());
+    }
+
+    /**
+     * Adds all players that might be within the given horizontal distance of the point to the output list.
+     */
+    public static void getPossiblePlayers(World world, double x, double z, double radius, List<Player> output) {
+        refresh();
+        WorldCells cells = worlds.get(world.getUID());
+        if (cells == null) {
+            return;
+        }
+        int minCellX = (int) Math.floor(x - radius) >> 4, maxCellX = (int) Math.floor(x + radius) >> 4;
+        int minCellZ = (int) Math.floor(z - radius) >> 4, maxCellZ = (int) Math.floor(z + radius) >> 4;
+        long cellCount = (long) (maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1);
+        if (cellCount > cells.cells.size()) {
+            // Large radius: cheaper to check each occupied cell than each cell in range
+            for (Long2ObjectMap.Entry<ArrayList<Player>> cell : cells.cells.long2ObjectEntrySet()) {
+                int cellX = (int) cell.getLongKey(), cellZ = (int) (cell.getLongKey() >> 32);
+                if (cellX >= minCellX && cellX <= maxCellX && cellZ >= minCellZ && cellZ <= maxCellZ) {
+                    output.addAll(cell.getValue());
+                }
+            }
+            return;
+        }
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                ArrayList<Player> cell = cells.cells.get(EntitySpatialIndex.cellKey(cellX, cellZ));
+                if (cell != null) {
+                    output.addAll(cell);
+                }
+            }
+        }
+    }
+}
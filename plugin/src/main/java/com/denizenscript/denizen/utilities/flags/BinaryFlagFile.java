@@ -0,0 +1,187 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary flag file format, where each root flag is stored as its own length-prefixed record.
+ * Layout: int magic, int version, int record count, then per record: int key length, key bytes (UTF-8), byte options, int value length, value bytes (UTF-8).
+ * The same record layout is used by {@link FlagChangeLog} for incremental changes.
+ * Values are held as raw strings inside SaveOptimizedFlag, so the MapTag for a flag is only parsed when that flag is first accessed.
+ */
+public class BinaryFlagFile {
+
+    public static final int MAGIC = 0x445A464C; // "DZFL"
+
+    public static final int VERSION = 1;
+
+    public static final byte OPTION_CAN_EXPIRE = 1;
+
+    public static final byte OPTION_REMOVED = 2;
+
+    public static final String EXTENSION = ".dzf";
+
+    /**
+     * A single root flag, snapshotted for saving.
+     */
+    public static class FlagRecord {
+
+        public byte[] key;
+
+        public byte[] value;
+
+        public boolean canExpire;
+
+        public boolean removed;
+    }
+
+    /**
+     * Snapshots the current tracker content. Must be called on the thread that owns the tracker.
+     */
+    public static List<FlagRecord> snapshot(SavableMapFlagTracker tracker) {
+        List<FlagRecord> records = new ArrayList<>(tracker.map.size());
+        for (Map.Entry<StringHolder, SavableMapFlagTracker.SaveOptimizedFlag> flag : tracker.map.entrySet()) {
+            records.add(createRecord(flag.getKey(), flag.getValue()));
+        }
+        return records;
+    }
+
+    /**
+     * Creates a record for a single root flag. A null flag produces a removal record.
+     */
+    public static FlagRecord createRecord(StringHolder key, SavableMapFlagTracker.SaveOptimizedFlag flag) {
+        FlagRecord record = new FlagRecord();
+        record.key = key.str.getBytes(StandardCharsets.UTF_8);
+        if (flag == null) {
+            record.value = new byte[0];
+            record.removed = true;
+        }
+        else {
+            record.value = flag.getString().getBytes(StandardCharsets.UTF_8);
+            record.canExpire = flag.canExpire;
+        }
+        return record;
+    }
+
+    public static void writeRecord(DataOutputStream output, FlagRecord record) throws IOException {
+        output.writeInt(record.key.length);
+        output.write(record.key);
+        output.writeByte((record.canExpire ? OPTION_CAN_EXPIRE : 0) | (record.removed ? OPTION_REMOVED : 0));
+        output.writeInt(record.value.length);
+        output.write(record.value);
+    }
+
+    /**
+     * Reads a single record and applies it to the tracker, either replacing or removing the root flag.
+     */
+    public static void readRecordInto(ByteBuffer buffer, SavableMapFlagTracker tracker) throws IOException {
+        String key = readString(buffer);
+        byte options = buffer.get();
+        String value = readString(buffer);
+        if ((options & OPTION_REMOVED) != 0) {
+            tracker.map.remove(new StringHolder(key));
+            return;
+        }
+        SavableMapFlagTracker.SaveOptimizedFlag flag = new SavableMapFlagTracker.SaveOptimizedFlag();
+        flag.string = value;
+        flag.canExpire = (options & OPTION_CAN_EXPIRE) != 0;
+        tracker.map.put(new StringHolder(key), flag);
+    }
+
+    public static void applyRecord(FlagRecord record, SavableMapFlagTracker tracker) {
+        StringHolder key = new StringHolder(new String(record.key, StandardCharsets.UTF_8));
+        if (record.removed) {
+            tracker.map.remove(key);
+            return;
+        }
+        SavableMapFlagTracker.SaveOptimizedFlag flag = new SavableMapFlagTracker.SaveOptimizedFlag();
+        flag.string = new String(record.value, StandardCharsets.UTF_8);
+        flag.canExpire = record.canExpire;
+        tracker.map.put(key, flag);
+    }
+
+    /**
+     * Writes the records to a temporary file, then atomically moves it over the target.
+     */
+    public static void write(File file, List<FlagRecord> records) throws IOException {
+        File tempFile = tempFileFor(file);
+        writeUncommitted(tempFile, records);
+        moveReplacing(tempFile, file);
+    }
+
+    public static File tempFileFor(File file) {
+        return new File(file.getPath() + "~tmp");
+    }
+
+    /**
+     * Writes the records to the given file as-is, for callers that commit the file themselves (see {@link FlagChangeLog#writeCheckpoint}).
+     */
+    public static void writeUncommitted(File file, List<FlagRecord> records) throws IOException {
+        try (FileOutputStream fileOutput = new FileOutputStream(file); DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(records.size());
+            for (FlagRecord record : records) {
+                writeRecord(output, record);
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+    }
+
+    /**
+     * Moves a file over the target, atomically if the file system supports it.
+     */
+    public static void moveReplacing(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a binary flag file into memory in one read. Only the key and raw value text are decoded per record.
+     */
+    public static SavableMapFlagTracker read(File file) throws IOException {
+        SavableMapFlagTracker tracker = new SavableMapFlagTracker();
+        readInto(file, tracker);
+        return tracker;
+    }
+
+    public static void readInto(File file, SavableMapFlagTracker tracker) throws IOException {
+        // Read onto the heap rather than memory-mapping, as a mapping keeps the file locked (on Windows) until garbage collected, which breaks the next save's replace
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException("Flag file '" + file.getName() + "' is not a valid binary flag file.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Flag file '" + file.getName() + "' has unsupported version " + version + ".");
+        }
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            readRecordInto(buffer, tracker);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt flag file record (length " + length + ").");
+        }
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -8,6 +8,7 @@ import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.AsciiMatcher;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Chunk;
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataHolder;
 import org.bukkit.persistence.PersistentDataType;
@@ -75,6 +76,9 @@ public class DataPersistenceFlagTracker extends MapTagBasedFlagTracker {
             }
             if (isExpired(((MapTag) map).getObject(expirationString))) {
                 holder.getPersistentDataContainer().remove(key);
+                if (holder instanceof Chunk chunk) {
+                    LocationFlagIndex.removeKey(chunk, key.getKey());
+                }
                 containsAnyToCheck = true;
                 continue;
             }
@@ -0,0 +1,56 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * A savable flag tracker that remembers which root flags changed since the last save, for use with {@link FlagChangeLog}.
+ */
+public class DeltaFlagTracker extends SavableMapFlagTracker {
+
+    public HashSet<StringHolder> changedKeys = new HashSet<>();
+
+    /**
+     * If true, the next save must write the full tracker (eg after a format migration).
+     */
+    public boolean fullSaveNeeded = false;
+
+    @Override
+    public void setRootMap(String key, MapTag map) {
+        super.setRootMap(key, map);
+        changedKeys.add(new StringHolder(key));
+    }
+
+    @Override
+    public void doTotalClean() {
+        ArrayList<StringHolder> expirableKeys = new ArrayList<>();
+        ArrayList<SaveOptimizedFlag> expirableFlags = new ArrayList<>();
+        for (Map.Entry<StringHolder, SaveOptimizedFlag> flag : map.entrySet()) {
+            if (flag.getValue().canExpire) {
+                expirableKeys.add(flag.getKey());
+                expirableFlags.add(flag.getValue());
+            }
+        }
+        boolean wasModified = modified;
+        modified = false;
+        super.doTotalClean();
+        if (modified) {
+            // Cleaning may change flags in place, so conservatively resave every flag that could have been touched
+            changedKeys.addAll(expirableKeys);
+        }
+        else {
+            for (int i = 0; i < expirableKeys.size(); i++) {
+                if (map.get(expirableKeys.get(i)) != expirableFlags.get(i)) {
+                    changedKeys.add(expirableKeys.get(i));
+                    modified = true;
+                }
+            }
+        }
+        modified |= wasModified;
+    }
+}
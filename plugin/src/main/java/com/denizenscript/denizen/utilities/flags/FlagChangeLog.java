@@ -0,0 +1,364 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+import org.bukkit.Bukkit;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Handles incremental saving of flag trackers.
+ * A flag file set consists of a full checkpoint (binary '.dzf' or text '.dat') plus an append-only '.dzlog' change log.
+ * Saves append only the root flags changed since the last save, and the log is folded back into the checkpoint once it grows too large.
+ * Loading reads the checkpoint then replays the log, so changes written before a crash are recovered.
+ * When a new checkpoint is written, the log is first rotated to '.dzlog.old' and the checkpoint is committed by moving its temporary file into place,
+ * so on load a leftover temporary checkpoint file means the rotated log still belongs to the old checkpoint, and otherwise the rotated log is already folded in.
+ */
+public class FlagChangeLog {
+
+    public static final int BATCH_MAGIC = 0x445A4C47; // "DZLG"
+
+    public static final String LOG_EXTENSION = ".dzlog";
+
+    public static final String OLD_LOG_EXTENSION = ".dzlog.old";
+
+    public static boolean enabled = true;
+
+    /**
+     * The log is compacted once it is larger than both this size and the checkpoint file.
+     */
+    public static long minimumCompactBytes = 1024 * 1024;
+
+    /**
+     * Trackers with at most this many root flags always save changes to the log, rather than falling back to a full checkpoint when most of their flags changed.
+     * Without this, any change to a small tracker (like a player with a few flags) would rewrite the whole file, as one change is already "most" of the tracker.
+     */
+    public static int minimumFullSaveFlags = 64;
+
+    /**
+     * A snapshot of tracker changes taken on the owning thread, that can be written from any thread.
+     */
+    public static class Snapshot {
+
+        public boolean full;
+
+        public List<BinaryFlagFile.FlagRecord> records;
+
+        public long byteSize() {
+            long size = 0;
+            for (BinaryFlagFile.FlagRecord record : records) {
+                size += record.key.length + record.value.length;
+            }
+            return size;
+        }
+    }
+
+    public static File binaryFileFor(String basePath) {
+        return new File(basePath + BinaryFlagFile.EXTENSION);
+    }
+
+    public static File textFileFor(String basePath) {
+        return new File(basePath + ".dat");
+    }
+
+    public static File logFileFor(String basePath) {
+        return new File(basePath + LOG_EXTENSION);
+    }
+
+    public static File oldLogFileFor(String basePath) {
+        return new File(basePath + OLD_LOG_EXTENSION);
+    }
+
+    /**
+     * Resolves the files left behind by a checkpoint write that was interrupted (eg by a crash).
+     */
+    public static void recoverInterruptedCheckpoint(String basePath) throws IOException {
+        File binaryPending = BinaryFlagFile.tempFileFor(binaryFileFor(basePath));
+        File textPending = BinaryFlagFile.tempFileFor(textFileFor(basePath));
+        boolean committed = !binaryPending.exists() && !textPending.exists();
+        File oldLogFile = oldLogFileFor(basePath);
+        if (oldLogFile.exists()) {
+            if (committed) {
+                // The new checkpoint already contains everything in the rotated log
+                deleteOrThrow(oldLogFile);
+            }
+            else {
+                // The new checkpoint was never committed, so the rotated log still applies to the current checkpoint
+                File logFile = logFileFor(basePath);
+                if (logFile.exists()) {
+                    byte[] newer = Files.readAllBytes(logFile.toPath());
+                    Files.write(oldLogFile.toPath(), newer, StandardOpenOption.APPEND);
+                }
+                BinaryFlagFile.moveReplacing(oldLogFile, logFile);
+            }
+        }
+        if (binaryPending.exists()) {
+            deleteOrThrow(binaryPending);
+        }
+        if (textPending.exists()) {
+            deleteOrThrow(textPending);
+        }
+    }
+
+    public static void deleteOrThrow(File file) throws IOException {
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Failed to delete '" + file.getPath() + "'.");
+        }
+    }
+
+    /**
+     * Loads the checkpoint for the given base path (binary if present, otherwise text) and replays any change log on top.
+     * If both formats are present (eg a save that switched format was interrupted before removing the old file), the most recently written one is used.
+     */
+    public static DeltaFlagTracker load(String basePath, boolean binary) {
+        DeltaFlagTracker tracker = new DeltaFlagTracker();
+        try {
+            recoverInterruptedCheckpoint(basePath);
+        }
+        catch (Throwable ex) {
+            Debug.echoError("Failed to recover interrupted flag save for '" + basePath + "':");
+            Debug.echoError(ex);
+        }
+        File binaryFile = binaryFileFor(basePath);
+        File textFile = textFileFor(basePath);
+        boolean hasBoth = binaryFile.exists() && textFile.exists();
+        boolean fromBinary = false;
+        if (binaryFile.exists() && (!hasBoth || binaryFile.lastModified() >= textFile.lastModified())) {
+            try {
+                BinaryFlagFile.readInto(binaryFile, tracker);
+                fromBinary = true;
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to read binary flag file '" + binaryFile.getName() + "', will try the text flag file instead:");
+                Debug.echoError(ex);
+                tracker.map.clear();
+            }
+        }
+        if (!fromBinary) {
+            tracker.map.putAll(SavableMapFlagTracker.loadFlagFile(basePath, false).map);
+        }
+        if (hasBoth || (fromBinary != binary && (fromBinary || textFile.exists()))) {
+            // Mark as needing a full save so the checkpoint is migrated to the configured format, and any outdated file in the other format is removed
+            tracker.fullSaveNeeded = true;
+            tracker.modified = true;
+        }
+        File logFile = logFileFor(basePath);
+        if (logFile.exists()) {
+            try {
+                long validLength = replay(logFile, tracker);
+                if (validLength < logFile.length()) {
+                    // Drop a torn final batch so that later appends are not hidden behind it
+                    try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                        file.setLength(validLength);
+                    }
+                }
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to replay flag change log '" + logFile.getName() + "':");
+                Debug.echoError(ex);
+            }
+        }
+        return tracker;
+    }
+
+    /**
+     * Applies every complete batch in the log to the tracker. A torn final batch (eg from a crash mid-write) is ignored.
+     * Returns the length in bytes of the valid part of the log.
+     */
+    public static long replay(File logFile, SavableMapFlagTracker tracker) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(logFile.toPath()));
+        long validLength = 0;
+        while (buffer.remaining() >= 16) {
+            if (buffer.getInt() != BATCH_MAGIC) {
+                Debug.echoError("Flag change log '" + logFile.getName() + "' has a corrupt batch, ignoring the rest of the log.");
+                break;
+            }
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), buffer.position(), length);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer batch = buffer.slice();
+            batch.limit(length);
+            buffer.position(buffer.position() + length);
+            int count = batch.getInt();
+            for (int i = 0; i < count; i++) {
+                BinaryFlagFile.readRecordInto(batch, tracker);
+            }
+            validLength = buffer.position();
+        }
+        return validLength;
+    }
+
+    /**
+     * Snapshots the changes in a tracker. Must be called on the thread that owns the tracker.
+     * Returns a full snapshot if the tracker does not support delta tracking, incremental saving is disabled, or most of a non-trivially sized tracker changed anyway.
+     */
+    public static Snapshot snapshot(SavableMapFlagTracker tracker) {
+        Snapshot snapshot = new Snapshot();
+        if (!(tracker instanceof DeltaFlagTracker deltaTracker)) {
+            snapshot.full = true;
+            snapshot.records = BinaryFlagFile.snapshot(tracker);
+            return snapshot;
+        }
+        snapshot.full = !enabled || deltaTracker.fullSaveNeeded || (deltaTracker.map.size() > minimumFullSaveFlags && deltaTracker.changedKeys.size() * 2 > deltaTracker.map.size());
+        if (snapshot.full) {
+            snapshot.records = BinaryFlagFile.snapshot(tracker);
+        }
+        else {
+            snapshot.records = new ArrayList<>(deltaTracker.changedKeys.size());
+            for (StringHolder key : deltaTracker.changedKeys) {
+                snapshot.records.add(BinaryFlagFile.createRecord(key, deltaTracker.map.get(key)));
+            }
+        }
+        deltaTracker.changedKeys.clear();
+        deltaTracker.fullSaveNeeded = false;
+        return snapshot;
+    }
+
+    /**
+     * Marks a tracker as needing a full save, because changes already taken from it by {@link #snapshot} failed to reach the disk.
+     * Safe to call from any thread: the tracker itself is only changed on the main thread.
+     */
+    public static void markSaveFailed(SavableMapFlagTracker tracker) {
+        Runnable mark = () -> {
+            if (tracker instanceof DeltaFlagTracker deltaTracker) {
+                deltaTracker.fullSaveNeeded = true;
+            }
+            tracker.modified = true;
+        };
+        if (Bukkit.isPrimaryThread() || !Denizen.getInstance().isEnabled()) {
+            mark.run();
+        }
+        else {
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), mark);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given tracker to disk. Can be called from any thread, but calls for the same base path must not overlap.
+     * If the write fails, the tracker is marked to do a full save next time (see {@link #markSaveFailed}), so the snapshotted changes are not lost.
+     */
+    public static void write(String basePath, boolean binary, Snapshot snapshot, SavableMapFlagTracker tracker) {
+        try {
+            if (snapshot.full) {
+                writeCheckpoint(basePath, binary, snapshot.records);
+                return;
+            }
+            File logFile = logFileFor(basePath);
+            appendBatch(logFile, snapshot.records);
+            File checkpoint = binaryFileFor(basePath).exists() ? binaryFileFor(basePath) : textFileFor(basePath);
+            if (logFile.length() > Math.max(minimumCompactBytes, checkpoint.length())) {
+                compact(basePath, binary);
+            }
+        }
+        catch (Throwable ex) {
+            Debug.echoError("Failed to save flags to '" + basePath + "', will retry with a full save:");
+            Debug.echoError(ex);
+            markSaveFailed(tracker);
+        }
+    }
+
+    public static void appendBatch(File logFile, List<BinaryFlagFile.FlagRecord> records) throws IOException {
+        byte[] batch = toBatchBytes(records);
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        try (FileOutputStream fileOutput = new FileOutputStream(logFile, true); DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+            output.writeInt(BATCH_MAGIC);
+            output.writeInt(batch.length);
+            output.writeLong(crc.getValue());
+            output.write(batch);
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+    }
+
+    /**
+     * Folds the change log into a new checkpoint. Works only on raw flag text, so no flag values are parsed.
+     */
+    public static void compact(String basePath, boolean binary) throws IOException {
+        SavableMapFlagTracker merged = new SavableMapFlagTracker();
+        File binaryFile = binaryFileFor(basePath);
+        if (binaryFile.exists()) {
+            BinaryFlagFile.readInto(binaryFile, merged);
+        }
+        else {
+            merged.map.putAll(SavableMapFlagTracker.loadFlagFile(basePath, false).map);
+        }
+        replay(logFileFor(basePath), merged);
+        writeCheckpoint(basePath, binary, BinaryFlagFile.snapshot(merged));
+    }
+
+    /**
+     * Writes a full checkpoint in the requested format, then removes the change log and any checkpoint in the other format.
+     * The change log is rotated out before the checkpoint is committed, so the old log can never be replayed on top of the newer checkpoint.
+     */
+    public static void writeCheckpoint(String basePath, boolean binary, List<BinaryFlagFile.FlagRecord> records) throws IOException {
+        File checkpoint = binary ? binaryFileFor(basePath) : textFileFor(basePath);
+        File pending = BinaryFlagFile.tempFileFor(checkpoint);
+        File logFile = logFileFor(basePath);
+        File oldLogFile = oldLogFileFor(basePath);
+        if (oldLogFile.exists()) {
+            // Left over from a committed checkpoint whose cleanup failed
+            deleteOrThrow(oldLogFile);
+        }
+        if (binary) {
+            BinaryFlagFile.writeUncommitted(pending, records);
+        }
+        else {
+            SavableMapFlagTracker tracker = new SavableMapFlagTracker();
+            for (BinaryFlagFile.FlagRecord record : records) {
+                BinaryFlagFile.applyRecord(record, tracker);
+            }
+            Files.write(pending.toPath(), tracker.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        boolean rotated = false;
+        try {
+            if (logFile.exists()) {
+                Files.move(logFile.toPath(), oldLogFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                rotated = true;
+            }
+            BinaryFlagFile.moveReplacing(pending, checkpoint);
+        }
+        catch (IOException ex) {
+            if (rotated) {
+                BinaryFlagFile.moveReplacing(oldLogFile, logFile);
+            }
+            pending.delete();
+            throw ex;
+        }
+        File otherFile = binary ? textFileFor(basePath) : binaryFileFor(basePath);
+        if (otherFile.exists() && !otherFile.delete()) {
+            Debug.echoError("Failed to delete outdated flag file '" + otherFile.getName() + "'.");
+        }
+        if (rotated && !oldLogFile.delete()) {
+            // Harmless: the next checkpoint or load removes it, as no uncommitted checkpoint exists
+            Debug.echoError("Failed to delete old flag change log '" + oldLogFile.getName() + "'.");
+        }
+    }
+
+    private static byte[] toBatchBytes(List<BinaryFlagFile.FlagRecord> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(records.size());
+        for (BinaryFlagFile.FlagRecord record : records) {
+            BinaryFlagFile.writeRecord(output, record);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks player flag cache hits and evictions, load latency, and time the main thread spent waiting on loads.
+ */
+public class FlagLoadMetrics {
+
+    public static final LongAdder cacheHits = new LongAdder(), cacheMisses = new LongAdder();
+
+    public static final LongAdder sizeEvictions = new LongAdder(), timeEvictions = new LongAdder();
+
+    public static final LongAdder asyncLoads = new LongAdder(), syncLoads = new LongAdder(), rejectedLoads = new LongAdder();
+
+    public static final LongAdder mainThreadWaits = new LongAdder(), mainThreadWaitNanos = new LongAdder(), mainThreadLoadNanos = new LongAdder();
+
+    public static final int LATENCY_SAMPLES = 1024;
+
+    private static final long[] recentLoadNanos = new long[LATENCY_SAMPLES];
+
+    private static int nextSample = 0, sampleCount = 0;
+
+    public static synchronized void recordLoad(long nanos) {
+        recentLoadNanos[nextSample] = nanos;
+        nextSample = (nextSample + 1) % LATENCY_SAMPLES;
+        if (sampleCount < LATENCY_SAMPLES) {
+            sampleCount++;
+        }
+    }
+
+    /**
+     * Returns the given percentile (0 to 1) of recent load latencies, in nanoseconds.
+     */
+    public static long loadPercentile(double percentile) {
+        long[] samples;
+        synchronized (FlagLoadMetrics.class) {
+            samples = Arrays.copyOf(recentLoadNanos, sampleCount);
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    public static double hitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public static synchronized void reset() {
+        cacheHits.reset();
+        cacheMisses.reset();
+        sizeEvictions.reset();
+        timeEvictions.reset();
+        asyncLoads.reset();
+        syncLoads.reset();
+        rejectedLoads.reset();
+        mainThreadWaits.reset();
+        mainThreadWaitNanos.reset();
+        mainThreadLoadNanos.reset();
+        nextSample = 0;
+        sampleCount = 0;
+    }
+}
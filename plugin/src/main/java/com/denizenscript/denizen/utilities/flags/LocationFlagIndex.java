@@ -0,0 +1,257 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import org.bukkit.Chunk;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Per-chunk index of location flags, mapping each root flag name to the packed positions of the blocks that have it.
+ * A chunk's index is built from its persistent data the first time it is searched, kept in sync by {@link LocationFlagTracker}, and dropped when the chunk unloads.
+ * Only to be used from the main thread.
+ */
+public class LocationFlagIndex implements Listener {
+
+    public static final String KEY_PREFIX = "flag_tracker_";
+
+    /**
+     * Primitive open-addressing set of packed block positions within a chunk.
+     */
+    public static class PositionSet {
+
+        private static final int EMPTY = -1;
+
+        private int[] table = newTable(8);
+
+        public int size = 0;
+
+        private static int[] newTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+
+        private static int slot(int value, int mask) {
+            int hash = value * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        public boolean add(int value) {
+            if ((size + 1) * 4 > table.length * 3) {
+                rehash(table.length * 2);
+            }
+            int mask = table.length - 1;
+            int i = slot(value, mask);
+            while (table[i] != EMPTY) {
+                if (table[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            size++;
+            return true;
+        }
+
+        public boolean remove(int value) {
+            int mask = table.length - 1;
+            int i = slot(value, mask);
+            while (table[i] != value) {
+                if (table[i] == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the probe chain back into the gap, so lookups never need tombstones
+            int gap = i;
+            int next = i;
+            while (true) {
+                next = (next + 1) & mask;
+                int current = table[next];
+                if (current == EMPTY) {
+                    break;
+                }
+                int home = slot(current, mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    table[gap] = current;
+                    gap = next;
+                }
+            }
+            table[gap] = EMPTY;
+            size--;
+            return true;
+        }
+
+        public int[] toArray() {
+            int[] result = new int[size];
+            int index = 0;
+            for (int value : table) {
+                if (value != EMPTY) {
+                    result[index++] = value;
+                }
+            }
+            return result;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldTable = table;
+            table = newTable(capacity);
+            size = 0;
+            for (int value : oldTable) {
+                if (value != EMPTY) {
+                    add(value);
+                }
+            }
+        }
+    }
+
+    public static class ChunkIndex {
+
+        public HashMap<String, PositionSet> flags = new HashMap<>();
+
+        public void add(String flagName, int packed) {
+            flags.computeIfAbsent(flagName, k -> new PositionSet()).add(packed);
+        }
+
+        public void remove(String flagName, int packed) {
+            PositionSet positions = flags.get(flagName);
+            if (positions != null && positions.remove(packed) && positions.size == 0) {
+                flags.remove(flagName);
+            }
+        }
+    }
+
+    public static HashMap<UUID, HashMap<Long, ChunkIndex>> indexByWorld = new HashMap<>();
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkZ << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Packs a block position into an int, relative to its chunk. Supports Y values from -2048 to 2047.
+     */
+    public static int pack(int x, int y, int z) {
+        return ((y + 2048) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    public static int unpackX(int packed) {
+        return packed & 15;
+    }
+
+    public static int unpackY(int packed) {
+        return (packed >>> 8) - 2048;
+    }
+
+    public static int unpackZ(int packed) {
+        return (packed >>> 4) & 15;
+    }
+
+    /**
+     * Gets the index for a chunk, building it from the chunk's persistent data if needed.
+     */
+    public static ChunkIndex getIndex(Chunk chunk) {
+        HashMap<Long, ChunkIndex> worldIndex = indexByWorld.computeIfAbsent(chunk.getWorld().getUID(), k -> new HashMap<>());
+        long key = chunkKey(chunk.getX(), chunk.getZ());
+        ChunkIndex index = worldIndex.get(key);
+        if (index == null) {
+            index = buildIndex(chunk);
+            worldIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index for a chunk only if it was already built. Unbuilt indices don't need updates, as they'll read the current data when built.
+     */
+    public static ChunkIndex getIndexIfBuilt(Chunk chunk) {
+        HashMap<Long, ChunkIndex> worldIndex = indexByWorld.get(chunk.getWorld().getUID());
+        if (worldIndex == null) {
+            return null;
+        }
+        return worldIndex.get(chunkKey(chunk.getX(), chunk.getZ()));
+    }
+
+    public static ChunkIndex buildIndex(Chunk chunk) {
+        ChunkIndex index = new ChunkIndex();
+        for (String key : NMSHandler.instance.containerListFlags(chunk.getPersistentDataContainer(), KEY_PREFIX)) {
+            indexKey(index, key, true);
+        }
+        return index;
+    }
+
+    /**
+     * Called when a location flag is set or removed.
+     */
+    public static void update(Chunk chunk, int x, int y, int z, String flagName, boolean present) {
+        ChunkIndex index = getIndexIfBuilt(chunk);
+        if (index == null) {
+            return;
+        }
+        if (present) {
+            index.add(flagName, pack(x, y, z));
+        }
+        else {
+            index.remove(flagName, pack(x, y, z));
+        }
+    }
+
+    /**
+     * Called when a raw location flag key (of format 'flag_tracker_x_y_z_flagname') is removed from a chunk's persistent data.
+     */
+    public static void removeKey(Chunk chunk, String rawKey) {
+        ChunkIndex index = getIndexIfBuilt(chunk);
+        if (index != null && rawKey.startsWith(KEY_PREFIX)) {
+            indexKey(index, rawKey.substring(KEY_PREFIX.length()), false);
+        }
+    }
+
+    /**
+     * Parses a key of format 'x_y_z_flagname' and adds it to or removes it from the index. Malformed keys are ignored.
+     */
+    private static void indexKey(ChunkIndex index, String key, boolean add) {
+        int endX = key.indexOf('_');
+        int endY = endX == -1 ? -1 : key.indexOf('_', endX + 1);
+        int endZ = endY == -1 ? -1 : key.indexOf('_', endY + 1);
+        if (endZ == -1 || endZ + 1 == key.length()) {
+            return;
+        }
+        int x, y, z;
+        try {
+            x = Integer.parseInt(key, 0, endX, 10);
+            y = Integer.parseInt(key, endX + 1, endY, 10);
+            z = Integer.parseInt(key, endY + 1, endZ, 10);
+        }
+        catch (NumberFormatException ex) {
+            return;
+        }
+        String flagName = key.substring(endZ + 1);
+        if (add) {
+            index.add(flagName, pack(x, y, z));
+        }
+        else {
+            index.remove(flagName, pack(x, y, z));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        HashMap<Long, ChunkIndex> worldIndex = indexByWorld.get(event.getWorld().getUID());
+        if (worldIndex != null) {
+            worldIndex.remove(chunkKey(event.getChunk().getX(), event.getChunk().getZ()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        if (!event.isCancelled()) {
+            indexByWorld.remove(event.getWorld().getUID());
+        }
+    }
+}
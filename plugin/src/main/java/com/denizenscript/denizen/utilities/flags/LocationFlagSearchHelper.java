@@ -1,36 +1,39 @@
 package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.objects.LocationTag;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
-import org.bukkit.NamespacedKey;
-import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
 
-import java.util.List;
 import java.util.function.Consumer;
 
 public class LocationFlagSearchHelper {
 
+    /**
+     * Finds all locations in the chunk with the given flag, using the chunk's {@link LocationFlagIndex}.
+     * The Location passed to the handler is reused between calls.
+     */
     public static void getFlaggedLocations(Chunk chunk, String flagName, Consumer<Location> handleLocation) {
         int subKeyIndex = flagName.indexOf('.');
         String fullPath = flagName;
         if (subKeyIndex != -1) {
             flagName = flagName.substring(0, subKeyIndex);
         }
-        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        LocationFlagIndex.PositionSet positions = LocationFlagIndex.getIndex(chunk).flags.get(flagName);
+        if (positions == null) {
+            return;
+        }
+        // Root flags only need rechecking if the chunk may hold not-yet-cleaned expired flags
+        boolean needsCheck = subKeyIndex != -1 || chunk.getPersistentDataContainer().has(DataPersistenceFlagTracker.expireNeededKey, PersistentDataType.STRING);
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
         Location ref = new Location(chunk.getWorld(), 0, 0, 0);
-        for (NamespacedKey key : container.getKeys()) {
-            if (key.getNamespace().equals("denizen") && key.getKey().startsWith("flag_tracker_") && key.getKey().endsWith(flagName)) {
-                List<String> split = CoreUtilities.split(key.getKey(), '_', 6);
-                if (split.size() == 6 && split.get(5).equals(flagName)) {
-                    ref.setX(Integer.parseInt(split.get(2)));
-                    ref.setY(Integer.parseInt(split.get(3)));
-                    ref.setZ(Integer.parseInt(split.get(4)));
-                    if (new LocationTag(ref).getFlagTracker().hasFlag(fullPath)) {
-                        handleLocation.accept(ref);
-                    }
-                }
+        for (int packed : positions.toArray()) {
+            ref.setX(baseX + LocationFlagIndex.unpackX(packed));
+            ref.setY(LocationFlagIndex.unpackY(packed));
+            ref.setZ(baseZ + LocationFlagIndex.unpackZ(packed));
+            if (!needsCheck || new LocationTag(ref).getFlagTracker().hasFlag(fullPath)) {
+                handleLocation.accept(ref);
             }
         }
     }
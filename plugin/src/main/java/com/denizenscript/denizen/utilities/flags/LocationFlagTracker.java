@@ -0,0 +1,28 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizencore.objects.core.MapTag;
+import org.bukkit.Chunk;
+
+/**
+ * Flag tracker for a single block location, stored in its chunk's persistent data, that keeps the chunk's {@link LocationFlagIndex} in sync.
+ */
+public class LocationFlagTracker extends DataPersistenceFlagTracker {
+
+    public Chunk chunk;
+
+    public int x, y, z;
+
+    public LocationFlagTracker(Chunk chunk, int x, int y, int z) {
+        super(chunk, LocationFlagIndex.KEY_PREFIX + x + "_" + y + "_" + z + "_");
+        this.chunk = chunk;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    @Override
+    public void setRootMap(String key, MapTag map) {
+        super.setRootMap(key, map);
+        LocationFlagIndex.update(chunk, x, y, z, cleanKeyName(key), map != null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Least-recently-used cache of player flag trackers, bounded by the estimated serialized size of the flags it holds.
+ * All methods are synchronized, as lookups reorder the underlying access-ordered map.
+ */
+public class PlayerFlagCache {
+
+    /**
+     * Minimum weight of any cache entry, to account for the per-entry object overhead.
+     */
+    public static final long MINIMUM_ENTRY_WEIGHT = 256;
+
+    private final LinkedHashMap<UUID, PlayerFlagHandler.CachedPlayerFlag> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long totalWeight = 0;
+
+    public long maxWeight = 512L * 1024 * 1024;
+
+    /**
+     * Gets an entry, marking it as most recently used.
+     */
+    public synchronized PlayerFlagHandler.CachedPlayerFlag get(UUID id) {
+        return entries.get(id);
+    }
+
+    public synchronized void put(UUID id, PlayerFlagHandler.CachedPlayerFlag cache) {
+        PlayerFlagHandler.CachedPlayerFlag previous = entries.put(id, cache);
+        if (previous != null) {
+            previous.inCache = false;
+            totalWeight -= previous.weight;
+        }
+        cache.inCache = true;
+        totalWeight += cache.weight;
+    }
+
+    /**
+     * Removes the entry for the id, but only if it is still the given cache object.
+     */
+    public synchronized boolean remove(UUID id, PlayerFlagHandler.CachedPlayerFlag cache) {
+        if (entries.get(id) != cache) {
+            return false;
+        }
+        entries.remove(id);
+        cache.inCache = false;
+        totalWeight -= cache.weight;
+        return true;
+    }
+
+    public synchronized void remove(UUID id) {
+        PlayerFlagHandler.CachedPlayerFlag cache = entries.remove(id);
+        if (cache != null) {
+            cache.inCache = false;
+            totalWeight -= cache.weight;
+        }
+    }
+
+    /**
+     * Changes the weight of an entry, keeping the total in sync if the entry is currently cached.
+     */
+    public synchronized void setWeight(PlayerFlagHandler.CachedPlayerFlag cache, long weight) {
+        weight = Math.max(MINIMUM_ENTRY_WEIGHT, weight);
+        if (cache.inCache) {
+            totalWeight += weight - cache.weight;
+        }
+        cache.weight = weight;
+    }
+
+    public synchronized void clear() {
+        for (PlayerFlagHandler.CachedPlayerFlag cache : entries.values()) {
+            cache.inCache = false;
+        }
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns a copy of all entries, from least to most recently used.
+     */
+    public synchronized List<Map.Entry<UUID, PlayerFlagHandler.CachedPlayerFlag>> entryList() {
+        return new ArrayList<>(entries.entrySet());
+    }
+
+    /**
+     * Returns the least recently used entries that need to be evicted to bring the cache back under its maximum weight.
+     * Entries not matching the predicate (eg online players, or entries busy loading) are skipped.
+     * Entries already being evicted count towards the freed weight, but are not returned again.
+     */
+    public synchronized List<Map.Entry<UUID, PlayerFlagHandler.CachedPlayerFlag>> findOverweightEntries(Predicate<Map.Entry<UUID, PlayerFlagHandler.CachedPlayerFlag>> canEvict) {
+        List<Map.Entry<UUID, PlayerFlagHandler.CachedPlayerFlag>> result = new ArrayList<>();
+        long excess = totalWeight - maxWeight;
+        if (excess <= 0) {
+            return result;
+        }
+        for (Map.Entry<UUID, PlayerFlagHandler.CachedPlayerFlag> entry : entries.entrySet()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (entry.getValue().evicting) {
+                excess -= entry.getValue().weight;
+            }
+            else if (canEvict.test(entry)) {
+                result.add(Map.entry(entry.getKey(), entry.getValue()));
+                excess -= entry.getValue().weight;
+            }
+        }
+        return result;
+    }
+}
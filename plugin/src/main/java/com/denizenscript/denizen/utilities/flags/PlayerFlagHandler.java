@@ -7,6 +7,7 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -15,15 +16,10 @@ import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlayerFlagHandler implements Listener {
 
@@ -33,6 +29,14 @@ public class PlayerFlagHandler implements Listener {
 
     public static boolean saveOnlyWhenWorldSaveOn = false;
 
+    public static boolean binaryFormat = true;
+
+    public static int loadThreads = 2;
+
+    public static int maxQueuedLoads = 4096;
+
+    public static long loadWaitTimeoutMillis = 15 * 1000;
+
     public static class CachedPlayerFlag {
 
         public long lastAccessed;
@@ -41,6 +45,28 @@ public class PlayerFlagHandler implements Listener {
 
         public AtomicBoolean savingNow = new AtomicBoolean(false), loadingNow = new AtomicBoolean(false);
 
+        /**
+         * Completed with the tracker once loading finishes (whether sync or async).
+         */
+        public CompletableFuture<SavableMapFlagTracker> loadFuture = new CompletableFuture<>();
+
+        /**
+         * Whether the post-load flag cleaning has ran. Only accessed on the main thread.
+         */
+        public boolean cleaned = false;
+
+        /**
+         * Estimated serialized size of the flags, in bytes. Managed by {@link PlayerFlagCache}.
+         */
+        public long weight = PlayerFlagCache.MINIMUM_ENTRY_WEIGHT;
+
+        public boolean inCache = false;
+
+        /**
+         * True while an eviction (save then remove) is in progress for this entry.
+         */
+        public boolean evicting = false;
+
         public boolean shouldExpire() {
             if (cacheTimeoutSeconds == -1) {
                 return false;
@@ -54,57 +80,78 @@ public class PlayerFlagHandler implements Listener {
 
     public static File dataFolder;
 
-    public static HashMap<UUID, CachedPlayerFlag> playerFlagTrackerCache = new HashMap<>();
+    public static PlayerFlagCache playerFlagTrackerCache = new PlayerFlagCache();
 
-    public static HashMap<UUID, SoftReference<CachedPlayerFlag>> secondaryPlayerFlagTrackerCache = new HashMap<>();
-
-    private static ArrayList<UUID> toClearCache = new ArrayList<>();
-
-    public static void cleanSecondaryCache() {
-        toClearCache.clear();
-        for (Map.Entry<UUID, SoftReference<CachedPlayerFlag>> entry : secondaryPlayerFlagTrackerCache.entrySet()) {
-            // NOTE: This call will make the GC think the value is still needed, thus the 10 minute cleanup timer to allow the GC to know these are unimportant
-            if (entry.getValue().get() == null) {
-                toClearCache.add(entry.getKey());
+    public static void cleanCache() {
+        if (cacheTimeoutSeconds != -1) {
+            long timeNow = CoreUtilities.monotonicMillis();
+            for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entryList()) {
+                if (Bukkit.getPlayer(entry.getKey()) != null) {
+                    entry.getValue().lastAccessed = timeNow;
+                    continue;
+                }
+                saveThenExpire(entry.getKey(), entry.getValue());
             }
         }
-        for (UUID id : toClearCache) {
-            secondaryPlayerFlagTrackerCache.remove(id);
-        }
+        enforceWeightLimit();
     }
 
-    private static int secondaryCleanTicker = 0;
+    private static boolean weightCheckQueued = false;
 
-    public static void cleanCache() {
-        if (cacheTimeoutSeconds == -1) {
+    /**
+     * Queues a check of the cache weight limit for the next tick, so that bulk loads only check once.
+     */
+    public static void queueWeightCheck() {
+        if (weightCheckQueued) {
             return;
         }
-        if (secondaryCleanTicker++ > 10) {
-            cleanSecondaryCache();
-        }
-        long timeNow = CoreUtilities.monotonicMillis();
-        for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
-            if (cacheTimeoutSeconds > 0 && entry.getValue().lastAccessed + (cacheTimeoutSeconds * 1000) < timeNow) {
-                continue;
-            }
-            if (Bukkit.getPlayer(entry.getKey()) != null) {
-                entry.getValue().lastAccessed = timeNow;
-                continue;
+        weightCheckQueued = true;
+        Bukkit.getScheduler().scheduleSyncDelayedTask(Denizen.getInstance(), () -> {
+            weightCheckQueued = false;
+            enforceWeightLimit();
+        });
+    }
+
+    /**
+     * Evicts least recently used offline player flag trackers until the cache is back under its maximum weight. Must be called on the main thread.
+     */
+    public static void enforceWeightLimit() {
+        List<Map.Entry<UUID, CachedPlayerFlag>> toEvict = playerFlagTrackerCache.findOverweightEntries(entry -> !entry.getValue().loadingNow.get() && Bukkit.getPlayer(entry.getKey()) == null);
+        for (Map.Entry<UUID, CachedPlayerFlag> entry : toEvict) {
+            if (CoreConfiguration.debugVerbose) {
+                Debug.echoError("Verbose - (enforceWeightLimit) evicting flag tracker for " + entry.getKey() + " with weight " + entry.getValue().weight);
             }
-            saveThenExpire(entry.getKey(), entry.getValue());
+            saveThenExpire(entry.getKey(), entry.getValue(), true);
         }
     }
 
     public static void saveThenExpire(UUID id, CachedPlayerFlag cache) {
-        if (saveOnlyWhenWorldSaveOn && !Bukkit.getWorlds().get(0).isAutoSave()) {
+        saveThenExpire(id, cache, false);
+    }
+
+    /**
+     * Saves the tracker if needed, then removes it from cache if it has timed out, or if 'evict' is set and it hasn't been accessed since.
+     */
+    public static void saveThenExpire(UUID id, CachedPlayerFlag cache, boolean evict) {
+        if (saveOnlyWhenWorldSaveOn && !Bukkit.getWorlds().get(0).isAutoSave() && cache.tracker != null && cache.tracker.modified) {
             return;
         }
+        long accessedAt = cache.lastAccessed;
+        if (evict) {
+            cache.evicting = true;
+        }
         BukkitRunnable expireTask = new BukkitRunnable() {
             @Override
             public void run() {
-                if (cache.shouldExpire()) {
-                    playerFlagTrackerCache.remove(id);
-                    secondaryPlayerFlagTrackerCache.put(id, new SoftReference<>(cache));
+                cache.evicting = false;
+                if (cache.tracker.modified) {
+                    // Changed again while saving, so keep it until the next save
+                    return;
+                }
+                if (evict ? cache.lastAccessed == accessedAt : cache.shouldExpire()) {
+                    if (playerFlagTrackerCache.remove(id, cache)) {
+                        (evict ? FlagLoadMetrics.sizeEvictions : FlagLoadMetrics.timeEvictions).increment();
+                    }
                 }
             }
         };
@@ -112,9 +159,9 @@ public class PlayerFlagHandler implements Listener {
             new BukkitRunnable() {
                 @Override
                 public void run() {
-                    CachedPlayerFlag newCache = playerFlagTrackerCache.get(id);
-                    if (newCache != null) {
-                        saveThenExpire(id, newCache);
+                    cache.evicting = false;
+                    if (cache.inCache) {
+                        saveThenExpire(id, cache, evict);
                     }
                 }
             }.runTaskLater(Denizen.getInstance(), 10);
@@ -125,13 +172,13 @@ public class PlayerFlagHandler implements Listener {
             return;
         }
         cache.tracker.modified = false;
-        String text = cache.tracker.toString();
+        Runnable doSave = prepareSave(id, cache);
         cache.savingNow.set(true);
         new BukkitRunnable() {
             @Override
             public void run() {
                 try {
-                    saveFlags(id, text);
+                    doSave.run();
                 }
                 catch (Throwable ex) {
                     Debug.echoError(ex);
@@ -142,31 +189,107 @@ public class PlayerFlagHandler implements Listener {
         }.runTaskAsynchronously(Denizen.getInstance());
     }
 
+    private static ThreadPoolExecutor loadExecutor;
+
+    /**
+     * Returns the dedicated player flag loading executor, creating it if needed.
+     * The executor has a bounded queue, so callers must handle a RejectedExecutionException by loading synchronously later.
+     */
+    public static ThreadPoolExecutor getLoadExecutor() {
+        if (loadExecutor == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            loadExecutor = new ThreadPoolExecutor(loadThreads, loadThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(maxQueuedLoads), (runnable) -> {
+                Thread thread = new Thread(runnable, "Denizen Player Flag Loader #" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            loadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return loadExecutor;
+    }
+
     public static void loadFlags(UUID id, CachedPlayerFlag cache) {
         try {
-            cache.tracker = SavableMapFlagTracker.loadFlagFile(new File(dataFolder, id.toString()).getPath(), false);
+            cache.tracker = readFlags(id);
+            playerFlagTrackerCache.setWeight(cache, estimateWeight(cache.tracker));
         }
         finally {
             cache.loadingNow.set(false);
+            cache.loadFuture.complete(cache.tracker);
         }
     }
 
+    public static SavableMapFlagTracker readFlags(UUID id) {
+        return FlagChangeLog.load(new File(dataFolder, id.toString()).getPath(), binaryFormat);
+    }
+
+    /**
+     * Estimates the serialized size of a tracker's flags, in bytes.
+     */
+    public static long estimateWeight(SavableMapFlagTracker tracker) {
+        long weight = 0;
+        for (Map.Entry<StringHolder, SavableMapFlagTracker.SaveOptimizedFlag> flag : tracker.map.entrySet()) {
+            String value = flag.getValue().string;
+            // Flags that are already parsed don't have their text on hand, so just guess
+            weight += flag.getKey().str.length() + (value == null ? 256 : value.length());
+        }
+        return weight;
+    }
+
+    /**
+     * Runs the one-time post-load flag cleaning. Must be called on the main thread.
+     */
+    public static void finishLoad(UUID id, CachedPlayerFlag cache) {
+        if (cache.cleaned || cache.tracker == null) {
+            return;
+        }
+        cache.cleaned = true;
+        if (CoreConfiguration.debugVerbose) {
+            Debug.echoError("Verbose - flag tracker finished loading for " + id);
+        }
+        if (!CoreConfiguration.skipAllFlagCleanings) {
+            cache.tracker.doTotalClean();
+        }
+        queueWeightCheck();
+    }
+
+    /**
+     * Waits for an in-progress load, for at most 'loadWaitTimeoutMillis'.
+     */
+    public static SavableMapFlagTracker awaitLoad(UUID id, CachedPlayerFlag cache) {
+        if (CoreConfiguration.debugVerbose) {
+            Debug.echoError("Verbose - (getTrackerFor) flag tracker is loading, so waiting, for " + id);
+        }
+        boolean isMainThread = Bukkit.isPrimaryThread();
+        long start = System.nanoTime();
+        try {
+            cache.loadFuture.get(loadWaitTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            Debug.echoError("Flag loading for " + id + " did not finish within " + loadWaitTimeoutMillis + "ms, errors may follow");
+            playerFlagTrackerCache.remove(id);
+            return null;
+        }
+        catch (InterruptedException | ExecutionException ex) {
+            Debug.echoError(ex);
+        }
+        finally {
+            if (isMainThread) {
+                FlagLoadMetrics.mainThreadWaits.increment();
+                FlagLoadMetrics.mainThreadWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+        if (isMainThread) {
+            finishLoad(id, cache);
+        }
+        return cache.tracker;
+    }
+
     public static AbstractFlagTracker getTrackerFor(UUID id) {
         CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
         if (cache == null) {
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = CoreUtilities.monotonicMillis();
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (getTrackerFor) flag tracker updated from soft to main for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return cache.tracker;
-                }
-            }
+            FlagLoadMetrics.cacheMisses.increment();
+            FlagLoadMetrics.syncLoads.increment();
             cache = new CachedPlayerFlag();
             cache.lastAccessed = CoreUtilities.monotonicMillis();
             cache.loadingNow.set(true);
@@ -174,60 +297,70 @@ public class PlayerFlagHandler implements Listener {
                 Debug.echoError("Verbose - (getTrackerFor) flag tracker created for " + id);
             }
             playerFlagTrackerCache.put(id, cache);
+            long start = System.nanoTime();
             loadFlags(id, cache);
-            if (cache.tracker != null && !CoreConfiguration.skipAllFlagCleanings) {
-                cache.tracker.doTotalClean();
+            long loadTime = System.nanoTime() - start;
+            FlagLoadMetrics.recordLoad(loadTime);
+            if (Bukkit.isPrimaryThread()) {
+                FlagLoadMetrics.mainThreadLoadNanos.add(loadTime);
+                finishLoad(id, cache);
             }
         }
         else {
             if (CoreConfiguration.debugVerbose) {
                 Debug.echoError("Verbose - (getTrackerFor) flag tracker was cached for " + id);
             }
+            FlagLoadMetrics.cacheHits.increment();
+            cache.lastAccessed = CoreUtilities.monotonicMillis();
             if (cache.loadingNow.get()) {
-                long start = CoreUtilities.monotonicMillis();
-                while (cache.loadingNow.get()) {
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (getTrackerFor) flag tracker is loading, so waiting, for " + id + " ... at " + (CoreUtilities.monotonicMillis() - start) + "ms");
-                    }
-                    if (CoreUtilities.monotonicMillis() - start > 15 * 1000) {
-                        Debug.echoError("Flag loading timeout, errors may follow");
-                        playerFlagTrackerCache.remove(id);
-                        return null;
-                    }
-                    try {
-                        Thread.sleep(1);
-                    }
-                    catch (InterruptedException ex) {
-                        Debug.echoError(ex);
-                        return cache.tracker;
-                    }
-                }
+                return awaitLoad(id, cache);
+            }
+            if (!cache.cleaned && Bukkit.isPrimaryThread()) {
+                finishLoad(id, cache);
             }
         }
         return cache.tracker;
     }
 
-    public static Future loadAsync(UUID id) { // Note: this method is called sync, but triggers an async load
+    /**
+     * Returns a future that completes with the flag tracker for the player, starting an async load if it isn't already cached.
+     * Must be called on the main thread.
+     */
+    public static CompletableFuture<SavableMapFlagTracker> getTrackerFuture(UUID id) {
+        CompletableFuture<SavableMapFlagTracker> future = loadAsync(id);
+        if (future == null) {
+            return CompletableFuture.completedFuture((SavableMapFlagTracker) getTrackerFor(id));
+        }
+        return future;
+    }
+
+    /**
+     * Starts async loads for every player in the list that isn't already cached, so that later sync accesses don't each block on disk.
+     * Must be called on the main thread.
+     */
+    public static CompletableFuture<Void> prefetch(Collection<UUID> ids) {
+        ArrayList<CompletableFuture<SavableMapFlagTracker>> futures = new ArrayList<>();
+        for (UUID id : ids) {
+            CompletableFuture<SavableMapFlagTracker> future = loadAsync(id);
+            if (future != null && !future.isDone()) {
+                futures.add(future);
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Starts an async load of a player's flags if needed. Must be called on the main thread.
+     * Returns the load future, or null if the loader queue is full (in which case the flags will be loaded synchronously when needed).
+     */
+    public static CompletableFuture<SavableMapFlagTracker> loadAsync(UUID id) {
         try {
             CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
             if (cache != null) {
                 if (CoreConfiguration.debugVerbose) {
                     Debug.echoError("Verbose - (loadAsync) flag tracker ignored due to cache for " + id);
                 }
-                return null;
-            }
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = CoreUtilities.monotonicMillis();
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (loadAsync) flag tracker updated from softref to main for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return null;
-                }
+                return cache.loadFuture;
             }
             CachedPlayerFlag newCache = new CachedPlayerFlag();
             newCache.lastAccessed = CoreUtilities.monotonicMillis();
@@ -235,24 +368,22 @@ public class PlayerFlagHandler implements Listener {
             if (CoreConfiguration.debugVerbose) {
                 Debug.echoError("Verbose - (loadAsync) flag tracker created " + id);
             }
+            long start = System.nanoTime();
+            getLoadExecutor().execute(() -> {
+                loadFlags(id, newCache);
+                FlagLoadMetrics.recordLoad(System.nanoTime() - start);
+                Bukkit.getScheduler().scheduleSyncDelayedTask(Denizen.instance, () -> finishLoad(id, newCache));
+            });
+            FlagLoadMetrics.asyncLoads.increment();
             playerFlagTrackerCache.put(id, newCache);
-            CompletableFuture future = new CompletableFuture();
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    loadFlags(id, newCache);
-                    Bukkit.getScheduler().scheduleSyncDelayedTask(Denizen.instance, () -> {
-                        if (CoreConfiguration.debugVerbose) {
-                            Debug.echoError("Verbose - flag tracker async loaded " + id);
-                        }
-                        if (newCache.tracker != null && !CoreConfiguration.skipAllFlagCleanings) {
-                            newCache.tracker.doTotalClean();
-                        }
-                    });
-                    future.complete(null);
-                }
-            }.runTaskAsynchronously(Denizen.getInstance());
-            return future;
+            return newCache.loadFuture;
+        }
+        catch (RejectedExecutionException ex) {
+            FlagLoadMetrics.rejectedLoads.increment();
+            if (CoreConfiguration.debugVerbose) {
+                Debug.echoError("Verbose - (loadAsync) flag loader queue is full, skipping async load for " + id);
+            }
+            return null;
         }
         catch (Throwable ex) {
             Debug.echoError(ex);
@@ -261,7 +392,7 @@ public class PlayerFlagHandler implements Listener {
     }
 
     public static void saveAllNow(boolean lockUntilDone) {
-        for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
+        for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entryList()) {
             CachedPlayerFlag flags = entry.getValue();
             if (flags.tracker.modified) {
                 if (!lockUntilDone && flags.savingNow.get() || flags.loadingNow.get()) {
@@ -277,10 +408,9 @@ public class PlayerFlagHandler implements Listener {
                 }
                 flags.savingNow.set(true);
                 flags.tracker.modified = false;
-                final UUID id = entry.getKey();
-                final String data = flags.tracker.toString();
+                Runnable save = prepareSave(entry.getKey(), flags);
                 Runnable doSave = () -> {
-                    saveFlags(id, data);
+                    save.run();
                     flags.savingNow.set(false);
                 };
                 if (lockUntilDone) {
@@ -293,8 +423,24 @@ public class PlayerFlagHandler implements Listener {
         }
     }
 
+    /**
+     * Snapshots the tracker changes, returning a task that can write the snapshot from any thread.
+     */
+    public static Runnable prepareSave(UUID id, CachedPlayerFlag cache) {
+        FlagChangeLog.Snapshot snapshot = FlagChangeLog.snapshot(cache.tracker);
+        // Delta saves can only grow the estimate, it gets corrected on the next full save or reload
+        playerFlagTrackerCache.setWeight(cache, snapshot.full ? snapshot.byteSize() : cache.weight + snapshot.byteSize());
+        String path = new File(dataFolder, id.toString()).getPath();
+        boolean binary = binaryFormat;
+        SavableMapFlagTracker tracker = cache.tracker;
+        return () -> FlagChangeLog.write(path, binary, snapshot, tracker);
+    }
+
     public static void saveFlags(UUID id, String flagData) {
         CoreUtilities.journallingFileSave(new File(dataFolder, id.toString() + ".dat").getPath(), flagData);
+        String path = new File(dataFolder, id.toString()).getPath();
+        FlagChangeLog.binaryFileFor(path).delete();
+        FlagChangeLog.logFileFor(path).delete();
     }
 
     @EventHandler
@@ -313,7 +459,7 @@ public class PlayerFlagHandler implements Listener {
             try {
                 Future newFuture = future.get(15, TimeUnit.SECONDS);
                 if (newFuture != null) {
-                    newFuture.get(15, TimeUnit.SECONDS);
+                    newFuture.get(loadWaitTimeoutMillis, TimeUnit.MILLISECONDS);
                 }
             }
             catch (Throwable ex) {
@@ -324,7 +470,6 @@ public class PlayerFlagHandler implements Listener {
 
     public static void reloadAllFlagsNow() {
         playerFlagTrackerCache.clear();
-        secondaryPlayerFlagTrackerCache.clear();
         for (Player player : Bukkit.getOnlinePlayers()) {
             getTrackerFor(player.getUniqueId());
         }
@@ -1,7 +1,9 @@
 package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.CoreConfiguration;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.event.EventHandler;
@@ -12,6 +14,7 @@ import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class WorldFlagHandler implements Listener {
 
@@ -27,15 +30,41 @@ public class WorldFlagHandler implements Listener {
         }
     }
 
+    public static HashMap<String, CompletableFuture<Void>> pendingWrites = new HashMap<>();
+
     public void saveAll(boolean lockUntilDone) {
         for (Map.Entry<String, SavableMapFlagTracker> flagTracker : worldFlagTrackers.entrySet()) {
             if (flagTracker.getValue().modified) {
-                flagTracker.getValue().saveToFile(flagPathFor(flagTracker.getKey()), lockUntilDone);
-                flagTracker.getValue().modified = false;
+                saveWorldFlags(flagTracker.getKey(), flagTracker.getValue(), lockUntilDone);
             }
         }
     }
 
+    /**
+     * Saves the changes in a world's flag tracker. Writes for the same world are chained so they always reach the file in order.
+     */
+    public static void saveWorldFlags(String worldName, SavableMapFlagTracker flags, boolean lockUntilDone) {
+        String path = flagPathFor(worldName);
+        FlagChangeLog.Snapshot snapshot = FlagChangeLog.snapshot(flags);
+        flags.modified = false;
+        Runnable doWrite = () -> FlagChangeLog.write(path, false, snapshot, flags);
+        CompletableFuture<Void> previous = pendingWrites.get(worldName);
+        if (lockUntilDone) {
+            if (previous != null) {
+                previous.join();
+            }
+            doWrite.run();
+            pendingWrites.remove(worldName);
+            return;
+        }
+        if (previous == null || previous.isDone()) {
+            pendingWrites.put(worldName, CompletableFuture.runAsync(doWrite, DenizenCore::runAsync));
+        }
+        else {
+            pendingWrites.put(worldName, previous.thenRunAsync(doWrite, DenizenCore::runAsync));
+        }
+    }
+
     public void shutdown() {
         saveAll(true);
         worldFlagTrackers.clear();
@@ -49,7 +78,11 @@ public class WorldFlagHandler implements Listener {
         if (worldFlagTrackers.containsKey(world.getName())) {
             return;
         }
-        worldFlagTrackers.put(world.getName(), SavableMapFlagTracker.loadFlagFile(flagPathFor(world.getName()), true));
+        SavableMapFlagTracker tracker = FlagChangeLog.load(flagPathFor(world.getName()), false);
+        if (!CoreConfiguration.skipAllFlagCleanings) {
+            tracker.doTotalClean();
+        }
+        worldFlagTrackers.put(world.getName(), tracker);
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -61,8 +94,7 @@ public class WorldFlagHandler implements Listener {
     public void onWorldUnload(WorldUnloadEvent event) {
         SavableMapFlagTracker flags = worldFlagTrackers.remove(event.getWorld().getName());
         if (flags != null && flags.modified) {
-            flags.modified = false;
-            flags.saveToFile(flagPathFor(event.getWorld().getName()), true);
+            saveWorldFlags(event.getWorld().getName(), flags, true);
         }
     }
 }
@@ -87,7 +87,7 @@ public class DenizenMapManager {
                         String file = objectConfig.getString("image");
                         int width = objectConfig.getInt("width", 0);
                         int height = objectConfig.getInt("height", 0);
-                        object = new MapImage(renderer, xTag, yTag, visibilityTag, debug, file, width, height);
+                        object = new MapImage(renderer, xTag, yTag, visibilityTag, debug, file, width, height, objectConfig.getBoolean("dither", false));
                         break;
                     case "TEXT":
                         object = new MapText(xTag, yTag, visibilityTag, debug, objectConfig.getString("text"), objectConfig.getString("color"),
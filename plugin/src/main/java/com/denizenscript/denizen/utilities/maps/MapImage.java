@@ -13,10 +13,17 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ImageConsumer;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 public class MapImage extends MapObject {
 
@@ -29,8 +36,39 @@ public class MapImage extends MapObject {
     public String fileTag;
     public String actualFile = null;
     public boolean disabled = false;
+    public boolean dither = false;
     public DenizenMapRenderer renderer;
 
+    /**
+     * The most recent animation frame, converted by a background thread and not yet picked up by a render.
+     */
+    public volatile byte[] preparedImageData = null;
+    private volatile boolean frameChanged = false, frameReady = false;
+    private final AtomicBoolean preparing = new AtomicBoolean(false);
+    private final HashMap<Integer, CachedFrame> frameCache = new HashMap<>();
+
+    private static final class CachedFrame {
+
+        public final int[] pixels;
+
+        public final byte[] bytes;
+
+        public CachedFrame(int[] pixels, byte[] bytes) {
+            this.pixels = pixels;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * How many distinct converted frames of an animated image are remembered, so looping animations only convert each frame once.
+     */
+    public static int MAX_CACHED_FRAMES = 64;
+
+    public MapImage(DenizenMapRenderer renderer, String xTag, String yTag, String visibilityTag, boolean debug, String fileTag, int width, int height, boolean dither) {
+        this(renderer, xTag, yTag, visibilityTag, debug, fileTag, width, height);
+        this.dither = dither;
+    }
+
     public MapImage(DenizenMapRenderer renderer, String xTag, String yTag, String visibilityTag, boolean debug, String fileTag, int width, int height) {
         super(xTag, yTag, visibilityTag, debug);
         this.fileTag = fileTag;
@@ -48,6 +86,9 @@ public class MapImage extends MapObject {
         data.put("width", width);
         data.put("height", height);
         data.put("image", fileTag);
+        if (dither) {
+            data.put("dither", true);
+        }
         return data;
     }
 
@@ -82,16 +123,22 @@ public class MapImage extends MapObject {
                     @Override
                     public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
                         // When the internal pixels are updated, the cache is no longer current.
-                        cachedImageData = null;
-                        renderer.hasChanged = true;
+                        frameChanged = true;
                     }
 
                     @Override
                     public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
+                        frameChanged = true;
                     }
 
                     @Override
                     public void imageComplete(int status) {
+                        // A full animation frame is ready, so convert it in the background before the next render needs it.
+                        if (frameChanged && (status == SINGLEFRAMEDONE || status == STATICIMAGEDONE)) {
+                            frameChanged = false;
+                            frameReady = true;
+                            prepareFrameAsync();
+                        }
                     }
                 });
                 if (width == 0) {
@@ -112,8 +159,14 @@ public class MapImage extends MapObject {
             }
             // Use custom functions to draw image to allow transparency and reduce lag intensely
             byte[] bytes;
-            if (cachedImageData == null || image != imageForCache) {
-                bytes = imageToBytes(image, width, height);
+            byte[] prepared = preparedImageData;
+            if (prepared != null && image == imageForCache) {
+                preparedImageData = null;
+                cachedImageData = prepared;
+                bytes = prepared;
+            }
+            else if (cachedImageData == null || image != imageForCache) {
+                bytes = convertFrame();
                 if (bytes == null) {
                     Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
                     disabled = true;
@@ -134,6 +187,70 @@ public class MapImage extends MapObject {
         }
     }
 
+    /**
+     * Converts the image's current frame to map color bytes, reusing the result if the same frame was converted before.
+     */
+    public byte[] convertFrame() {
+        int[] pixels = getPixels(image, width, height);
+        int hash = Arrays.hashCode(pixels);
+        synchronized (frameCache) {
+            CachedFrame frame = frameCache.get(hash);
+            if (frame != null && Arrays.equals(frame.pixels, pixels)) {
+                return frame.bytes;
+            }
+        }
+        byte[] bytes = pixelsToBytes(pixels, width, height, dither);
+        synchronized (frameCache) {
+            if (frameCache.size() >= MAX_CACHED_FRAMES) {
+                frameCache.clear();
+            }
+            frameCache.put(hash, new CachedFrame(pixels, bytes));
+        }
+        return bytes;
+    }
+
+    public void prepareFrameAsync() {
+        if (width <= 0 || height <= 0 || disabled || !preparing.compareAndSet(false, true)) {
+            return;
+        }
+        getExecutor().execute(() -> {
+            try {
+                // If more frames finished while converting, skip straight to the latest one
+                while (frameReady) {
+                    frameReady = false;
+                    byte[] bytes = convertFrame();
+                    imageForCache = image;
+                    preparedImageData = bytes;
+                    renderer.hasChanged = true;
+                }
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+            finally {
+                preparing.set(false);
+            }
+            if (frameReady) {
+                prepareFrameAsync();
+            }
+        });
+    }
+
+    private static ThreadPoolExecutor executor;
+
+    public static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+                Thread thread = new Thread(runnable, "Denizen Map Image #" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
     private static final Color[] bukkitColors;
 
     static {
@@ -149,51 +266,129 @@ public class MapImage extends MapObject {
         bukkitColors = colors;
     }
 
-    public static byte[] imageToBytes(Image image, int width, int height) {
+    /**
+     * Lookup table from 18-bit RGB (6 bits per channel) to the nearest map palette index, built the first time it's needed.
+     */
+    private static final class ColorTable {
+
+        public static final byte[] table = buildColorTable();
+    }
+
+    private static byte[] buildColorTable() {
+        byte[] table = new byte[64 * 64 * 64];
+        int[] paletteRed = new int[bukkitColors.length], paletteGreen = new int[bukkitColors.length], paletteBlue = new int[bukkitColors.length];
+        for (int i = 0; i < bukkitColors.length; i++) {
+            paletteRed[i] = bukkitColors[i].getRed();
+            paletteGreen[i] = bukkitColors[i].getGreen();
+            paletteBlue[i] = bukkitColors[i].getBlue();
+        }
+        IntStream.range(0, 64).parallel().forEach((redIndex) -> {
+            int red = (redIndex << 2) | (redIndex >> 4);
+            for (int greenIndex = 0; greenIndex < 64; greenIndex++) {
+                int green = (greenIndex << 2) | (greenIndex >> 4);
+                for (int blueIndex = 0; blueIndex < 64; blueIndex++) {
+                    int blue = (blueIndex << 2) | (blueIndex >> 4);
+                    int best = 4;
+                    double bestDistance = Double.MAX_VALUE;
+                    for (int i = 4; i < paletteRed.length; i++) {
+                        double distance = getDistance(red, green, blue, paletteRed[i], paletteGreen[i], paletteBlue[i]);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = i;
+                        }
+                    }
+                    table[(redIndex << 12) | (greenIndex << 6) | blueIndex] = (byte) best;
+                }
+            }
+        });
+        return table;
+    }
+
+    public static int[] getPixels(Image image, int width, int height) {
         BufferedImage temp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphics = temp.createGraphics();
         graphics.drawImage(image, 0, 0, width, height, null);
         graphics.dispose();
         int[] pixels = new int[width * height];
         temp.getRGB(0, 0, width, height, pixels, 0, width);
-        byte[] result = new byte[width * height];
-        for (int i = 0; i < pixels.length; i++) {
-            result[i] = matchColor(new Color(pixels[i], true));
-        }
-        return result;
+        return pixels;
     }
 
-    public static HashMap<Color, Byte> colorCache = new HashMap<>(1024);
+    public static byte[] imageToBytes(Image image, int width, int height) {
+        return imageToBytes(image, width, height, false);
+    }
 
-    public static byte matchColor(Color color) {
-        if (color.getAlpha() < 128) {
-            return 0;
-        }
-        Byte result = colorCache.get(color);
-        if (result != null) {
+    public static byte[] imageToBytes(Image image, int width, int height, boolean dither) {
+        return pixelsToBytes(getPixels(image, width, height), width, height, dither);
+    }
+
+    /**
+     * Converts ARGB pixels to map color bytes, optionally with Floyd-Steinberg error diffusion dithering.
+     */
+    public static byte[] pixelsToBytes(int[] pixels, int width, int height, boolean dither) {
+        byte[] result = new byte[width * height];
+        if (!dither) {
+            for (int i = 0; i < pixels.length; i++) {
+                result[i] = matchColor(pixels[i]);
+            }
             return result;
         }
-        int index = 0;
-        double best = -1;
-        for (int i = 4; i < bukkitColors.length; i++) {
-            double distance = getDistance(color, bukkitColors[i]);
-            if (distance < best || best == -1) {
-                best = distance;
-                index = i;
+        // Error carried to the current and next row, 3 channels per pixel with one pixel of padding on each side
+        int[] errorCurrent = new int[(width + 2) * 3], errorNext = new int[(width + 2) * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[y * width + x];
+                if ((argb >>> 24) < 128) {
+                    continue;
+                }
+                int errorIndex = (x + 1) * 3;
+                int red = clampColor(((argb >> 16) & 0xFF) + errorCurrent[errorIndex] / 16);
+                int green = clampColor(((argb >> 8) & 0xFF) + errorCurrent[errorIndex + 1] / 16);
+                int blue = clampColor((argb & 0xFF) + errorCurrent[errorIndex + 2] / 16);
+                byte match = ColorTable.table[((red >> 2) << 12) | ((green >> 2) << 6) | (blue >> 2)];
+                result[y * width + x] = match;
+                Color actual = bukkitColors[match & 0xFF];
+                int[] channelErrors = {red - actual.getRed(), green - actual.getGreen(), blue - actual.getBlue()};
+                for (int channel = 0; channel < 3; channel++) {
+                    int error = channelErrors[channel];
+                    errorCurrent[errorIndex + 3 + channel] += error * 7;
+                    errorNext[errorIndex - 3 + channel] += error * 3;
+                    errorNext[errorIndex + channel] += error * 5;
+                    errorNext[errorIndex + 3 + channel] += error;
+                }
             }
+            int[] swap = errorCurrent;
+            errorCurrent = errorNext;
+            errorNext = swap;
+            Arrays.fill(errorNext, 0);
         }
-        byte gotten = (byte) (index < 128 ? index : -129 + (index - 127));
-        if (colorCache.size() < 1024 * 16) {
-            colorCache.put(color, gotten);
+        return result;
+    }
+
+    private static int clampColor(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    public static byte matchColor(int argb) {
+        if ((argb >>> 24) < 128) {
+            return 0;
         }
-        return gotten;
+        return ColorTable.table[(((argb >> 16) & 0xFF) >> 2 << 12) | (((argb >> 8) & 0xFF) >> 2 << 6) | ((argb & 0xFF) >> 2)];
+    }
+
+    public static byte matchColor(Color color) {
+        return matchColor(color.getRGB());
     }
 
     public static double getDistance(Color c1, Color c2) {
-        double rmean = (c1.getRed() + c2.getRed()) / 2.0;
-        double r = c1.getRed() - c2.getRed();
-        double g = c1.getGreen() - c2.getGreen();
-        int b = c1.getBlue() - c2.getBlue();
+        return getDistance(c1.getRed(), c1.getGreen(), c1.getBlue(), c2.getRed(), c2.getGreen(), c2.getBlue());
+    }
+
+    public static double getDistance(int red1, int green1, int blue1, int red2, int green2, int blue2) {
+        double rmean = (red1 + red2) / 2.0;
+        double r = red1 - red2;
+        double g = green1 - green2;
+        int b = blue1 - blue2;
         double weightR = 2 + rmean / 256.0;
         double weightG = 4.0;
         double weightB = 2 + (255 - rmean) / 256.0;
@@ -0,0 +1,75 @@
+package com.denizenscript.denizen.utilities.packets;
+
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.utilities.debugging.DebugInternals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-filters packets for the packet script events by class, based on the 'class:' switches of the script paths the event has.
+ * Packets of a class that no path can match skip the event entirely, without any object allocation.
+ * The result for each packet class is computed the first time that class is seen after scripts (re)load, and is safe to use from network threads.
+ */
+public class PacketClassFilter {
+
+    public static final class ClassInfo {
+
+        public final ElementTag className;
+
+        public final boolean canMatch;
+
+        public ClassInfo(ElementTag className, boolean canMatch) {
+            this.className = className;
+            this.canMatch = canMatch;
+        }
+    }
+
+    private volatile List<ScriptEvent.MatchHelper> matchers = null;
+
+    private volatile ConcurrentHashMap<Class<?>, ClassInfo> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Recomputes the filter for the given script paths. Should be called whenever the event's paths change (ie in the event's 'init').
+     */
+    public void update(List<ScriptEvent.ScriptPath> paths) {
+        List<ScriptEvent.MatchHelper> newMatchers = new ArrayList<>(paths.size());
+        for (ScriptEvent.ScriptPath path : paths) {
+            String classMatcher = path.switches.get("class");
+            if (classMatcher == null) {
+                // A path without a class switch can match any packet
+                newMatchers = null;
+                break;
+            }
+            newMatchers.add(ScriptEvent.createMatcher(classMatcher));
+        }
+        matchers = newMatchers;
+        classes = new ConcurrentHashMap<>();
+    }
+
+    public ClassInfo getInfo(Class<?> packetClass) {
+        ConcurrentHashMap<Class<?>, ClassInfo> classes = this.classes;
+        ClassInfo info = classes.get(packetClass);
+        if (info == null) {
+            String name = DebugInternals.getClassNameOpti(packetClass);
+            info = new ClassInfo(new ElementTag(name), canMatch(name));
+            classes.put(packetClass, info);
+        }
+        return info;
+    }
+
+    private boolean canMatch(String className) {
+        List<ScriptEvent.MatchHelper> matchers = this.matchers;
+        if (matchers == null) {
+            return true;
+        }
+        for (ScriptEvent.MatchHelper matcher : matchers) {
+            if (matcher.doesMatch(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,41 +1,662 @@
 package com.denizenscript.denizen.utilities.world;
 
+import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
-import net.citizensnpcs.api.astar.AStarMachine;
-import net.citizensnpcs.api.astar.pathfinder.*;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
-import org.bukkit.util.Vector;
+import org.bukkit.Material;
+import org.bukkit.Tag;
+import org.bukkit.World;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * TODO: Potentially a separate implementation?
+ * Denizen's A* path finder.
+ * For background searches, blocks are read from chunk snapshots taken on the main thread as the search reaches them. Main thread searches read the world directly, only where the search goes.
+ * Positions are packed into longs, the open set is a primitive binary heap and the closed set a primitive hash set.
+ * Found paths are cached briefly, so repeated searches towards the same goal (from the start or from any point along a previous path) are instant.
  */
 public class PathFinder {
 
-    public static AStarMachine ASTAR = AStarMachine.createWithDefaultStorage();
+    /**
+     * Movement rules for a search.
+     */
+    public static class Rules {
 
-    public static List<LocationTag> getPath(Location start, Location dest) {
-        VectorGoal goal = new VectorGoal(dest, 1);
-        Path plan = (Path) ASTAR.runFully(goal, new VectorNode(goal, start, new ChunkBlockSource(start, 100), new MinecraftBlockExaminer()), 50000);
-        if (plan == null) {
-            Debug.verboseLog("PathFinder: No path found from " + start + " to " + dest + " (return null)");
+        /**
+         * How many blocks up a single step can climb.
+         */
+        public int jumpHeight = 1;
+
+        /**
+         * How many blocks down a single step can drop.
+         */
+        public int maxFall = 3;
+
+        /**
+         * Whether the path may go through water.
+         */
+        public boolean swim = true;
+
+        /**
+         * Whether the path may go through (non-iron) doors and fence gates, as if they were open.
+         */
+        public boolean doors = true;
+
+        /**
+         * How far (horizontally) from the start the search may go. Limited to {@link #MAX_RANGE}.
+         */
+        public int range = 100;
+
+        /**
+         * How many positions the search may check before giving up.
+         */
+        public int maxNodes = 50000;
+
+        public String getCacheKey() {
+            return jumpHeight + "," + maxFall + "," + swim + "," + doors + "," + range;
+        }
+    }
+
+    public static final byte PASSABLE = 1, FLOOR = 2, WATER = 4, DOOR = 8;
+
+    /**
+     * Per-material movement flags, indexed by ordinal.
+     */
+    public static byte[] materialFlags;
+
+    public static byte[] getMaterialFlags() {
+        if (materialFlags == null) {
+            Material[] materials = Material.values();
+            byte[] flags = new byte[materials.length];
+            List<Material> dangerous = Utilities.allMaterialsThatMatch("lava|fire|soul_fire|magma_block|cactus|sweet_berry_bush|powder_snow|wither_rose|*campfire");
+            List<Material> water = Utilities.allMaterialsThatMatch("water|bubble_column|kelp|kelp_plant|seagrass|tall_seagrass");
+            for (Material material : materials) {
+                if (!material.isBlock() || material.isLegacy() || dangerous.contains(material)) {
+                    continue;
+                }
+                byte flag = 0;
+                if (water.contains(material)) {
+                    flag |= WATER;
+                }
+                else if ((Tag.DOORS.isTagged(material) && material != Material.IRON_DOOR) || Tag.FENCE_GATES.isTagged(material)) {
+                    flag |= DOOR;
+                }
+                else if (!material.isSolid()) {
+                    flag |= PASSABLE;
+                }
+                else if (!Tag.FENCES.isTagged(material) && !Tag.WALLS.isTagged(material)) {
+                    flag |= FLOOR;
+                }
+                flags[material.ordinal()] = flag;
+            }
+            materialFlags = flags;
+        }
+        return materialFlags;
+    }
+
+    /**
+     * The furthest (horizontal) range a search may be given.
+     */
+    public static final int MAX_RANGE = 256;
+
+    /**
+     * How many chunks (in each direction) around a needed chunk are captured at once by a background search, and around the start before it begins.
+     */
+    public static int SNAPSHOT_BATCH_RADIUS = 2;
+
+    /**
+     * The blocks a search reads from. Unloaded chunks and anything outside the region are treated as impassable.
+     * A region either reads the live world directly (only usable on the main thread), or reads from chunk snapshots (usable from any thread).
+     * Snapshots are captured as the search reaches them: a background search asks the main thread for a batch of chunks around each chunk it needs, and waits for the next tick to provide them.
+     */
+    public static class Region {
+
+        public final World world;
+
+        public final int minChunkX, minChunkZ, chunkCountX, chunkCountZ, minY, maxY;
+
+        /**
+         * The chunk snapshots, or null if this region reads the live world.
+         */
+        public final ChunkSnapshot[] snapshots;
+
+        /**
+         * Whether each chunk has been checked: 0 if not yet checked, 1 if loaded (and captured, for a snapshot region), 2 if not loaded.
+         */
+        public final byte[] chunkStates;
+
+        public final byte[] flags;
+
+        /**
+         * Set if the main thread stopped answering snapshot requests (eg during shutdown), after which uncaptured chunks are treated as unloaded.
+         */
+        public boolean abandoned = false;
+
+        public Region(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, boolean snapshot) {
+            this.world = world;
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            chunkCountX = maxChunkX - minChunkX + 1;
+            chunkCountZ = maxChunkZ - minChunkZ + 1;
+            minY = world.getMinHeight();
+            maxY = world.getMaxHeight() - 1;
+            flags = getMaterialFlags();
+            chunkStates = new byte[chunkCountX * chunkCountZ];
+            snapshots = snapshot ? new ChunkSnapshot[chunkCountX * chunkCountZ] : null;
+        }
+
+        /**
+         * Gets the region a search from the start may cover, which is everything within the search range of the start.
+         * If 'snapshot' is true, the chunks around the start are captured immediately (on the main thread), and the rest are captured as the search needs them.
+         */
+        public static Region capture(Location start, int range, boolean snapshot) {
+            int minX = start.getBlockX() - range, maxX = start.getBlockX() + range;
+            int minZ = start.getBlockZ() - range, maxZ = start.getBlockZ() + range;
+            Region region = new Region(start.getWorld(), minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, snapshot);
+            if (snapshot) {
+                region.captureAround((start.getBlockX() >> 4) - region.minChunkX, (start.getBlockZ() >> 4) - region.minChunkZ);
+            }
+            return region;
+        }
+
+        /**
+         * Captures every not yet checked chunk within the batch radius of the given chunk (relative to the region). Must be called on the main thread.
+         */
+        public void captureAround(int chunkX, int chunkZ) {
+            for (int x = Math.max(0, chunkX - SNAPSHOT_BATCH_RADIUS); x <= Math.min(chunkCountX - 1, chunkX + SNAPSHOT_BATCH_RADIUS); x++) {
+                for (int z = Math.max(0, chunkZ - SNAPSHOT_BATCH_RADIUS); z <= Math.min(chunkCountZ - 1, chunkZ + SNAPSHOT_BATCH_RADIUS); z++) {
+                    int index = x * chunkCountZ + z;
+                    if (chunkStates[index] != 0) {
+                        continue;
+                    }
+                    if (world.isChunkLoaded(minChunkX + x, minChunkZ + z)) {
+                        snapshots[index] = world.getChunkAt(minChunkX + x, minChunkZ + z).getChunkSnapshot(false, false, false);
+                        chunkStates[index] = 1;
+                    }
+                    else {
+                        chunkStates[index] = 2;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Asks the main thread to capture the chunks around the given chunk (relative to the region), and waits until it has. Called from the searching thread.
+         */
+        public void requestCapture(int chunkX, int chunkZ) {
+            if (abandoned) {
+                return;
+            }
+            if (Bukkit.isPrimaryThread()) {
+                captureAround(chunkX, chunkZ);
+                return;
+            }
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            try {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                    try {
+                        captureAround(chunkX, chunkZ);
+                    }
+                    finally {
+                        done.complete(null);
+                    }
+                });
+                // Completing the future makes the main thread's writes visible here
+                done.get(10, TimeUnit.SECONDS);
+            }
+            catch (Throwable ex) {
+                abandoned = true;
+            }
+        }
+
+        public byte getFlags(int x, int y, int z) {
+            if (y < minY || y > maxY) {
+                return 0;
+            }
+            int chunkX = (x >> 4) - minChunkX, chunkZ = (z >> 4) - minChunkZ;
+            if (chunkX < 0 || chunkZ < 0 || chunkX >= chunkCountX || chunkZ >= chunkCountZ) {
+                return 0;
+            }
+            int index = chunkX * chunkCountZ + chunkZ;
+            if (snapshots == null) {
+                byte state = chunkStates[index];
+                if (state == 0) {
+                    state = world.isChunkLoaded(x >> 4, z >> 4) ? (byte) 1 : (byte) 2;
+                    chunkStates[index] = state;
+                }
+                if (state != 1) {
+                    return 0;
+                }
+                return flags[world.getType(x, y, z).ordinal()];
+            }
+            if (chunkStates[index] == 0) {
+                requestCapture(chunkX, chunkZ);
+            }
+            ChunkSnapshot snapshot = snapshots[index];
+            if (snapshot == null) {
+                return 0;
+            }
+            return flags[snapshot.getBlockType(x & 15, y, z & 15).ordinal()];
+        }
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    public static class CachedPath {
+
+        public final long[] positions;
+
+        public final Long2IntOpenHashMap indexOf = new Long2IntOpenHashMap();
+
+        public final long created;
+
+        public CachedPath(long[] positions) {
+            this.positions = positions;
+            indexOf.defaultReturnValue(-1);
+            for (int i = 0; i < positions.length; i++) {
+                indexOf.putIfAbsent(positions[i], i);
+            }
+            created = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * How long a found path is reused for. Paths aren't invalidated by block changes, so this should be kept short.
+     */
+    public static long CACHE_MILLIS = 10 * 1000;
+
+    public static int MAX_CACHED_PATHS = 256;
+
+    /**
+     * Cached paths, by world, goal, and rules.
+     */
+    public static final HashMap<String, ArrayList<CachedPath>> cache = new HashMap<>();
+
+    public static int cachedPathCount = 0;
+
+    public static String getCacheKey(World world, long goal, Rules rules) {
+        return world.getName() + ";" + goal + ";" + rules.getCacheKey();
+    }
+
+    public static long[] getCached(String key, long start) {
+        synchronized (cache) {
+            ArrayList<CachedPath> paths = cache.get(key);
+            if (paths == null) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            for (CachedPath path : paths) {
+                int index = path.indexOf.get(start);
+                if (index != -1 && now - path.created < CACHE_MILLIS) {
+                    return Arrays.copyOfRange(path.positions, index, path.positions.length);
+                }
+            }
+            return null;
+        }
+    }
+
+    public static void addCached(String key, long[] positions) {
+        synchronized (cache) {
+            long now = System.currentTimeMillis();
+            if (cachedPathCount >= MAX_CACHED_PATHS) {
+                Iterator<ArrayList<CachedPath>> iterator = cache.values().iterator();
+                while (iterator.hasNext()) {
+                    ArrayList<CachedPath> paths = iterator.next();
+                    cachedPathCount -= paths.size();
+                    paths.removeIf((path) -> now - path.created >= CACHE_MILLIS);
+                    cachedPathCount += paths.size();
+                    if (paths.isEmpty()) {
+                        iterator.remove();
+                    }
+                }
+                if (cachedPathCount >= MAX_CACHED_PATHS) {
+                    cache.clear();
+                    cachedPathCount = 0;
+                }
+            }
+            cache.computeIfAbsent(key, (k) -> new ArrayList<>()).add(new CachedPath(positions));
+            cachedPathCount++;
+        }
+    }
+
+    public final Region region;
+
+    public final Rules rules;
+
+    public final long goal;
+
+    public final int goalX, goalY, goalZ;
+
+    public final Long2IntOpenHashMap nodeIds = new Long2IntOpenHashMap();
+
+    public final LongOpenHashSet closed = new LongOpenHashSet();
+
+    public long[] nodePositions = new long[1024];
+
+    public float[] costs = new float[1024];
+
+    public float[] scores = new float[1024];
+
+    public int[] parents = new int[1024];
+
+    public int nodeCount = 0;
+
+    public int[] heap = new int[1024];
+
+    public int heapSize = 0;
+
+    public PathFinder(Region region, Rules rules, int goalX, int goalY, int goalZ) {
+        this.region = region;
+        this.rules = rules;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.goalZ = goalZ;
+        goal = pack(goalX, goalY, goalZ);
+        nodeIds.defaultReturnValue(-1);
+    }
+
+    public boolean isPassable(int x, int y, int z) {
+        byte flags = region.getFlags(x, y, z);
+        return (flags & PASSABLE) != 0 || (rules.doors && (flags & DOOR) != 0) || (rules.swim && (flags & WATER) != 0);
+    }
+
+    public boolean isInWater(int x, int y, int z) {
+        return rules.swim && (region.getFlags(x, y, z) & WATER) != 0;
+    }
+
+    /**
+     * Returns true if an entity could stand (or swim) with its feet at the position.
+     */
+    public boolean isStandable(int x, int y, int z) {
+        if (!isPassable(x, y, z) || !isPassable(x, y + 1, z)) {
+            return false;
+        }
+        return (region.getFlags(x, y - 1, z) & FLOOR) != 0 || isInWater(x, y, z);
+    }
+
+    public float estimate(int x, int y, int z) {
+        return Math.abs(goalX - x) + Math.abs(goalZ - z) + Math.abs(goalY - y) * 0.2f;
+    }
+
+    public boolean isGoal(int x, int y, int z) {
+        int xOff = goalX - x, yOff = goalY - y, zOff = goalZ - z;
+        return xOff * xOff + yOff * yOff + zOff * zOff <= 1;
+    }
+
+    public void offer(int x, int y, int z, int parent, float cost) {
+        long position = pack(x, y, z);
+        if (closed.contains(position)) {
+            return;
+        }
+        int id = nodeIds.get(position);
+        if (id == -1) {
+            if (nodeCount == nodePositions.length) {
+                int size = nodeCount * 2;
+                nodePositions = Arrays.copyOf(nodePositions, size);
+                costs = Arrays.copyOf(costs, size);
+                scores = Arrays.copyOf(scores, size);
+                parents = Arrays.copyOf(parents, size);
+            }
+            id = nodeCount++;
+            nodeIds.put(position, id);
+            nodePositions[id] = position;
+        }
+        else if (costs[id] <= cost) {
+            return;
+        }
+        costs[id] = cost;
+        scores[id] = cost + estimate(x, y, z);
+        parents[id] = parent;
+        // Re-inserted rather than moved up, the stale entry is skipped once it's popped (as the node will already be closed)
+        push(id);
+    }
+
+    public void push(int id) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int index = heapSize++;
+        while (index > 0) {
+            int parentIndex = (index - 1) >> 1;
+            if (scores[heap[parentIndex]] <= scores[id]) {
+                break;
+            }
+            heap[index] = heap[parentIndex];
+            index = parentIndex;
+        }
+        heap[index] = id;
+    }
+
+    public int pop() {
+        int result = heap[0];
+        int last = heap[--heapSize];
+        int index = 0;
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+            if (scores[heap[child]] >= scores[last]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        if (heapSize > 0) {
+            heap[index] = last;
+        }
+        return result;
+    }
+
+    public void expand(int id) {
+        long position = nodePositions[id];
+        int x = unpackX(position), y = unpackY(position), z = unpackZ(position);
+        float cost = costs[id];
+        for (int direction = 0; direction < 4; direction++) {
+            int newX = x + (direction == 0 ? 1 : direction == 1 ? -1 : 0);
+            int newZ = z + (direction == 2 ? 1 : direction == 3 ? -1 : 0);
+            if (isStandable(newX, y, newZ)) {
+                offer(newX, y, newZ, id, cost + 1);
+                continue;
+            }
+            boolean climbed = false;
+            for (int height = 1; height <= rules.jumpHeight; height++) {
+                if (!isPassable(x, y + height + 1, z)) {
+                    break;
+                }
+                if (isStandable(newX, y + height, newZ)) {
+                    offer(newX, y + height, newZ, id, cost + 1 + height * 0.5f);
+                    climbed = true;
+                    break;
+                }
+            }
+            if (climbed || !isPassable(newX, y, newZ) || !isPassable(newX, y + 1, newZ)) {
+                continue;
+            }
+            for (int drop = 1; drop <= rules.maxFall; drop++) {
+                if (isStandable(newX, y - drop, newZ)) {
+                    offer(newX, y - drop, newZ, id, cost + 1 + drop * 0.2f);
+                    break;
+                }
+                if (!isPassable(newX, y - drop, newZ)) {
+                    break;
+                }
+            }
+        }
+        if (isInWater(x, y, z)) {
+            if (isStandable(x, y + 1, z)) {
+                offer(x, y + 1, z, id, cost + 1);
+            }
+            if (isInWater(x, y - 1, z) && isStandable(x, y - 1, z)) {
+                offer(x, y - 1, z, id, cost + 1);
+            }
+        }
+    }
+
+    /**
+     * Runs the search from the given position. Returns the packed positions from the start to the goal, or null if no path was found.
+     */
+    public long[] search(int startX, int startY, int startZ) {
+        if (!isStandable(startX, startY, startZ) && isStandable(startX, startY + 1, startZ)) {
+            startY++;
+        }
+        offer(startX, startY, startZ, -1, 0);
+        while (heapSize > 0) {
+            int id = pop();
+            long position = nodePositions[id];
+            if (!closed.add(position)) {
+                continue;
+            }
+            int x = unpackX(position), y = unpackY(position), z = unpackZ(position);
+            if (isGoal(x, y, z)) {
+                int length = 0;
+                for (int node = id; node != -1; node = parents[node]) {
+                    length++;
+                }
+                long[] result = new long[length];
+                for (int node = id; node != -1; node = parents[node]) {
+                    result[--length] = nodePositions[node];
+                }
+                return result;
+            }
+            if (closed.size() >= rules.maxNodes) {
+                return null;
+            }
+            if (Math.abs(x - startX) > rules.range || Math.abs(z - startZ) > rules.range) {
+                continue;
+            }
+            expand(id);
+        }
+        return null;
+    }
+
+    public static List<LocationTag> toLocations(World world, long[] positions) {
+        List<LocationTag> path = new ArrayList<>(positions.length);
+        for (long position : positions) {
+            path.add(new LocationTag(world, unpackX(position), unpackY(position), unpackZ(position)));
+        }
+        return path;
+    }
+
+    /**
+     * Prepares a search (on the main thread), returning a task that performs it and returns the found positions, or null if there's no path.
+     * If 'async' is false, the task must also be run on the main thread.
+     */
+    public static PathTask prepare(Location start, Location dest, Rules rules, boolean async) {
+        World world = start.getWorld();
+        long startPosition = pack(start.getBlockX(), start.getBlockY(), start.getBlockZ());
+        long goal = pack(dest.getBlockX(), dest.getBlockY(), dest.getBlockZ());
+        String cacheKey = getCacheKey(world, goal, rules);
+        long[] cached = getCached(cacheKey, startPosition);
+        if (cached != null) {
+            return () -> cached;
+        }
+        // Synchronous searches read blocks as they go, as most searches only look at a small part of the region
+        Region region = Region.capture(start, Math.min(rules.range, MAX_RANGE), async);
+        return () -> {
+            long[] result = new PathFinder(region, rules, dest.getBlockX(), dest.getBlockY(), dest.getBlockZ()).search(start.getBlockX(), start.getBlockY(), start.getBlockZ());
+            if (result != null) {
+                addCached(cacheKey, result);
+            }
+            return result;
+        };
+    }
+
+    @FunctionalInterface
+    public interface PathTask {
+
+        long[] run();
+    }
+
+    public static int workerThreads = 2;
+
+    private static ThreadPoolExecutor executor;
+
+    public static ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            executor = new ThreadPoolExecutor(workerThreads, workerThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+                Thread thread = new Thread(runnable, "Denizen Path Finder #" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Finds a path on the main thread. Returns an empty list if there's no path.
+     */
+    public static List<LocationTag> getPath(Location start, Location dest, Rules rules) {
+        if (start.getWorld() == null || start.getWorld() != dest.getWorld()) {
             return new ArrayList<>();
         }
-        if (plan.isComplete()) {
-            Debug.verboseLog("PathFinder: path from " + start + " to " + dest + " is instantly completed");
+        long[] result = prepare(start, dest, rules, false).run();
+        if (result == null) {
+            Debug.verboseLog("PathFinder: No path found from " + start + " to " + dest);
             return new ArrayList<>();
         }
-        else {
-            List<LocationTag> path = new ArrayList<>();
-            while (!plan.isComplete()) {
-                Vector v = plan.getCurrentVector();
-                path.add(new LocationTag(start.getWorld(), v.getX(), v.getY(), v.getZ()));
-                plan.update(null);
-            }
-            return path;
+        return toLocations(start.getWorld(), result);
+    }
+
+    public static List<LocationTag> getPath(Location start, Location dest) {
+        return getPath(start, dest, new Rules());
+    }
+
+    /**
+     * Finds a path on a background thread, then passes it to the callback on the main thread. The path is null if there's no path.
+     */
+    public static void getPathAsync(Location start, Location dest, Rules rules, Consumer<List<LocationTag>> callback) {
+        if (start.getWorld() == null || start.getWorld() != dest.getWorld()) {
+            callback.accept(null);
+            return;
         }
+        World world = start.getWorld();
+        PathTask task = prepare(start, dest, rules, true);
+        getExecutor().execute(() -> {
+            long[] result = null;
+            try {
+                result = task.run();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+            long[] finalResult = result;
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> callback.accept(finalResult == null ? null : toLocations(world, finalResult)));
+        });
     }
 }
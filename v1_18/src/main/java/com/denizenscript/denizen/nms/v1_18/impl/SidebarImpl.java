@@ -7,6 +7,7 @@ import com.denizenscript.denizen.utilities.FormattedTextHelper;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.md_5.bungee.api.ChatColor;
+import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.protocol.game.ClientboundSetDisplayObjectivePacket;
 import net.minecraft.network.protocol.game.ClientboundSetObjectivePacket;
@@ -60,8 +61,32 @@ public class SidebarImpl extends Sidebar {
 
     public List<PlayerTeam> generatedTeams = new ArrayList<>();
 
+    public static Component getLineComponent(String text) {
+        return getCachedComponent(text, (line) -> Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
+    }
+
     @Override
     public void sendUpdate() {
+        if (needsFullUpdate()) {
+            sendFullUpdate();
+        }
+        else {
+            // Same lines and title as what's displayed, so only modify the existing teams and scores that changed
+            for (int i = 0; i < setCount; i++) {
+                PlayerTeam team = generatedTeams.get(i);
+                if (lineChanged(i)) {
+                    team.setPlayerPrefix(getLineComponent(this.lines[i]));
+                    PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, false));
+                }
+                if (scoreChanged(i)) {
+                    PacketHelperImpl.send(player, new ClientboundSetScorePacket(ServerScoreboard.Method.CHANGE, obj2.getName(), team.getName(), this.scores[i]));
+                }
+            }
+        }
+        markSent();
+    }
+
+    public void sendFullUpdate() {
         List<PlayerTeam> oldTeams = generatedTeams;
         generatedTeams = new ArrayList<>();
         PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj1, 0));
@@ -73,7 +98,7 @@ public class SidebarImpl extends Sidebar {
             String lineId = Utilities.generateRandomColors(8);
             PlayerTeam team = new PlayerTeam(dummyScoreboard, lineId);
             team.getPlayers().add(lineId);
-            team.setPlayerPrefix(Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
+            team.setPlayerPrefix(getLineComponent(line));
             generatedTeams.add(team);
             PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, true));
             PacketHelperImpl.send(player, new ClientboundSetScorePacket(ServerScoreboard.Method.CHANGE, obj1.getName(), lineId, this.scores[i]));
@@ -95,5 +120,6 @@ public class SidebarImpl extends Sidebar {
         }
         generatedTeams.clear();
         PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj2, 1));
+        markRemoved();
     }
 }
@@ -12,7 +12,6 @@ import com.denizenscript.denizen.nms.v1_18.impl.ProfileEditorImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.blocks.BlockLightImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.entities.EntityFakePlayerImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.network.packets.PacketOutChatImpl;
-import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.commands.entity.*;
 import com.denizenscript.denizen.scripts.commands.player.DisguiseCommand;
@@ -715,7 +714,7 @@ public class DenizenNetworkManagerImpl extends Connection {
             if (ent == null) {
                 return null; // If it doesn't exist on-server, it's definitely not relevant, so move on
             }
-            String nameToApply = RenameCommand.getCustomNameFor(ent.getUUID(), player.getBukkitEntity(), false);
+            Component nameToApply = RenameCommand.getCustomNameComponentFor(ent.getUUID(), player.getBukkitEntity(), (name) -> Handler.componentToNMS(FormattedTextHelper.parse(name, ChatColor.WHITE)));
             Boolean forceSneak = SneakCommand.shouldSneak(ent.getUUID(), player.getUUID());
             Boolean isInvisible = InvisibleCommand.helper.getState(ent.getBukkitEntity(), player.getUUID(), true);
             Boolean isGlowing = GlowCommand.helper.getState(ent.getBukkitEntity(), player.getUUID(), true);
@@ -758,7 +757,7 @@ public class DenizenNetworkManagerImpl extends Connection {
                     any = true;
                 }
                 else if (watcherId == 2 && nameToApply != null) { // 2: Custom name metadata
-                    Optional<Component> name = Optional.of(Handler.componentToNMS(FormattedTextHelper.parse(nameToApply, ChatColor.WHITE)));
+                    Optional<Component> name = Optional.of(nameToApply);
                     data.set(i, new SynchedEntityData.DataItem(watcherObject, name));
                     any = true;
                 }
@@ -1152,12 +1151,11 @@ public class DenizenNetworkManagerImpl extends Connection {
                     return false;
                 }
                 SectionPos coord = (SectionPos) SECTIONPOS_MULTIBLOCKCHANGE.get(packet);
-                ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.getX(), coord.getZ(), player.getLevel().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                FakeBlock.FakeBlockMap.Section section = map.getSection(player.getLevel().getWorld().getName(), coord.getX(), coord.getY(), coord.getZ());
+                if (section == null) {
                     return false;
                 }
                 ClientboundSectionBlocksUpdatePacket newPacket = new ClientboundSectionBlocksUpdatePacket(copyPacket(packet));
-                LocationTag location = new LocationTag(player.getLevel().getWorld(), 0, 0, 0);
                 short[] originalOffsetArray = (short[])OFFSETARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 BlockState[] originalDataArray = (BlockState[])BLOCKARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 short[] offsetArray = Arrays.copyOf(originalOffsetArray, originalOffsetArray.length);
@@ -1165,12 +1163,7 @@ public class DenizenNetworkManagerImpl extends Connection {
                 OFFSETARRAY_MULTIBLOCKCHANGE.set(newPacket, offsetArray);
                 BLOCKARRAY_MULTIBLOCKCHANGE.set(newPacket, dataArray);
                 for (int i = 0; i < offsetArray.length; i++) {
-                    short offset = offsetArray[i];
-                    BlockPos pos = coord.relativeToBlockPos(offset);
-                    location.setX(pos.getX());
-                    location.setY(pos.getY());
-                    location.setZ(pos.getZ());
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = section.get(offsetArray[i]);
                     if (block != null) {
                         dataArray[i] = FakeBlockHelper.getNMSState(block);
                     }
@@ -1180,8 +1173,7 @@ public class DenizenNetworkManagerImpl extends Connection {
             }
             else if (packet instanceof ClientboundBlockUpdatePacket) {
                 BlockPos pos = ((ClientboundBlockUpdatePacket) packet).getPos();
-                LocationTag loc = new LocationTag(player.getLevel().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), player.getLevel().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ClientboundBlockUpdatePacket newPacket = new ClientboundBlockUpdatePacket(((ClientboundBlockUpdatePacket) packet).getPos(), FakeBlockHelper.getNMSState(block));
                     oldManager.send(newPacket, genericfuturelistener);
@@ -1191,8 +1183,7 @@ public class DenizenNetworkManagerImpl extends Connection {
             else if (packet instanceof ClientboundBlockBreakAckPacket) {
                 ClientboundBlockBreakAckPacket origPack = (ClientboundBlockBreakAckPacket) packet;
                 BlockPos pos = origPack.pos();
-                LocationTag loc = new LocationTag(player.getLevel().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), player.getLevel().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ClientboundBlockBreakAckPacket newPacket = new ClientboundBlockBreakAckPacket(origPack.pos(), FakeBlockHelper.getNMSState(block), origPack.action(), false);
                     oldManager.send(newPacket, genericfuturelistener);
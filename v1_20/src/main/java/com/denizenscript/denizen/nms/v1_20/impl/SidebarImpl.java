@@ -64,8 +64,32 @@ public class SidebarImpl extends Sidebar {
 
     public List<PlayerTeam> generatedTeams = new ArrayList<>();
 
+    public static Component getLineComponent(String text) {
+        return getCachedComponent(text, (line) -> Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
+    }
+
     @Override
     public void sendUpdate() {
+        if (needsFullUpdate()) {
+            sendFullUpdate();
+        }
+        else {
+            // Same lines and title as what's displayed, so only modify the existing teams and scores that changed
+            for (int i = 0; i < setCount; i++) {
+                PlayerTeam team = generatedTeams.get(i);
+                if (lineChanged(i)) {
+                    team.setPlayerPrefix(getLineComponent(this.lines[i]));
+                    PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, false));
+                }
+                if (scoreChanged(i)) {
+                    PacketHelperImpl.send(player, new ClientboundSetScorePacket(team.getName(), obj2.getName(), this.scores[i], Optional.empty(), Optional.of(StyledFormat.SIDEBAR_DEFAULT)));
+                }
+            }
+        }
+        markSent();
+    }
+
+    public void sendFullUpdate() {
         List<PlayerTeam> oldTeams = generatedTeams;
         generatedTeams = new ArrayList<>();
         PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj1, 0));
@@ -78,7 +102,7 @@ public class SidebarImpl extends Sidebar {
             String lineId = ids[i];
             PlayerTeam team = new PlayerTeam(dummyScoreboard, lineId);
             team.getPlayers().add(lineId);
-            team.setPlayerPrefix(Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
+            team.setPlayerPrefix(getLineComponent(line));
             generatedTeams.add(team);
             PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, true));
             PacketHelperImpl.send(player, new ClientboundSetScorePacket(lineId, obj1.getName(), this.scores[i], Optional.empty(), Optional.of(StyledFormat.SIDEBAR_DEFAULT)));
@@ -100,5 +124,6 @@ public class SidebarImpl extends Sidebar {
         }
         generatedTeams.clear();
         PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj2, 1));
+        markRemoved();
     }
 }
@@ -2,20 +2,15 @@ package com.denizenscript.denizen.nms.v1_20.impl.network.handlers;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.v1_20.ReflectionMappingsInfo;
-import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
-import net.minecraft.core.Registry;
-import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.FriendlyByteBuf;
-import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.protocol.game.ClientboundLevelChunkPacketData;
 import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
-import net.minecraft.world.level.biome.Biome;
-import net.minecraft.world.level.biome.Biomes;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.entity.BlockEntity;
@@ -24,7 +19,6 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.PalettedContainer;
 import org.bukkit.World;
 import org.bukkit.craftbukkit.v1_20_R4.CraftRegistry;
-import org.bukkit.craftbukkit.v1_20_R4.CraftWorld;
 import org.bukkit.craftbukkit.v1_20_R4.block.CraftBlockStates;
 import org.bukkit.craftbukkit.v1_20_R4.block.data.CraftBlockData;
 
@@ -43,25 +37,12 @@ public class FakeBlockHelper {
     public static Class CHUNKDATA_BLOCKENTITYINFO_CLASS = ClientboundLevelChunkPacketData.class.getDeclaredClasses()[0];
     public static Field CHUNKDATA_BLOCKENTITYINFO_PACKEDXZ = ReflectionHelper.getFields(CHUNKDATA_BLOCKENTITYINFO_CLASS).get(ReflectionMappingsInfo.ClientboundLevelChunkPacketDataBlockEntityInfo_packedXZ);
     public static Field CHUNKDATA_BLOCKENTITYINFO_Y = ReflectionHelper.getFields(CHUNKDATA_BLOCKENTITYINFO_CLASS).get(ReflectionMappingsInfo.ClientboundLevelChunkPacketDataBlockEntityInfo_y);
-    public static MethodHandle CHUNKPACKET_CHUNKDATA_SETTER = ReflectionHelper.getFinalSetterForFirstOfType(ClientboundLevelChunkWithLightPacket.class, ClientboundLevelChunkPacketData.class);
     public static Constructor<?> PALETTEDCONTAINER_CTOR = Arrays.stream(PalettedContainer.class.getConstructors()).filter(c -> c.getParameterCount() == 3).findFirst().get();
 
     public static BlockState getNMSState(FakeBlock block) {
         return ((CraftBlockData) block.material.getModernData()).getState();
     }
 
-    public static boolean anyBlocksInSection(List<FakeBlock> blocks, int y) {
-        int minY = y << 4;
-        int maxY = (y << 4) + 16;
-        for (FakeBlock block : blocks) {
-            int blockY = block.location.getBlockY();
-            if (blockY >= minY && blockY < maxY) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static Field PAPER_CHUNK_READY;
     public static boolean tryPaperPatch = true;
 
@@ -88,75 +69,140 @@ public class FakeBlockHelper {
         }
     }
 
-    public static ClientboundLevelChunkWithLightPacket handleMapChunkPacket(World world, ClientboundLevelChunkWithLightPacket originalPacket, int chunkX, int chunkZ, List<FakeBlock> blocks) {
+    /**
+     * Patched copy of one chunk section's packet data, cached on the {@link FakeBlock.FakeBlockMap.Section} it was built from.
+     * Valid while the section's modCount is unchanged and the real section data is byte-identical to the original it was patched from.
+     */
+    public static class PatchedSection {
+
+        public final int modCount;
+
+        public final byte[] original, patched;
+
+        public PatchedSection(int modCount, byte[] original, byte[] patched) {
+            this.modCount = modCount;
+            this.original = original;
+            this.patched = patched;
+        }
+    }
+
+    /**
+     * Highest bits-per-entry that still writes an explicit palette, for SECTION_STATES and SECTION_BIOMES respectively.
+     */
+    public static final int STATES_MAX_PALETTE_BITS = 8, BIOMES_MAX_PALETTE_BITS = 3;
+
+    /**
+     * Reads past a serialized PalettedContainer without decoding it.
+     */
+    public static void skipPalettedContainer(FriendlyByteBuf serial, int maxPaletteBits) {
+        int bits = serial.readUnsignedByte();
+        if (bits == 0) {
+            serial.readVarInt();
+        }
+        else if (bits <= maxPaletteBits) {
+            int paletteSize = serial.readVarInt();
+            for (int i = 0; i < paletteSize; i++) {
+                serial.readVarInt();
+            }
+        }
+        serial.skipBytes(serial.readVarInt() * 8);
+    }
+
+    /**
+     * Gets the patched data for one section (block count, block states and biomes), using the section's cache if still valid.
+     * Only the block states are decoded, the biome data is copied through as-is.
+     */
+    public static byte[] patchSection(FakeBlock.FakeBlockMap.Section section, FriendlyByteBuf serial, int start, int length) throws Throwable {
+        if (section.packetCache instanceof PatchedSection cached && cached.modCount == section.modCount && cached.original.length == length
+                && ByteBufUtil.equals(Unpooled.wrappedBuffer(cached.original), 0, serial, start, length)) {
+            return cached.patched;
+        }
+        int modCount = section.modCount;
+        FriendlyByteBuf input = new FriendlyByteBuf(serial.slice(start, length));
+        int blockCount = input.readShort();
+        // reflected constructors as workaround for spigot remapper bug - Mojang "IdMap" became Spigot "IRegistry" but should be "Registry"
+        PalettedContainer<BlockState> states = (PalettedContainer<BlockState>) PALETTEDCONTAINER_CTOR.newInstance(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+        states.read(input);
+        int biomesStart = input.readerIndex();
+        for (int i = 0; i < section.size; i++) {
+            FakeBlock block = section.blocks[i];
+            if (block == null || block.material == null) {
+                continue;
+            }
+            short offset = section.offsets[i];
+            int blockX = (offset >> 8) & 15;
+            int blockZ = (offset >> 4) & 15;
+            int blockY = offset & 15;
+            BlockState oldState = states.get(blockX, blockY, blockZ);
+            BlockState newState = getNMSState(block);
+            if (oldState.isAir() && !newState.isAir()) {
+                blockCount++;
+            }
+            else if (newState.isAir() && !oldState.isAir()) {
+                blockCount--;
+            }
+            states.set(blockX, blockY, blockZ, newState);
+        }
+        FriendlyByteBuf output = new FriendlyByteBuf(Unpooled.buffer(length + 64));
+        output.writeShort(blockCount);
+        states.write(output);
+        output.writeBytes(input, biomesStart, length - biomesStart);
+        byte[] patched = Arrays.copyOf(output.array(), output.writerIndex());
+        byte[] original = new byte[length];
+        serial.getBytes(start, original);
+        section.packetCache = new PatchedSection(modCount, original, patched);
+        return patched;
+    }
+
+    /**
+     * Applies a player's fake blocks to a chunk packet.
+     * Sections without fake blocks are copied through byte-for-byte without being decoded, and the whole packet is only duplicated if at least one section needed patching.
+     */
+    public static ClientboundLevelChunkWithLightPacket handleMapChunkPacket(World world, ClientboundLevelChunkWithLightPacket originalPacket, int chunkX, int chunkZ, FakeBlock.FakeBlockMap.ChunkBlocks fakeBlocks) {
         try {
+            FriendlyByteBuf serial = originalPacket.getChunkData().getReadBuffer();
+            FriendlyByteBuf outputSerial = null;
+            int copiedUpTo = 0;
+            int minChunkY = world.getMinHeight() >> 4;
+            int maxChunkY = world.getMaxHeight() >> 4;
+            for (int y = minChunkY; y < maxChunkY; y++) {
+                int sectionStart = serial.readerIndex();
+                serial.readShort();
+                skipPalettedContainer(serial, STATES_MAX_PALETTE_BITS);
+                skipPalettedContainer(serial, BIOMES_MAX_PALETTE_BITS);
+                FakeBlock.FakeBlockMap.Section section = fakeBlocks.sections.get(y);
+                if (section == null || section.size == 0) {
+                    continue;
+                }
+                if (outputSerial == null) {
+                    outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.writerIndex() + 1024));
+                }
+                outputSerial.writeBytes(serial, copiedUpTo, sectionStart - copiedUpTo);
+                outputSerial.writeBytes(patchSection(section, serial, sectionStart, serial.readerIndex() - sectionStart));
+                copiedUpTo = serial.readerIndex();
+            }
+            if (outputSerial == null) {
+                return originalPacket;
+            }
+            outputSerial.writeBytes(serial, copiedUpTo, serial.writerIndex() - copiedUpTo);
             ClientboundLevelChunkWithLightPacket duplicateCorePacket = ClientboundLevelChunkWithLightPacket.STREAM_CODEC.decode(DenizenNetworkManagerImpl.copyPacket(originalPacket, ClientboundLevelChunkWithLightPacket.STREAM_CODEC));
             copyPacketPaperPatch(duplicateCorePacket, originalPacket);
-            RegistryFriendlyByteBuf copier = new RegistryFriendlyByteBuf(Unpooled.buffer(), CraftRegistry.getMinecraftRegistry());
-            originalPacket.getChunkData().write(copier);
-            ClientboundLevelChunkPacketData packet = new ClientboundLevelChunkPacketData(copier, chunkX, chunkZ);
-            FriendlyByteBuf serial = originalPacket.getChunkData().getReadBuffer();
-            FriendlyByteBuf outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.readableBytes()));
-            List blockEntities = new ArrayList((List) CHUNKDATA_BLOCK_ENTITIES.get(originalPacket.getChunkData()));
+            ClientboundLevelChunkPacketData packet = duplicateCorePacket.getChunkData();
+            List blockEntities = new ArrayList((List) CHUNKDATA_BLOCK_ENTITIES.get(packet));
             CHUNKDATA_BLOCK_ENTITIES.set(packet, blockEntities);
             for (int i = 0; i < blockEntities.size(); i++) {
                 Object blockEnt = blockEntities.get(i);
                 int xz = CHUNKDATA_BLOCKENTITYINFO_PACKEDXZ.getInt(blockEnt);
                 int y = CHUNKDATA_BLOCKENTITYINFO_Y.getInt(blockEnt);
-                int x = (chunkX << 4) + ((xz >> 4) & 15);
-                int z = (chunkZ << 4) + (xz & 15);
-                for (FakeBlock block : blocks) {
-                    LocationTag loc = block.location;
-                    if (loc.getBlockX() == x && loc.getBlockY() == y && loc.getBlockZ() == z && block.material != null) {
-                        BlockEntity newBlockEnt = CraftBlockStates.createNewTileEntity(block.material.getMaterial());
-                        Object newData = CHUNKDATA_BLOCK_ENTITY_CONSTRUCTOR.invoke(xz, y, newBlockEnt.getType(), newBlockEnt.getUpdateTag(CraftRegistry.getMinecraftRegistry()));
-                        blockEntities.set(i, newData);
-                        break;
-                    }
-                }
-            }
-            int worldMinY = world.getMinHeight();
-            int worldMaxY = world.getMaxHeight();
-            int minChunkY = worldMinY >> 4;
-            int maxChunkY = worldMaxY >> 4;
-            Registry<Biome> biomeRegistry = ((CraftWorld) world).getHandle().registryAccess().registryOrThrow(Registries.BIOME);
-            for (int y = minChunkY; y < maxChunkY; y++) {
-                int blockCount = serial.readShort();
-                // reflected constructors as workaround for spigot remapper bug - Mojang "IdMap" became Spigot "IRegistry" but should be "Registry"
-                PalettedContainer<BlockState> states = (PalettedContainer<BlockState>) PALETTEDCONTAINER_CTOR.newInstance(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
-                states.read(serial);
-                PalettedContainer<Biome> biomes = (PalettedContainer<Biome>) PALETTEDCONTAINER_CTOR.newInstance(biomeRegistry, biomeRegistry.getOrThrow(Biomes.PLAINS), PalettedContainer.Strategy.SECTION_BIOMES);
-                biomes.read(serial);
-                if (anyBlocksInSection(blocks, y)) {
-                    int minY = y << 4;
-                    int maxY = (y << 4) + 16;
-                    for (FakeBlock block : blocks) {
-                        int blockY = block.location.getBlockY();
-                        if (blockY >= minY && blockY < maxY && block.material != null) {
-                            int blockX = block.location.getBlockX();
-                            int blockZ = block.location.getBlockZ();
-                            blockX -= (blockX >> 4) * 16;
-                            blockY -= (blockY >> 4) * 16;
-                            blockZ -= (blockZ >> 4) * 16;
-                            BlockState oldState = states.get(blockX, blockY, blockZ);
-                            BlockState newState = getNMSState(block);
-                            if (oldState.isAir() && !newState.isAir()) {
-                                blockCount++;
-                            }
-                            else if (newState.isAir() && !oldState.isAir()) {
-                                blockCount--;
-                            }
-                            states.set(blockX, blockY, blockZ, newState);
-                        }
-                    }
+                FakeBlock.FakeBlockMap.Section section = fakeBlocks.sections.get(y >> 4);
+                FakeBlock block = section == null ? null : section.get(FakeBlock.FakeBlockMap.packOffset(xz >> 4, y, xz));
+                if (block != null && block.material != null) {
+                    BlockEntity newBlockEnt = CraftBlockStates.createNewTileEntity(block.material.getMaterial());
+                    Object newData = CHUNKDATA_BLOCK_ENTITY_CONSTRUCTOR.invoke(xz, y, newBlockEnt.getType(), newBlockEnt.getUpdateTag(CraftRegistry.getMinecraftRegistry()));
+                    blockEntities.set(i, newData);
                 }
-                outputSerial.writeShort(blockCount);
-                states.write(outputSerial);
-                biomes.write(outputSerial);
             }
-            byte[] outputBytes = outputSerial.array();
-            CHUNKDATA_BUFFER_SETTER.invoke(packet, outputBytes);
-            CHUNKPACKET_CHUNKDATA_SETTER.invoke(duplicateCorePacket, packet);
+            CHUNKDATA_BUFFER_SETTER.invoke(packet, Arrays.copyOf(outputSerial.array(), outputSerial.writerIndex()));
             return duplicateCorePacket;
         }
         catch (Throwable ex) {
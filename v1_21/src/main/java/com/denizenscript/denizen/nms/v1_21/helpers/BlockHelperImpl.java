@@ -17,6 +17,7 @@ import com.mojang.authlib.GameProfile;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.HolderSet;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.network.protocol.common.ClientboundUpdateTagsPacket;
 import net.minecraft.resources.ResourceLocation;
@@ -29,14 +30,19 @@ import net.minecraft.world.entity.Entity;
 import net.minecraft.world.item.component.ResolvableProfile;
 import net.minecraft.world.level.BaseSpawner;
 import net.minecraft.world.level.SpawnData;
+import net.minecraft.world.level.block.EntityBlock;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.entity.SpawnerBlockEntity;
 import net.minecraft.world.level.block.state.BlockBehaviour;
 import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.level.material.PushReaction;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Instrument;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -44,6 +50,7 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.CreatureSpawner;
 import org.bukkit.block.Skull;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_21_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_21_R1.CraftRegistry;
 import org.bukkit.craftbukkit.v1_21_R1.CraftServer;
@@ -52,6 +59,7 @@ import org.bukkit.craftbukkit.v1_21_R1.block.CraftBlock;
 import org.bukkit.craftbukkit.v1_21_R1.block.CraftBlockEntityState;
 import org.bukkit.craftbukkit.v1_21_R1.block.CraftCreatureSpawner;
 import org.bukkit.craftbukkit.v1_21_R1.block.CraftSkull;
+import org.bukkit.craftbukkit.v1_21_R1.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_21_R1.entity.CraftEntity;
 import org.bukkit.craftbukkit.v1_21_R1.inventory.CraftItemStack;
 import org.bukkit.craftbukkit.v1_21_R1.tag.CraftBlockTag;
@@ -312,4 +320,64 @@ public class BlockHelperImpl implements BlockHelper {
         }
         PacketHelperImpl.broadcast(new ClientboundUpdateTagsPacket(TagNetworkSerialization.serializeTagsToNetwork(((CraftServer) Bukkit.getServer()).getServer().registries())));
     }
+
+    @Override
+    public void setSectionBlocks(Chunk chunk, int sectionY, short[] positions, BlockData[] data, int count) {
+        LevelChunk nmsChunk = (LevelChunk) ((CraftChunk) chunk).getHandle(ChunkStatus.FULL);
+        ServerLevel level = ((CraftWorld) chunk.getWorld()).getHandle();
+        LevelChunkSection section = nmsChunk.getSection(nmsChunk.getSectionIndexFromSectionY(sectionY));
+        boolean wasEmpty = section.hasOnlyAir();
+        int baseX = chunk.getX() << 4, baseY = sectionY << 4, baseZ = chunk.getZ() << 4;
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        boolean anyChanged = false;
+        for (int i = 0; i < count; i++) {
+            int x = (positions[i] >> 8) & 15, y = positions[i] & 15, z = (positions[i] >> 4) & 15;
+            net.minecraft.world.level.block.state.BlockState state = ((CraftBlockData) data[i]).getState();
+            net.minecraft.world.level.block.state.BlockState oldState = section.getBlockState(x, y, z);
+            if (oldState == state) {
+                continue;
+            }
+            pos.set(baseX + x, baseY + y, baseZ + z);
+            if (oldState.hasBlockEntity()) {
+                nmsChunk.removeBlockEntity(pos);
+            }
+            section.setBlockState(x, y, z, state, false);
+            for (Map.Entry<Heightmap.Types, Heightmap> heightmap : nmsChunk.getHeightmaps()) {
+                heightmap.getValue().update(x, baseY + y, z, state);
+            }
+            if (state.getBlock() instanceof EntityBlock entityBlock) {
+                BlockEntity blockEntity = entityBlock.newBlockEntity(pos.immutable(), state);
+                if (blockEntity != null) {
+                    nmsChunk.setBlockEntity(blockEntity);
+                }
+            }
+            // Keeps points of interest (beds, job sites, bells, beehives, portals, ...) registered, as a normal block set would
+            level.onBlockStateChange(pos.immutable(), oldState, state);
+            level.getChunkSource().blockChanged(pos);
+            level.getChunkSource().getLightEngine().checkBlock(pos);
+            anyChanged = true;
+        }
+        if (anyChanged) {
+            if (wasEmpty != section.hasOnlyAir()) {
+                level.getChunkSource().getLightEngine().updateSectionStatus(SectionPos.of(chunk.getX(), sectionY, chunk.getZ()), section.hasOnlyAir());
+            }
+            nmsChunk.setUnsaved(true);
+        }
+    }
+
+    @Override
+    public void setSectionBlocks(Chunk chunk, int sectionY, short[] positions, BlockData[] data, int count, boolean physics) {
+        if (!physics) {
+            setSectionBlocks(chunk, sectionY, positions, data, count);
+            return;
+        }
+        // With physics, every block goes through a normal level set, so placement and removal logic (falling blocks, rails, redstone, observers, ...) runs just like 'setBlockData(data, true)'
+        ServerLevel level = ((CraftWorld) chunk.getWorld()).getHandle();
+        int baseX = chunk.getX() << 4, baseY = sectionY << 4, baseZ = chunk.getZ() << 4;
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < count; i++) {
+            pos.set(baseX + ((positions[i] >> 8) & 15), baseY + (positions[i] & 15), baseZ + ((positions[i] >> 4) & 15));
+            level.setBlock(pos, ((CraftBlockData) data[i]).getState(), net.minecraft.world.level.block.Block.UPDATE_ALL);
+        }
+    }
 }